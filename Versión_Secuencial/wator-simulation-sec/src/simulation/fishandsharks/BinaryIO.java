@@ -0,0 +1,215 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : BinaryIO.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Utilidades de E/S binaria para los formatos de la simulación
+ * (checkpoints y grabaciones de trayectorias).
+ *
+ * - Output: escritura secuencial a un FileChannel a través de un buffer directo.
+ * - Input: lectura secuencial de un fichero mapeado en memoria por ventanas,
+ *   de modo que ficheros de varios GB se leen sin copiarlos al heap
+ *   (un MappedByteBuffer no puede superar los 2 GB).
+ *
+ * Los enteros pequeños se codifican como varint (LEB128): 7 bits por byte,
+ * el bit alto indica si siguen más bytes. Los valores con signo se pasan
+ * antes por zigzag para que los negativos pequeños también ocupen poco.
+ */
+public final class BinaryIO {
+
+    private BinaryIO() { }
+
+    public static int zigzag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    public static int unzigzag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Escritura secuencial con buffer sobre un FileChannel.
+     */
+    public static class Output implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buf;
+        private long written = 0;
+
+        public Output(FileChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.buf = ByteBuffer.allocateDirect(bufferSize);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buf.remaining() < bytes)
+                flush();
+        }
+
+        public void putByte(int b) throws IOException {
+            ensure(1);
+            buf.put((byte) b);
+        }
+
+        public void putInt(int v) throws IOException {
+            ensure(4);
+            buf.putInt(v);
+        }
+
+        public void putLong(long v) throws IOException {
+            ensure(8);
+            buf.putLong(v);
+        }
+
+        public void putVarInt(int v) throws IOException {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        public void putVarLong(long v) throws IOException {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf.put((byte) ((v & 0x7F) | 0x80));
+                v >>>= 7;
+            }
+            buf.put((byte) v);
+        }
+
+        public void putBytes(byte[] src, int off, int len) throws IOException {
+            while (len > 0) {
+                ensure(1);
+                int n = Math.min(len, buf.remaining());
+                buf.put(src, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+
+        /**
+         * @return Bytes escritos hasta ahora (incluido lo pendiente en el buffer)
+         */
+        public long position() {
+            return written + buf.position();
+        }
+
+        public void flush() throws IOException {
+            buf.flip();
+            while (buf.hasRemaining())
+                written += channel.write(buf);
+            buf.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Lectura secuencial de un FileChannel mapeado en memoria por ventanas.
+     */
+    public static class Input {
+        // Tamaño de cada ventana mapeada
+        static final long WINDOW = 256L << 20;
+
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        public Input(FileChannel channel, long position) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            map(position);
+        }
+
+        private void map(long position) throws IOException {
+            if (position >= size)
+                throw new EOFException("Fin de fichero en la posición " + position);
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(WINDOW, size - position));
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() < bytes)
+                map(position());
+        }
+
+        public long position() {
+            return windowStart + window.position();
+        }
+
+        public void seek(long position) throws IOException {
+            if (position >= windowStart && position < windowStart + window.limit())
+                window.position((int) (position - windowStart));
+            else
+                map(position);
+        }
+
+        public boolean hasRemaining() {
+            return position() < size;
+        }
+
+        public int getByte() throws IOException {
+            ensure(1);
+            return window.get() & 0xFF;
+        }
+
+        public int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        public long getLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        public int getVarInt() throws IOException {
+            int v = 0, shift = 0, b;
+            do {
+                b = getByte();
+                v |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        public long getVarLong() throws IOException {
+            long v = 0;
+            int shift = 0, b;
+            do {
+                b = getByte();
+                v |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return v;
+        }
+
+        public void getBytes(byte[] dst, int off, int len) throws IOException {
+            while (len > 0) {
+                ensure(1);
+                int n = Math.min(len, window.remaining());
+                window.get(dst, off, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : CellPool.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Fish;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Fábrica de peces y tiburones que reutiliza los objetos de las criaturas
+ * muertas en lugar de dejárselos al recolector de basura.
+ *
+ * Cada hilo que simula tiene su propio pool (sin locks): las crías salen
+ * de sus listas libres y los peces comidos y los tiburones que mueren de
+ * hambre se le devuelven con release().
+ *
+ * El reciclaje es diferido: una criatura devuelta no se reutiliza hasta
+ * que se llama a recycle() al empezar una generación posterior, cuando ya
+ * nadie puede tener una referencia a ella de la generación en la que murió
+ * (la comparación de fantasmas de ChunkWorker, las celdas de IntentEngine
+ * o los hilos de SimulationWorker que tocan a la vez una fila frontera).
+ * Además recycle() descarta las que siguen en el océano (una carrera entre
+ * dos SimulationWorker puede dar por comido un pez que otro hilo ya había
+ * movido). Si dos hilos se comen el mismo pez a la vez, solo el primer
+ * release() lo acepta: como cada hilo llama a recycle() sin esperar a los
+ * demás, si llegara a dos pools uno podría entregarlo de nuevo antes de que
+ * el otro lo reciclara, y los dos lo entregarían.
+ */
+public final class CellPool {
+
+    // Criaturas libres de cada especie que se conservan como máximo
+    static final int DEFAULT_CAPACITY = 4096;
+
+    private final int capacity;
+
+    private final Fish[] freeFish;
+    private final Shark[] freeSharks;
+    private int fishCount, sharkCount;
+
+    // Devueltas desde el último recycle()
+    private Cell[] dead;
+    private int deadCount;
+
+    // Para medir: criaturas creadas con new y reutilizadas
+    private long created, reused;
+
+    public CellPool() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity Criaturas libres de cada especie que se conservan
+     */
+    public CellPool(int capacity) {
+        this.capacity = capacity;
+        this.freeFish = new Fish[capacity];
+        this.freeSharks = new Shark[capacity];
+        this.dead = new Cell[64];
+    }
+
+    /**
+     * @return Un pez nuevo de edad 0 pendiente de la generación generation
+     */
+    public Fish newFish(int generation) {
+        Fish f;
+        if (fishCount > 0) {
+            f = freeFish[--fishCount];
+            freeFish[fishCount] = null;
+            reused++;
+        } else {
+            f = new Fish();
+            created++;
+        }
+        f.reset(generation);
+        return f;
+    }
+
+    /**
+     * @return Un tiburón nuevo de edad 0 pendiente de la generación generation
+     */
+    public Shark newShark(int generation) {
+        Shark s;
+        if (sharkCount > 0) {
+            s = freeSharks[--sharkCount];
+            freeSharks[sharkCount] = null;
+            reused++;
+        } else {
+            s = new Shark();
+            created++;
+        }
+        s.reset(generation);
+        return s;
+    }
+
+    /**
+     * @param species Ocean.FISH, Ocean.SHARK u Ocean.EMPTY
+     * @return Criatura nueva de esa especie (null si species es EMPTY)
+     */
+    public Cell newCell(byte species, int generation) {
+        return species == Ocean.SHARK ? newShark(generation)
+                : species == Ocean.FISH ? newFish(generation) : null;
+    }
+
+    /**
+     * Devuelve una criatura que acaba de morir (ya retirada del océano).
+     * No se reutiliza hasta el siguiente recycle(). Si ya la ha devuelto
+     * otro hilo no hace nada.
+     */
+    public void release(Cell c) {
+        // Lock de la propia criatura: solo lo toman los que la devuelven
+        synchronized (c) {
+            if (c.released)
+                return;
+            c.released = true;
+        }
+        if (deadCount == dead.length)
+            dead = Arrays.copyOf(dead, 2 * deadCount);
+        dead[deadCount++] = c;
+    }
+
+    /**
+     * Pasa a las listas libres las criaturas devueltas hasta ahora. Se debe
+     * llamar al empezar una generación, cuando todos los hilos han
+     * terminado la anterior.
+     *
+     * @param ocean Océano en el que vivían (para descartar las que siguen en él)
+     * @param keep false para descartarlas todas (pool desactivado)
+     */
+    public void recycle(Ocean ocean, boolean keep) {
+        if (deadCount == 0)
+            return;
+        if (keep) {
+            OceanStorage storage = ocean.getStorage();
+            synchronized (ocean) {
+                for (int k = 0; k < deadCount; k++) {
+                    Cell c = dead[k];
+                    if (storage.get(c.posX, c.posY) != c)
+                        reuse(c);
+                }
+            }
+        }
+        Arrays.fill(dead, 0, deadCount, null);
+        deadCount = 0;
+    }
+
+    /**
+     * Pasa directamente a la lista libre una criatura que ningún otro hilo
+     * puede ver, sin esperar a recycle() (por ejemplo las que sustituye
+     * OceanFiller, con los motores parados). No hace nada si ya está en
+     * algún pool.
+     */
+    void reuse(Cell c) {
+        if (c.pooled)
+            return;
+        if (c.species == Ocean.SHARK) {
+            if (sharkCount < capacity) {
+                c.pooled = true;
+                freeSharks[sharkCount++] = (Shark) c;
+            }
+        } else if (fishCount < capacity) {
+            c.pooled = true;
+            freeFish[fishCount++] = (Fish) c;
+        }
+    }
+
+    /**
+     * @return Criaturas creadas con new desde que se creó el pool
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return Criaturas reutilizadas desde que se creó el pool
+     */
+    public long getReused() {
+        return reused;
+    }
+}
@@ -0,0 +1,132 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : CellPoolBenchmark.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mide el efecto de reutilizar las criaturas muertas (CellPool) en un
+ * océano con mucha actividad: memoria reservada por generación, número y
+ * tiempo de las pausas del recolector de basura y tiempo por generación.
+ *
+ * Cada tipo de paso (secuencial, workers, franjas privadas e intenciones)
+ * se ejecuta dos veces con la misma semilla, con el pool activado y
+ * desactivado (SharkFishModel.setCellPooling). La memoria reservada se
+ * suma en todos los hilos (com.sun.management.ThreadMXBean); incluye
+ * también lo que no son criaturas (p. ej. los Point de los vecinos).
+ *
+ * Uso: CellPoolBenchmark [ancho] [alto] [generaciones] [hilos]
+ */
+public class CellPoolBenchmark {
+
+    private static final int WARMUP = 20;
+
+    private final int width, height, generations, threads;
+
+    private CellPoolBenchmark(int width, int height, int generations, int threads) {
+        this.width = width;
+        this.height = height;
+        this.generations = generations;
+        this.threads = threads;
+    }
+
+    /**
+     * @return {ms por generación, KB reservados por generación, pausas de GC,
+     *          ms de GC, peces, tiburones}
+     */
+    private double[] run(String mode, boolean pooling) {
+        SharkFishModel model = new SharkFishModel(width, height,
+                mode.equals("secuencial") ? 1 : threads);
+        model.setVerbose(false);
+        model.setCellPooling(pooling);
+        model.fillOceanRandomly(.3, .1, 1L);
+        if (mode.equals("franjas"))
+            model.setPrivateChunks(true);
+        else if (mode.equals("intenciones"))
+            model.setIntentEngine(IntentEngine.Priority.RANDOM);
+
+        for (int g = 0; g < WARMUP; g++)
+            model.step();
+        System.gc();
+
+        Map<Long, Long> allocated = allocatedBytes();
+        long[] gc = gcTotals();
+        long start = System.nanoTime();
+        for (int g = 0; g < generations; g++)
+            model.step();
+        long elapsed = System.nanoTime() - start;
+        long[] gcEnd = gcTotals();
+
+        long bytes = 0;
+        for (Map.Entry<Long, Long> e : allocatedBytes().entrySet())
+            bytes += e.getValue() - allocated.getOrDefault(e.getKey(), 0L);
+
+        double[] result = {elapsed * 1e-6 / generations, bytes / 1024.0 / generations,
+                gcEnd[0] - gc[0], gcEnd[1] - gc[1],
+                model.getFishCount(), model.getSharkCount()};
+        model.shutdown();
+        return result;
+    }
+
+    /**
+     * @return Bytes reservados hasta ahora por cada hilo vivo
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        com.sun.management.ThreadMXBean bean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] ids = bean.getAllThreadIds();
+        long[] bytes = bean.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i++)
+            if (bytes[i] >= 0)
+                result.put(ids[i], bytes[i]);
+        return result;
+    }
+
+    /**
+     * @return {recolecciones, ms} acumulados de todos los recolectores
+     */
+    private static long[] gcTotals() {
+        long count = 0, time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{count, time};
+    }
+
+    private void compare(String mode) {
+        double[] off = run(mode, false);
+        double[] on = run(mode, true);
+        // Secuencial y por intenciones el resultado no depende del pool
+        boolean same = !(mode.equals("secuencial") || mode.equals("intenciones"))
+                || off[4] == on[4] && off[5] == on[5];
+        System.out.printf("%-12s sin pool %8.3f ms %9.1f KB/gen %4.0f GC (%5.0f ms)   "
+                        + "con pool %8.3f ms %9.1f KB/gen %4.0f GC (%5.0f ms)%s%n",
+                mode, off[0], off[1], off[2], off[3], on[0], on[1], on[2], on[3],
+                same ? "" : "   DISTINTO");
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : width;
+        int generations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : SharkFishModel.NUM_THREADS;
+
+        CellPoolBenchmark b = new CellPoolBenchmark(width, height, generations, threads);
+        System.out.println("Océano " + width + "x" + height + " (30% peces, 10% tiburones), "
+                + generations + " generaciones, " + threads + " hilos");
+        for (String mode : new String[]{"secuencial", "workers", "franjas", "intenciones"})
+            b.compare(mode);
+    }
+}
@@ -0,0 +1,118 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : ChaosOcean.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.awt.Point;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Océano para pruebas de estrés (ConcurrencyStress): antes de cada acceso a
+ * una celda o consulta de vecinos, el hilo que llama cede la CPU con
+ * probabilidad yieldProbability (Thread.yield()) y, con una probabilidad
+ * diez veces menor, se duerme unos microsegundos. Así se abren las
+ * ventanas entre dos llamadas sincronizadas que en una ejecución normal
+ * casi nunca se cruzan, por ejemplo entre getFishNeighbours() y el
+ * getField() con el que un tiburón comprueba que el pez sigue ahí.
+ *
+ * Las pausas se hacen fuera del lock del océano: las llamadas anidadas
+ * (getField() desde getFreeNeighbours()) no ceden.
+ *
+ * Además cuenta las pisadas: setField() de una criatura sobre una celda
+ * ocupada por otra. Las reglas solo mueven criaturas a celdas libres o
+ * vacían antes la celda del pez que se comen, así que cada pisada es una
+ * criatura perdida.
+ *
+ * Solo afecta a los motores que trabajan con getField()/setField() de este
+ * océano (secuencial, workers y teselas); las franjas privadas y el de
+ * intenciones escriben en el almacenamiento por otros caminos.
+ */
+public class ChaosOcean extends Ocean {
+
+    private final double yieldProbability;
+
+    private final AtomicLong pauses = new AtomicLong();
+    private final AtomicLong overwrites = new AtomicLong();
+
+    /**
+     * @param yieldProbability Probabilidad de ceder la CPU en cada acceso
+     */
+    public ChaosOcean(int width, int height, double yieldProbability) {
+        super(width, height);
+        this.yieldProbability = yieldProbability;
+    }
+
+    /**
+     * Cede la CPU o se duerme al azar, salvo que se tenga ya el lock.
+     */
+    private void pause() {
+        if (yieldProbability <= 0 || Thread.holdsLock(this))
+            return;
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        double p = r.nextDouble();
+        if (p >= yieldProbability)
+            return;
+        pauses.incrementAndGet();
+        if (p < yieldProbability / 10)
+            LockSupport.parkNanos(r.nextInt(1_000, 50_000));
+        else
+            Thread.yield();
+    }
+
+    @Override
+    public Cell setField(int x, int y, Cell value) {
+        pause();
+        synchronized (this) {
+            if (value != null) {
+                Cell previous = super.getField(x, y);
+                if (previous != null && previous != value)
+                    overwrites.incrementAndGet();
+            }
+            return super.setField(x, y, value);
+        }
+    }
+
+    @Override
+    public Cell getField(int x, int y) {
+        pause();
+        return super.getField(x, y);
+    }
+
+    @Override
+    public Point[] getFreeNeighbours(int x, int y) {
+        pause();
+        return super.getFreeNeighbours(x, y);
+    }
+
+    @Override
+    public Point[] getSharkNeighbours(int x, int y) {
+        pause();
+        return super.getSharkNeighbours(x, y);
+    }
+
+    @Override
+    public Point[] getFishNeighbours(int x, int y) {
+        pause();
+        return super.getFishNeighbours(x, y);
+    }
+
+    /**
+     * @return Pausas hechas desde la última llamada (y las pone a 0)
+     */
+    public long takePauses() {
+        return pauses.getAndSet(0);
+    }
+
+    /**
+     * @return Pisadas desde la última llamada (y las pone a 0)
+     */
+    public long takeOverwrites() {
+        return overwrites.getAndSet(0);
+    }
+}
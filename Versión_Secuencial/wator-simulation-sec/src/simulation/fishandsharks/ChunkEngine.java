@@ -0,0 +1,117 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : ChunkEngine.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+/**
+ * Motor por franjas privadas: cada uno de los hilos (ChunkWorker) solo
+ * escribe en sus filas y en sus copias de las filas vecinas, y los cruces
+ * de frontera se pasan por buzones. Cada franja necesita al menos
+ * 2*OceanChunk.MIN_HALF_ROWS filas. Los generadores aleatorios de las
+ * franjas se siembran a partir del estado del generador del océano.
+ *
+ * Los workers leen la generación y los ciclos de reproducción del modelo,
+ * así que este motor solo sirve para el modelo que lo crea.
+ */
+public class ChunkEngine implements SimulationEngine {
+
+    private final Ocean ocean;
+    private final ChunkWorker[] workers;
+    private final SynchronizationManager syncManager;
+
+    /**
+     * @throws IllegalArgumentException Si el océano es demasiado pequeño
+     *         para threads franjas
+     */
+    ChunkEngine(SharkFishModel model, int threads, boolean verbose) {
+        this.ocean = model.getOcean();
+        int[] bounds = OceanChunk.split(ocean.getHeight(), threads);
+        syncManager = new SynchronizationManager(threads);
+        syncManager.setVerbose(verbose);
+        workers = new ChunkWorker[threads];
+        for (int i = 0; i < threads; i++) {
+            OceanChunk chunk = new OceanChunk(ocean, bounds[i], bounds[i + 1] - bounds[i]);
+            workers[i] = new ChunkWorker(i, chunk, model, syncManager);
+        }
+        reseed();
+        ChunkWorker.link(workers);
+        for (ChunkWorker w : workers)
+            w.start();
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.CHUNKS;
+    }
+
+    /**
+     * @return Estadísticas sumadas de las franjas (null si se interrumpe la espera)
+     */
+    @Override
+    public StatisticsData step(int generation, int fishCycle, int sharkCycle) {
+        try {
+            StatisticsData stats = syncManager.runGeneration();
+            return syncManager.isCountStatistics() ? stats : null;
+        } catch (InterruptedException e) {
+            System.err.println("Error en simulación concurrente: " + e.getMessage());
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Siembra los generadores de las franjas a partir del estado actual del
+     * generador del océano, igual que al crear el motor. El modelo lo llama
+     * al rellenar el océano con semilla o restaurar un estado, para que el
+     * resultado no dependa de cuándo se creó el motor.
+     */
+    void reseed() {
+        long seed = ocean.getRandom().getState();
+        for (ChunkWorker w : workers) {
+            OceanChunk chunk = w.getChunk();
+            chunk.getOcean().getRandom().setSeed(OceanRandom.mix(seed + chunk.getFirstRow()));
+        }
+    }
+
+    /**
+     * Las franjas tienen sus propios contadores de ocupación: se
+     * recalculan tras escribir en el océano compartido desde fuera del paso.
+     */
+    void recountOccupancy() {
+        for (ChunkWorker w : workers)
+            w.getChunk().getOcean().recountOccupancy();
+    }
+
+    @Override
+    public void setCellPooling(boolean enabled) {
+        // Los workers consultan SharkFishModel.isCellPooling()
+    }
+
+    @Override
+    public void setCountStatistics(boolean enabled) {
+        syncManager.setCountStatistics(enabled);
+    }
+
+    @Override
+    public void setVerbose(boolean verbose) {
+        syncManager.setVerbose(verbose);
+    }
+
+    @Override
+    public void close() {
+        for (ChunkWorker w : workers)
+            w.stopWorker();
+        try {
+            for (ChunkWorker w : workers)
+                w.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Las franjas escriben en el almacenamiento sin pasar por este océano
+        ocean.recountOccupancy();
+    }
+}
@@ -0,0 +1,289 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : ChunkWorker.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Hilo de trabajo con franja privada: alternativa a SimulationWorker en la
+ * que ningún hilo escribe memoria que otro esté leyendo.
+ *
+ * Cada hilo simula una franja (OceanChunk) cuyas filas propias son una
+ * vista de sus filas del océano compartido y cuyas filas fantasma son
+ * copias privadas de las filas de las franjas vecinas. Los hilos forman un
+ * anillo y solo se comunican por buzones sin locks (Mailbox): cada hilo
+ * tiene uno por vecino.
+ *
+ * Cada generación se simula en dos fases como en DistributedNode (primero
+ * la mitad superior de todas las franjas y después la inferior), de modo
+ * que las filas que toca un hilo en una fase no las toca su vecino:
+ *   1. Envía copias de sus 2 últimas filas al siguiente y recibe del
+ *      anterior su fantasma superior.
+ *   2. Simula su mitad superior. Los movimientos, nacimientos y peces
+ *      comidos que caen en el fantasma solo cambian su copia privada.
+ *   3. Envía al anterior los cambios de su fantasma superior (emigrantes)
+ *      y aplica a sus últimas filas los que le envía el siguiente.
+ *   4-6. Lo mismo para la mitad inferior con el fantasma inferior.
+ *
+ * El inicio y el fin de la generación y la suma de estadísticas se hacen
+ * con un SynchronizationManager, igual que con SimulationWorker. Como cada
+ * franja tiene su propio generador aleatorio y su orden de actualización
+ * es fijo, el resultado solo depende de la semilla y del número de hilos.
+ */
+public class ChunkWorker extends Thread {
+
+    /**
+     * Buzón sin locks: cola concurrente de un único consumidor (el dueño),
+     * que se duerme con park() si está vacía y al que despierta quien
+     * deposita un mensaje.
+     */
+    static final class Mailbox {
+        private final Queue<Patch> queue = new ConcurrentLinkedQueue<>();
+        private volatile Thread owner;
+
+        void post(Patch p) {
+            queue.offer(p);
+            Thread t = owner;
+            if (t != null)
+                LockSupport.unpark(t);
+        }
+
+        Patch take() throws InterruptedException {
+            owner = Thread.currentThread();
+            Patch p;
+            while ((p = queue.poll()) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    throw new InterruptedException();
+            }
+            return p;
+        }
+    }
+
+    /**
+     * Celdas para un bloque de GHOST filas del receptor, a partir de su
+     * fila local row. Con index == null el bloque es completo (filas
+     * fantasma); si no, solo las posiciones index[k] (fila*ancho + x dentro
+     * del bloque) cambian a cells[k] (emigrantes y celdas vaciadas).
+     */
+    static final class Patch {
+        final int row;
+        final int[] index;
+        final Cell[] cells;
+
+        Patch(int row, int[] index, Cell[] cells) {
+            this.row = row;
+            this.index = index;
+            this.cells = cells;
+        }
+    }
+
+    private final int threadId;
+    private final OceanChunk chunk;
+    private final Ocean shared;
+    private final SharkFishModel model;
+    private final SynchronizationManager syncManager;
+
+    // Vecinos del anillo (el siguiente tiene las filas de debajo)
+    private ChunkWorker prev, next;
+    private final Mailbox fromPrev = new Mailbox(), fromNext = new Mailbox();
+
+    // Celdas recibidas en el último fantasma, para detectar qué ha cambiado
+    private final Cell[] ghostIn;
+
+    // Teselas modificadas del océano local
+    private final long[] dirty;
+
+    // Ocupación de los bloques de la fila que se está recorriendo
+    private final int[] occupancy;
+
+    // Crías y criaturas muertas de la franja
+    private final CellPool cellPool = new CellPool();
+
+    private volatile boolean running = true;
+
+    /**
+     * @param id Índice del hilo en el anillo
+     * @param chunk Franja sobre el océano compartido (OceanChunk(Ocean, int, int))
+     */
+    public ChunkWorker(int id, OceanChunk chunk, SharkFishModel model,
+                       SynchronizationManager sync) {
+        super("ChunkWorker-" + id);
+        this.threadId = id;
+        this.chunk = chunk;
+        this.shared = model.getOcean();
+        this.model = model;
+        this.syncManager = sync;
+        this.ghostIn = new Cell[OceanChunk.GHOST * chunk.getWidth()];
+        this.dirty = new long[chunk.getOcean().getDirtyWords()];
+        this.occupancy = new int[chunk.getOcean().getOccTilesX()];
+        setDaemon(true);
+    }
+
+    /**
+     * Une los hilos en anillo (antes de start()).
+     */
+    static void link(ChunkWorker[] workers) {
+        for (int i = 0; i < workers.length; i++) {
+            workers[i].prev = workers[(i + workers.length - 1) % workers.length];
+            workers[i].next = workers[(i + 1) % workers.length];
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (running) {
+                syncManager.waitForGenerationStart(threadId);
+                if (!running)
+                    break;
+
+                cellPool.recycle(chunk.getOcean(), model.isCellPooling());
+                simulateGeneration();
+                publishDirtyTiles();
+                if (syncManager.isCountStatistics())
+                    syncManager.addStatistics(chunk.statistics());
+                else
+                    syncManager.skipStatistics();
+                syncManager.waitForGenerationEnd();
+            }
+        } catch (InterruptedException e) {
+            // stopWorker()
+        }
+    }
+
+    private void simulateGeneration() throws InterruptedException {
+        int g = OceanChunk.GHOST;
+
+        // Mitad superior
+        next.fromPrev.post(rows(chunk.lowerTo() - g, next.chunk.topGhost()));
+        installGhost(fromPrev.take(), chunk.topGhost());
+        simulateRows(chunk.upperFrom(), chunk.upperTo());
+        prev.fromNext.post(emigrants(chunk.topGhost(), prev.chunk.lowerTo() - g));
+        apply(fromNext.take());
+
+        // Mitad inferior
+        prev.fromNext.post(rows(chunk.upperFrom(), prev.chunk.bottomGhost()));
+        installGhost(fromNext.take(), chunk.bottomGhost());
+        simulateRows(chunk.lowerFrom(), chunk.lowerTo());
+        next.fromPrev.post(emigrants(chunk.bottomGhost(), next.chunk.upperFrom()));
+        apply(fromPrev.take());
+    }
+
+    /**
+     * Copias de las GHOST filas locales desde from, para la fila row del receptor.
+     */
+    private Patch rows(int from, int row) {
+        Ocean o = chunk.getOcean();
+        int width = chunk.getWidth();
+        Cell[] cells = new Cell[ghostIn.length];
+        for (int i = 0; i < cells.length; i++)
+            cells[i] = OceanChunk.copyOf(o.getField(i % width, from + i / width));
+        return new Patch(row, null, cells);
+    }
+
+    private void installGhost(Patch p, int row) {
+        apply(p);
+        Ocean o = chunk.getOcean();
+        int width = chunk.getWidth();
+        for (int i = 0; i < ghostIn.length; i++)
+            ghostIn[i] = o.getField(i % width, row + i / width);
+    }
+
+    /**
+     * Cambios del fantasma que empieza en la fila local from respecto a lo
+     * recibido, para la fila row del receptor (su dueño).
+     */
+    private Patch emigrants(int from, int row) {
+        Ocean o = chunk.getOcean();
+        int width = chunk.getWidth();
+        int[] index = new int[8];
+        Cell[] cells = new Cell[8];
+        int n = 0;
+        for (int i = 0; i < ghostIn.length; i++) {
+            Cell c = o.getField(i % width, from + i / width);
+            if (c == ghostIn[i])
+                continue;
+            if (n == index.length) {
+                index = Arrays.copyOf(index, 2 * n);
+                cells = Arrays.copyOf(cells, 2 * n);
+            }
+            index[n] = i;
+            cells[n++] = OceanChunk.copyOf(c);
+        }
+        return new Patch(row, Arrays.copyOf(index, n), Arrays.copyOf(cells, n));
+    }
+
+    private void apply(Patch p) {
+        Ocean o = chunk.getOcean();
+        int width = chunk.getWidth();
+        if (p.index == null) {
+            for (int i = 0; i < p.cells.length; i++)
+                o.setField(i % width, p.row + i / width, p.cells[i]);
+        } else {
+            for (int k = 0; k < p.index.length; k++)
+                o.setField(p.index[k] % width, p.row + p.index[k] / width, p.cells[k]);
+        }
+    }
+
+    private void simulateRows(int from, int to) {
+        Ocean o = chunk.getOcean();
+        int generation = model.getGeneration();
+        int fishCycle = model.getFishCycle();
+        int sharkCycle = model.getSharkCycle();
+        for (int y = from; y < to; y++) {
+            o.copyOccupancyRow(y, occupancy);
+            for (int x = 0; x < chunk.getWidth(); x++) {
+                if ((x & (Ocean.OCC_TILE - 1)) == 0 && occupancy[x >> Ocean.OCC_SHIFT] == 0) {
+                    x += Ocean.OCC_TILE - 1;
+                    continue;
+                }
+                Cell c = o.getField(x, y);
+                if (c != null && c.isPending(generation))
+                    c.update(o, x, y, generation, fishCycle, sharkCycle, cellPool);
+            }
+        }
+    }
+
+    /**
+     * Pasa al océano compartido las teselas modificadas de las filas propias
+     * (las del océano local están desplazadas por las filas fantasma).
+     */
+    private void publishDirtyTiles() {
+        Ocean o = chunk.getOcean();
+        Arrays.fill(dirty, 0);
+        o.drainDirtyTiles(dirty);
+        int tilesX = o.getTilesX(), width = chunk.getWidth();
+        for (int t = 0; t < tilesX * o.getTilesY(); t++) {
+            if ((dirty[t >> 6] & (1L << t)) == 0)
+                continue;
+            int fromY = Math.max(chunk.upperFrom(), (t / tilesX) << Ocean.TILE_SHIFT);
+            int toY = Math.min(chunk.lowerTo(), ((t / tilesX) + 1) << Ocean.TILE_SHIFT);
+            if (fromY >= toY)
+                continue;
+            int fromX = (t % tilesX) << Ocean.TILE_SHIFT;
+            int offset = chunk.getFirstRow() - OceanChunk.GHOST;
+            shared.touchRegion(fromX, fromY + offset,
+                    Math.min(width, fromX + Ocean.TILE), toY + offset);
+        }
+    }
+
+    OceanChunk getChunk() {
+        return chunk;
+    }
+
+    public void stopWorker() {
+        running = false;
+        interrupt();
+    }
+}
@@ -0,0 +1,258 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : ConcurrencyStress.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Prueba de estrés de los motores concurrentes: muchas generaciones con
+ * muchos hilos sobre un ChaosOcean, que cede la CPU al azar entre los
+ * accesos a las celdas, y comprobación de invariantes tras cada generación
+ * (con los hilos parados entre dos pasos):
+ *
+ * - duplicadas: la misma criatura guardada en dos celdas.
+ * - sin procesar / procesadas dos veces: al terminar la generación g todas
+ *   las criaturas deben tener su marca de generación en g (Cell.update()
+ *   la incrementa una vez; las crías nacen con la de su madre). Una marca
+ *   anterior es una criatura que ningún hilo ha actualizado; una posterior,
+ *   una que han actualizado dos hilos a la vez.
+ * - en el pool: una criatura colocada que está en la lista libre de un
+ *   CellPool (se reutilizaría estando viva), o un tiburón sin energía.
+ * - pisadas: setField() de una criatura sobre otra (ver ChaosOcean), es
+ *   decir, criaturas perdidas.
+ * - ocupación: los contadores de ocupación por bloque del océano no
+ *   coinciden con su contenido (no se comprueba con franjas privadas, que
+ *   solo los recalculan al cerrarse).
+ * - estadísticas: peces + tiburones + vacías no suman ancho*alto o no
+ *   coinciden con el contenido del océano.
+ *
+ * Termina con código 1 si se viola algún invariante.
+ *
+ * Uso (parámetros clave=valor):
+ *   java simulation.fishandsharks.ConcurrencyStress [engines=workers,teselas]
+ *        [width=128] [height=128] [threads=16] [generations=500]
+ *        [yield=0.02] [fish=0.3] [sharks=0.1] [cycles=2,3] [seed=1]
+ */
+public class ConcurrencyStress {
+
+    // Nombres de los invariantes, en el orden de Report.counts
+    static final String[] INVARIANTS = {
+            "duplicadas", "sin procesar", "procesadas dos veces", "en el pool",
+            "pisadas", "ocupación", "estadísticas"
+    };
+    static final int DUPLICATES = 0, STALE = 1, TWICE = 2, POOLED = 3,
+            OVERWRITES = 4, OCCUPANCY = 5, STATISTICS = 6;
+
+    /**
+     * Violaciones de una ejecución: cuántas hay de cada invariante y la
+     * primera generación en que aparece cada una.
+     */
+    static final class Report {
+        final long[] counts = new long[INVARIANTS.length];
+        final int[] first = new int[INVARIANTS.length];
+        int generations;
+        long pauses;
+
+        Report() {
+            Arrays.fill(first, -1);
+        }
+
+        void add(int invariant, long n, int generation) {
+            if (n == 0)
+                return;
+            counts[invariant] += n;
+            if (first[invariant] < 0)
+                first[invariant] = generation;
+        }
+
+        boolean clean() {
+            for (long n : counts)
+                if (n != 0)
+                    return false;
+            return true;
+        }
+    }
+
+    private final int width, height, threads, generations;
+    private final double yieldProbability, fish, sharks;
+    private final int fishCycle, sharkCycle;
+    private final long seed;
+
+    ConcurrencyStress(int width, int height, int threads, int generations,
+                      double yieldProbability, double fish, double sharks,
+                      int fishCycle, int sharkCycle, long seed) {
+        this.width = width;
+        this.height = height;
+        this.threads = threads;
+        this.generations = generations;
+        this.yieldProbability = yieldProbability;
+        this.fish = fish;
+        this.sharks = sharks;
+        this.fishCycle = fishCycle;
+        this.sharkCycle = sharkCycle;
+        this.seed = seed;
+    }
+
+    /**
+     * Ejecuta las generaciones con un motor comprobando los invariantes
+     * después de cada una.
+     */
+    Report run(SimulationEngine.Kind kind) {
+        ChaosOcean ocean = new ChaosOcean(width, height, yieldProbability);
+        SharkFishModel model = new SharkFishModel(ocean, threads);
+        model.setVerbose(false);
+        Report report = new Report();
+        try {
+            model.notifyRecycleChanged(fishCycle, sharkCycle);
+            model.fillOceanRandomly(fish, sharks, seed);
+            model.setEngine(kind);
+            // El relleno no pasa por setField()
+            ocean.takeOverwrites();
+            ocean.takePauses();
+
+            for (int g = 0; g < generations && model.isSimulationActive(); g++) {
+                model.step();
+                report.generations++;
+                report.add(OVERWRITES, ocean.takeOverwrites(), model.getGeneration());
+                check(model, kind, report);
+            }
+            report.pauses = ocean.takePauses();
+            return report;
+        } finally {
+            model.shutdown();
+        }
+    }
+
+    /**
+     * Comprueba los invariantes sobre el océano entre dos pasos.
+     */
+    private void check(SharkFishModel model, SimulationEngine.Kind kind, Report report) {
+        Ocean ocean = model.getOcean();
+        OceanStorage storage = ocean.getStorage();
+        int generation = model.getGeneration();
+        IdentityHashMap<Cell, Boolean> seen = new IdentityHashMap<>();
+        int occTilesX = ocean.getOccTilesX();
+        int[] blocks = new int[occTilesX * ocean.getOccTilesY()];
+        long duplicates = 0, stale = 0, twice = 0, pooled = 0;
+        int fishCount = 0, sharkCount = 0;
+
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++) {
+                Cell c = storage.get(x, y);
+                if (c == null)
+                    continue;
+                blocks[(y >> Ocean.OCC_SHIFT) * occTilesX + (x >> Ocean.OCC_SHIFT)]++;
+                if (seen.put(c, Boolean.TRUE) != null)
+                    duplicates++;
+                if (c.getGeneration() < generation)
+                    stale++;
+                else if (c.getGeneration() > generation)
+                    twice++;
+                if (c.pooled || c.species == Ocean.SHARK && ((Shark) c).lifeIndex < 1)
+                    pooled++;
+                if (c.species == Ocean.SHARK)
+                    sharkCount++;
+                else
+                    fishCount++;
+            }
+        report.add(DUPLICATES, duplicates, generation);
+        report.add(STALE, stale, generation);
+        report.add(TWICE, twice, generation);
+        report.add(POOLED, pooled, generation);
+
+        if (kind != SimulationEngine.Kind.CHUNKS) {
+            int[] row = new int[occTilesX];
+            long wrong = 0;
+            for (int by = 0; by < ocean.getOccTilesY(); by++) {
+                ocean.copyOccupancyRow(by << Ocean.OCC_SHIFT, row);
+                for (int bx = 0; bx < occTilesX; bx++)
+                    if (row[bx] != blocks[by * occTilesX + bx])
+                        wrong++;
+            }
+            report.add(OCCUPANCY, wrong, generation);
+        }
+
+        if (model.getFishCount() + model.getSharkCount() + model.getEmptyCount() != width * height
+                || model.getFishCount() != fishCount || model.getSharkCount() != sharkCount)
+            report.add(STATISTICS, 1, generation);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        List<SimulationEngine.Kind> kinds = new ArrayList<>();
+        int width = 128, height = 128, threads = 16, generations = 500;
+        int fishCycle = 2, sharkCycle = 3;
+        double yieldProbability = .02, fish = .3, sharks = .1;
+        long seed = 1;
+        for (String arg : args) {
+            String[] kv = arg.split("=", 2);
+            if (kv.length != 2) {
+                System.err.println("Parámetro no válido: " + arg);
+                System.exit(2);
+            }
+            switch (kv[0]) {
+                case "engines":
+                    for (String name : kv[1].split(","))
+                        kinds.add(SimulationEngine.Kind.parse(name));
+                    break;
+                case "width": width = Integer.parseInt(kv[1]); break;
+                case "height": height = Integer.parseInt(kv[1]); break;
+                case "threads": threads = Integer.parseInt(kv[1]); break;
+                case "generations": generations = Integer.parseInt(kv[1]); break;
+                case "yield": yieldProbability = Double.parseDouble(kv[1]); break;
+                case "fish": fish = Double.parseDouble(kv[1]); break;
+                case "sharks": sharks = Double.parseDouble(kv[1]); break;
+                case "cycles":
+                    String[] c = kv[1].split(",");
+                    fishCycle = Integer.parseInt(c[0]);
+                    sharkCycle = Integer.parseInt(c[1]);
+                    break;
+                case "seed": seed = Long.parseLong(kv[1]); break;
+                default:
+                    System.err.println("Parámetro desconocido: " + kv[0]);
+                    System.exit(2);
+            }
+        }
+        if (kinds.isEmpty()) {
+            kinds.add(SimulationEngine.Kind.WORKERS);
+            kinds.add(SimulationEngine.Kind.TILED);
+        }
+
+        ConcurrencyStress stress = new ConcurrencyStress(width, height, threads, generations,
+                yieldProbability, fish, sharks, fishCycle, sharkCycle, seed);
+        System.out.printf(Locale.ROOT, "Océano %dx%d, %d hilos, %d generaciones, cesión %.3f%n",
+                width, height, threads, generations, yieldProbability);
+
+        boolean failed = false;
+        for (SimulationEngine.Kind kind : kinds) {
+            Report r;
+            try {
+                r = stress.run(kind);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-12s no aplicable: %s%n", kind, e.getMessage());
+                continue;
+            }
+            System.out.printf("%-12s %d generaciones, %d pausas: %s%n", kind, r.generations,
+                    r.pauses, r.clean() ? "correcto" : "VIOLACIONES");
+            for (int i = 0; i < INVARIANTS.length; i++)
+                if (r.counts[i] != 0)
+                    System.out.printf("    %-22s %8d (primera en la generación %d)%n",
+                            INVARIANTS[i], r.counts[i], r.first[i]);
+            failed |= !r.clean();
+        }
+        System.exit(failed ? 1 : 0);
+    }
+}
@@ -0,0 +1,203 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : DensityPyramid.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+
+/**
+ * Pirámide de conteos por bloques para dibujar océanos enormes alejados.
+ *
+ * El nivel 0 cuenta peces y tiburones en bloques de 8x8 celdas; cada nivel
+ * siguiente suma bloques de 2x2 del anterior, hasta llegar a un único
+ * bloque. Para dibujar con s píxeles por celda se usa el nivel cuyo bloque
+ * ocupa al menos un píxel, así que el coste de dibujar solo depende de los
+ * píxeles de la vista.
+ *
+ * Se recalcula entera entre dos generaciones (compute), repartiendo las
+ * filas en bandas entre los hilos de ParallelBands, y se publica mediante
+ * un TripleBuffer: la vista lee siempre una pirámide completa de una única
+ * generación sin bloquear a la simulación.
+ */
+public class DensityPyramid {
+
+    // Bloques de 2^BASE_SHIFT x 2^BASE_SHIFT celdas en el nivel 0
+    public static final int BASE_SHIFT = 3;
+
+    /**
+     * Conteos de todos los niveles para una generación.
+     */
+    public static class Levels {
+        private final int width, height;
+        private final int[] blocksX, blocksY;
+        private final int[][] fish, sharks;
+        private int generation = -1;
+
+        Levels(int width, int height) {
+            this.width = width;
+            this.height = height;
+
+            int n = 1;
+            while ((width - 1) >> (BASE_SHIFT + n - 1) > 0 || (height - 1) >> (BASE_SHIFT + n - 1) > 0)
+                n++;
+            blocksX = new int[n];
+            blocksY = new int[n];
+            fish = new int[n][];
+            sharks = new int[n][];
+            for (int l = 0; l < n; l++) {
+                int shift = BASE_SHIFT + l;
+                blocksX[l] = ((width - 1) >> shift) + 1;
+                blocksY[l] = ((height - 1) >> shift) + 1;
+                fish[l] = new int[blocksX[l] * blocksY[l]];
+                sharks[l] = new int[blocksX[l] * blocksY[l]];
+            }
+        }
+
+        public int getLevels() {
+            return blocksX.length;
+        }
+
+        /**
+         * @return Log2 del lado (en celdas) de los bloques del nivel
+         */
+        public int getBlockShift(int level) {
+            return BASE_SHIFT + level;
+        }
+
+        public int getBlocksX(int level) {
+            return blocksX[level];
+        }
+
+        public int getBlocksY(int level) {
+            return blocksY[level];
+        }
+
+        /**
+         * @return Peces por bloque (índice = by*getBlocksX(level) + bx). No se debe modificar.
+         */
+        public int[] getFish(int level) {
+            return fish[level];
+        }
+
+        /**
+         * @return Tiburones por bloque (índice = by*getBlocksX(level) + bx). No se debe modificar.
+         */
+        public int[] getSharks(int level) {
+            return sharks[level];
+        }
+
+        /**
+         * @return Celdas de la columna de bloques bx (los del borde pueden ser más estrechos)
+         */
+        public int getBlockWidth(int level, int bx) {
+            int shift = BASE_SHIFT + level;
+            return Math.min(width, (bx + 1) << shift) - (bx << shift);
+        }
+
+        /**
+         * @return Celdas de la fila de bloques by (los del borde pueden ser más bajos)
+         */
+        public int getBlockHeight(int level, int by) {
+            int shift = BASE_SHIFT + level;
+            return Math.min(height, (by + 1) << shift) - (by << shift);
+        }
+
+        /**
+         * @return Generación de los conteos, o -1 si aún no se han calculado
+         */
+        public int getGeneration() {
+            return generation;
+        }
+    }
+
+    private final Ocean ocean;
+    private final ParallelBands bands;
+    private final TripleBuffer<Levels> buffers;
+
+    public DensityPyramid(Ocean ocean, ParallelBands bands) {
+        this.ocean = ocean;
+        this.bands = bands;
+        this.buffers = new TripleBuffer<>(() -> new Levels(ocean.getWidth(), ocean.getHeight()));
+    }
+
+    /**
+     * Recalcula la pirámide y la publica.
+     * Solo se debe llamar con la simulación detenida entre dos pasos.
+     */
+    public void compute(int generation) {
+        Levels l = buffers.back();
+        int width = ocean.getWidth();
+
+        // Nivel 0: recorrido del océano por bandas de filas de bloques
+        int[] fish0 = l.fish[0], sharks0 = l.sharks[0];
+        int bx0 = l.blocksX[0];
+        bands.forEach(0, ocean.getHeight(), 1 << BASE_SHIFT, (from, to) -> {
+            int first = (from >> BASE_SHIFT) * bx0, last = (((to - 1) >> BASE_SHIFT) + 1) * bx0;
+            Arrays.fill(fish0, first, last, 0);
+            Arrays.fill(sharks0, first, last, 0);
+            byte[] row = new byte[width];
+            for (int y = from; y < to; y++) {
+                ocean.copyRowTypes(y, row);
+                int base = (y >> BASE_SHIFT) * bx0;
+                for (int x = 0; x < width; x++) {
+                    byte t = row[x];
+                    if (t == Ocean.FISH)
+                        fish0[base + (x >> BASE_SHIFT)]++;
+                    else if (t == Ocean.SHARK)
+                        sharks0[base + (x >> BASE_SHIFT)]++;
+                }
+            }
+        });
+
+        // Niveles superiores: suma de 2x2 bloques del nivel anterior
+        for (int level = 1; level < l.getLevels(); level++) {
+            int[] pf = l.fish[level - 1], ps = l.sharks[level - 1];
+            int[] f = l.fish[level], s = l.sharks[level];
+            int pbx = l.blocksX[level - 1], pby = l.blocksY[level - 1], bx = l.blocksX[level];
+            bands.forEach(0, l.blocksY[level], 1, (from, to) -> {
+                for (int by = from; by < to; by++) {
+                    int y0 = 2 * by, y1 = Math.min(pby - 1, y0 + 1);
+                    for (int x = 0; x < bx; x++) {
+                        int x0 = 2 * x, x1 = Math.min(pbx - 1, x0 + 1);
+                        int sf = pf[y0 * pbx + x0], ss = ps[y0 * pbx + x0];
+                        if (x1 != x0) {
+                            sf += pf[y0 * pbx + x1];
+                            ss += ps[y0 * pbx + x1];
+                        }
+                        if (y1 != y0) {
+                            sf += pf[y1 * pbx + x0];
+                            ss += ps[y1 * pbx + x0];
+                            if (x1 != x0) {
+                                sf += pf[y1 * pbx + x1];
+                                ss += ps[y1 * pbx + x1];
+                            }
+                        }
+                        f[by * bx + x] = sf;
+                        s[by * bx + x] = ss;
+                    }
+                }
+            });
+        }
+
+        l.generation = generation;
+        buffers.publish();
+    }
+
+    /**
+     * @return true si hay una pirámide publicada que la vista no ha recogido
+     */
+    public boolean hasFresh() {
+        return buffers.hasFresh();
+    }
+
+    /**
+     * @return Última pirámide publicada (solo desde el hilo de la vista)
+     */
+    public Levels latest() {
+        return buffers.latest();
+    }
+}
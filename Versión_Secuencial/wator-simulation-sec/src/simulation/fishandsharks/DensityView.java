@@ -0,0 +1,228 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : DensityView.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import javax.swing.JComponent;
+import javax.swing.Scrollable;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Vista alejada del océano: densidad de peces y tiburones por bloques.
+ *
+ * Cada píxel toma el color de un bloque de la DensityPyramid (mezcla del
+ * color del agua, de los peces y de los tiburones según la proporción de
+ * cada uno en el bloque). Se usa el nivel de la pirámide cuyo bloque ocupa
+ * al menos un píxel, de modo que el coste de cada fotograma depende solo
+ * del tamaño de la vista y no del océano.
+ *
+ * Zoom continuo con la rueda del ratón (centrado en el cursor) y
+ * desplazamiento arrastrando. Como el océano es toroidal, la vista da la
+ * vuelta por los bordes.
+ */
+public class DensityView extends JComponent implements Scrollable {
+
+    private static final long serialVersionUID = 1L;
+
+    // Zoom máximo (píxeles por celda) y factor por paso de la rueda
+    private static final double MAX_SCALE = 8;
+    private static final double WHEEL_ZOOM = 1.15;
+
+    private static final int[] WATER = rgb(Cell.OCEAN_LIGHT.getRGB()),
+            FISH = rgb(Cell.FISH.getRGB()), SHARK = rgb(Cell.SHARK.getRGB());
+
+    private final SharkFishModel model;
+    private final int oceanWidth, oceanHeight;
+
+    private DensityPyramid.Levels levels;
+
+    // Píxeles por celda y celda (con decimales) en la esquina superior izquierda
+    private double scale = -1;
+    private double viewX, viewY;
+
+    private BufferedImage image;
+    private int[] raster;
+
+    // Tablas por columna y fila de la vista (se reutilizan entre fotogramas)
+    private int[] columnBlock = new int[0], columnCells = new int[0];
+    private int[] rowBlock = new int[0], rowCells = new int[0];
+
+    private Point dragStart;
+
+    public DensityView(SharkFishModel model) {
+        this.model = model;
+        this.oceanWidth = model.getOcean().getWidth();
+        this.oceanHeight = model.getOcean().getHeight();
+        setPreferredSize(new Dimension(600, 600));
+
+        MouseAdapter mouse = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getPoint();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart == null || scale <= 0)
+                    return;
+                viewX -= (e.getX() - dragStart.x) / scale;
+                viewY -= (e.getY() - dragStart.y) / scale;
+                dragStart = e.getPoint();
+                repaint();
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+            }
+
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (scale <= 0)
+                    return;
+                double s = Math.max(minScale(), Math.min(MAX_SCALE,
+                        scale * Math.pow(WHEEL_ZOOM, -e.getPreciseWheelRotation())));
+                // La celda bajo el cursor se queda en su sitio
+                viewX += e.getX() / scale - e.getX() / s;
+                viewY += e.getY() / scale - e.getY() / s;
+                scale = s;
+                repaint();
+            }
+        };
+        addMouseListener(mouse);
+        addMouseMotionListener(mouse);
+        addMouseWheelListener(mouse);
+    }
+
+    /**
+     * Recoge la última pirámide publicada y repinta (en el EDT).
+     */
+    public void refresh() {
+        DensityPyramid pyramid = model.getDensityPyramid();
+        if (pyramid != null)
+            levels = pyramid.latest();
+        repaint();
+    }
+
+    /**
+     * @return Zoom con el que el océano entero cabe en la vista
+     */
+    private double minScale() {
+        return Math.min(MAX_SCALE, Math.min((double) Math.max(1, getWidth()) / oceanWidth,
+                (double) Math.max(1, getHeight()) / oceanHeight));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        int w = getWidth(), h = getHeight();
+        if (w <= 0 || h <= 0)
+            return;
+        if (levels == null)
+            refresh();
+        if (levels == null || levels.getGeneration() < 0) {
+            g.setColor(Cell.OCEAN_DARK);
+            g.fillRect(0, 0, w, h);
+            return;
+        }
+        if (scale <= 0)
+            scale = minScale();
+
+        if (image == null || image.getWidth() != w || image.getHeight() != h) {
+            image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            columnBlock = new int[w];
+            columnCells = new int[w];
+            rowBlock = new int[h];
+            rowCells = new int[h];
+        }
+
+        // Nivel con bloques de al menos un píxel
+        int level = 0;
+        while (level < levels.getLevels() - 1 && (1 << levels.getBlockShift(level)) * scale < 1)
+            level++;
+        int shift = levels.getBlockShift(level);
+        int blocksX = levels.getBlocksX(level);
+
+        // Bloque de cada columna y fila de la vista (con vuelta toroidal)
+        for (int x = 0; x < w; x++) {
+            int cell = Math.floorMod((long) Math.floor(viewX + (x + .5) / scale), oceanWidth);
+            columnBlock[x] = cell >> shift;
+            columnCells[x] = levels.getBlockWidth(level, columnBlock[x]);
+        }
+        for (int y = 0; y < h; y++) {
+            int cell = Math.floorMod((long) Math.floor(viewY + (y + .5) / scale), oceanHeight);
+            rowBlock[y] = cell >> shift;
+            rowCells[y] = levels.getBlockHeight(level, rowBlock[y]);
+        }
+
+        int[] fish = levels.getFish(level), sharks = levels.getSharks(level);
+        int i = 0;
+        for (int y = 0; y < h; y++) {
+            int row = rowBlock[y] * blocksX, cellsY = rowCells[y];
+            for (int x = 0; x < w; x++) {
+                int b = row + columnBlock[x];
+                raster[i++] = blend(fish[b], sharks[b], columnCells[x] * cellsY);
+            }
+        }
+
+        g.drawImage(image, 0, 0, null);
+    }
+
+    /**
+     * Mezcla el color del agua con el de peces y tiburones según su proporción.
+     */
+    private static int blend(int fish, int sharks, int cells) {
+        // long: en los niveles altos un bloque tiene millones de celdas
+        long water = cells - fish - sharks;
+        int r = (int) ((WATER[0] * water + FISH[0] * (long) fish + SHARK[0] * (long) sharks) / cells);
+        int g = (int) ((WATER[1] * water + FISH[1] * (long) fish + SHARK[1] * (long) sharks) / cells);
+        int b = (int) ((WATER[2] * water + FISH[2] * (long) fish + SHARK[2] * (long) sharks) / cells);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    private static int[] rgb(int c) {
+        return new int[]{(c >> 16) & 0xFF, (c >> 8) & 0xFF, c & 0xFF};
+    }
+
+    // La vista ocupa siempre todo el viewport del JScrollPane
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 1;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 1;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return true;
+    }
+}
@@ -0,0 +1,291 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : DistributedCoordinator.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Coordinador de la simulación distribuida de Wa-Tor.
+ *
+ * El océano se reparte por franjas de filas entre varios procesos
+ * (DistributedNode) que intercambian sus filas frontera entre ellos por
+ * TCP. El coordinador no simula nada:
+ * - Espera a que se conecten todos los nodos, les asigna su franja
+ *   (OceanChunk.split) y les indica a quién conectarse para formar el anillo.
+ * - Hace de barrera en cada generación: recibe las estadísticas de todos
+ *   los nodos, las suma (igual que SynchronizationManager con los hilos) y
+ *   les ordena seguir o parar (al llegar a las generaciones pedidas o si se
+ *   extinguen las dos especies).
+ *
+ * Los procesos pueden estar en la misma máquina (con spawn=true el propio
+ * coordinador lanza los nodos como JVM separadas) o en varias.
+ *
+ * Uso (parámetros clave=valor):
+ *   java simulation.fishandsharks.DistributedCoordinator nodes=4 spawn=true
+ *        width=1000 height=1000 generations=500 fish=0.1 shark=0.05
+ *        fishCycle=2 sharkCycle=3 seed=1 threads=1 port=5000 out=dist.csv
+ */
+public class DistributedCoordinator implements Closeable {
+
+    // Tipos de mensaje con los nodos
+    static final byte HELLO = 1, CONFIG = 2, STATS = 3, CONTINUE = 4, STOP = 5;
+
+    static final int DEFAULT_PORT = 5000;
+
+    private final ServerSocket server;
+    private final int nodes, width, height, generations;
+    private int fishCycle = 2, sharkCycle = 3, threads = 1;
+    private double fish = .1, sharks = .05;
+    private long seed = 1;
+
+    // Estadísticas globales de cada generación (índice = generación)
+    private final List<StatisticsData> history = new ArrayList<>();
+    private long elapsedNanos;
+
+    /**
+     * Abre el puerto de escucha (0 = cualquiera libre, ver getPort()).
+     */
+    public DistributedCoordinator(int port, int nodes, int width, int height, int generations)
+            throws IOException {
+        if (nodes < 1 || generations < 0)
+            throw new IllegalArgumentException();
+        OceanChunk.split(height, nodes);
+
+        this.server = new ServerSocket(port);
+        this.nodes = nodes;
+        this.width = width;
+        this.height = height;
+        this.generations = generations;
+    }
+
+    public DistributedCoordinator setCycles(int fishCycle, int sharkCycle) {
+        this.fishCycle = fishCycle;
+        this.sharkCycle = sharkCycle;
+        return this;
+    }
+
+    public DistributedCoordinator setDensities(double fish, double sharks) {
+        this.fish = fish;
+        this.sharks = sharks;
+        return this;
+    }
+
+    public DistributedCoordinator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * @param threads Hilos worker de cada nodo
+     */
+    public DistributedCoordinator setThreads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Espera a los nodos y dirige la simulación hasta el final.
+     *
+     * @return Estadísticas globales de cada generación (la 0 es el estado inicial)
+     */
+    public List<StatisticsData> run() throws IOException {
+        NodeLink[] links = new NodeLink[nodes];
+        int[] ports = new int[nodes];
+        try {
+            for (int i = 0; i < nodes; i++) {
+                links[i] = new NodeLink(server.accept(), "node-" + i);
+                DataInputStream in = links[i].receive();
+                DistributedNode.expect(in, HELLO);
+                ports[i] = in.readInt();
+            }
+
+            int[] bounds = OceanChunk.split(height, nodes);
+            for (int i = 0; i < nodes; i++) {
+                int n = (i + 1) % nodes;
+                DataOutputStream out = links[i].begin();
+                out.writeByte(CONFIG);
+                out.writeInt(i);
+                out.writeInt(width);
+                out.writeInt(bounds[i]);
+                out.writeInt(bounds[i + 1] - bounds[i]);
+                out.writeInt(fishCycle);
+                out.writeInt(sharkCycle);
+                out.writeDouble(fish);
+                out.writeDouble(sharks);
+                out.writeLong(seed);
+                out.writeInt(threads);
+                out.writeUTF(links[n].getSocket().getInetAddress().getHostAddress());
+                out.writeInt(ports[n]);
+                links[i].send();
+            }
+
+            long start = System.nanoTime();
+            for (int g = 0; ; g++) {
+                StatisticsData total = reduce(links, g);
+                history.add(total);
+                if (total.fish + total.sharks + total.empty != (long) width * height)
+                    throw new IllegalStateException("Generación " + g + ": las franjas suman "
+                            + (total.fish + total.sharks + total.empty) + " celdas");
+
+                boolean stop = g >= generations || total.fish + total.sharks == 0;
+                for (NodeLink l : links) {
+                    l.begin().writeByte(stop ? STOP : CONTINUE);
+                    l.send();
+                }
+                if (stop)
+                    break;
+            }
+            elapsedNanos = System.nanoTime() - start;
+            return history;
+        } finally {
+            for (NodeLink l : links)
+                if (l != null)
+                    l.close();
+        }
+    }
+
+    /**
+     * Recibe las estadísticas de la generación g de todos los nodos y las suma.
+     */
+    private StatisticsData reduce(NodeLink[] links, int g) throws IOException {
+        int fishCnt = 0, sharkCnt = 0, emptyCnt = 0;
+        Map<Integer, int[]> ages = new TreeMap<>();
+        for (NodeLink l : links) {
+            DataInputStream in = l.receive();
+            DistributedNode.expect(in, STATS);
+            int generation = in.readInt();
+            if (generation != g)
+                throw new IOException("Nodo en la generación " + generation + ", se esperaba " + g);
+            fishCnt += in.readInt();
+            sharkCnt += in.readInt();
+            emptyCnt += in.readInt();
+            for (int i = in.readInt(); i > 0; i--) {
+                int[] counts = ages.computeIfAbsent(in.readInt(), a -> new int[2]);
+                counts[0] += in.readInt();
+                counts[1] += in.readInt();
+            }
+        }
+        return new StatisticsData(fishCnt, sharkCnt, emptyCnt, ages);
+    }
+
+    /**
+     * @return Tiempo desde el estado inicial hasta la última generación
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Lanza los nodos como procesos separados en esta máquina, con la misma
+     * JVM y classpath que el coordinador.
+     */
+    public List<Process> spawnLocalNodes() throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        List<Process> processes = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            processes.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    DistributedNode.class.getName(), "coordinator=127.0.0.1:" + getPort())
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.INHERIT)
+                    .start());
+        }
+        return processes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT, nodes = 2, width = 200, height = 200, generations = 100;
+        int fishCycle = 2, sharkCycle = 3, threads = 1;
+        double fish = .1, sharks = .05;
+        long seed = 1;
+        boolean spawn = false;
+        Path out = null;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0)
+                throw new IllegalArgumentException("Parámetro sin valor: " + arg);
+            String key = arg.substring(0, eq), value = arg.substring(eq + 1);
+
+            switch (key) {
+                case "port": port = Integer.parseInt(value); break;
+                case "nodes": nodes = Integer.parseInt(value); break;
+                case "width": width = Integer.parseInt(value); break;
+                case "height": height = Integer.parseInt(value); break;
+                case "generations": generations = Integer.parseInt(value); break;
+                case "fishCycle": fishCycle = Integer.parseInt(value); break;
+                case "sharkCycle": sharkCycle = Integer.parseInt(value); break;
+                case "threads": threads = Integer.parseInt(value); break;
+                case "fish": fish = Double.parseDouble(value); break;
+                case "shark": sharks = Double.parseDouble(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "spawn": spawn = Boolean.parseBoolean(value); break;
+                case "out": out = Paths.get(value); break;
+                default:
+                    throw new IllegalArgumentException("Parámetro desconocido: " + key);
+            }
+        }
+
+        try (DistributedCoordinator c = new DistributedCoordinator(spawn ? 0 : port,
+                nodes, width, height, generations)) {
+            c.setCycles(fishCycle, sharkCycle).setDensities(fish, sharks)
+                    .setSeed(seed).setThreads(threads);
+
+            List<Process> processes = new ArrayList<>();
+            if (spawn)
+                processes = c.spawnLocalNodes();
+            else
+                System.out.println("Esperando " + nodes + " nodos en el puerto " + c.getPort());
+
+            List<StatisticsData> history = c.run();
+            for (Process p : processes)
+                p.waitFor();
+
+            StatisticsData last = history.get(history.size() - 1);
+            System.out.printf("%d nodos, %dx%d, %d generaciones en %.2f s (%.1f gen/s)%n",
+                    nodes, width, height, history.size() - 1, c.getElapsedNanos() * 1e-9,
+                    (history.size() - 1) / Math.max(1e-9, c.getElapsedNanos() * 1e-9));
+            System.out.println("Peces: " + last.fish + ", tiburones: " + last.sharks
+                    + ", vacías: " + last.empty);
+
+            if (out != null) {
+                try (BufferedWriter w = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                    w.write("generation,fish,sharks,empty");
+                    w.newLine();
+                    for (int g = 0; g < history.size(); g++) {
+                        StatisticsData s = history.get(g);
+                        w.write(g + "," + s.fish + "," + s.sharks + "," + s.empty);
+                        w.newLine();
+                    }
+                }
+                System.out.println("Resultados escritos en " + out.toAbsolutePath());
+            }
+        }
+    }
+}
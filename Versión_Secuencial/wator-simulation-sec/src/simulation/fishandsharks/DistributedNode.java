@@ -0,0 +1,185 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : DistributedNode.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+
+/**
+ * Proceso de la simulación distribuida que simula una franja de filas del
+ * océano (OceanChunk).
+ *
+ * Dentro del proceso la franja se simula con un SharkFishModel sobre el
+ * océano local, así que sus filas se reparten entre SimulationWorker igual
+ * que en la versión de un solo proceso. Entre procesos, los nodos forman
+ * un anillo (el siguiente de cada nodo es el que tiene las filas de debajo,
+ * con topología toroidal) y en cada generación:
+ *
+ *   1. Envía sus 2 últimas filas al siguiente (su fantasma superior) y
+ *      recibe del anterior su propio fantasma superior.
+ *   2. Simula su mitad superior.
+ *   3. Devuelve el fantasma superior al anterior (con los emigrantes que
+ *      hayan entrado en él) y recibe del siguiente sus 2 últimas filas
+ *      modificadas del mismo modo.
+ *   4. Envía sus 2 primeras filas al anterior y recibe del siguiente su
+ *      fantasma inferior.
+ *   5. Simula su mitad inferior.
+ *   6. Devuelve el fantasma inferior al siguiente y recibe del anterior sus
+ *      2 primeras filas.
+ *   7. Envía sus estadísticas al coordinador y espera su orden de seguir
+ *      (barrera global).
+ *
+ * Con un solo nodo el anillo es una conexión consigo mismo.
+ *
+ * Uso:
+ *   java simulation.fishandsharks.DistributedNode coordinator=127.0.0.1:5000
+ */
+public class DistributedNode {
+
+    private final NodeLink coordinator;
+    private NodeLink next, prev;
+    private OceanChunk chunk;
+    private SharkFishModel model;
+
+    /**
+     * Se conecta al coordinador (no hace nada más hasta run()).
+     */
+    public DistributedNode(String host, int port) throws IOException {
+        coordinator = new NodeLink(new Socket(host, port), "coordinator");
+    }
+
+    /**
+     * Recibe la configuración, simula hasta que el coordinador lo indique
+     * y libera los recursos.
+     */
+    public void run() throws IOException {
+        try (ServerSocket server = new ServerSocket(0)) {
+            DataOutputStream out = coordinator.begin();
+            out.writeByte(DistributedCoordinator.HELLO);
+            out.writeInt(server.getLocalPort());
+            coordinator.send();
+
+            DataInputStream in = coordinator.receive();
+            expect(in, DistributedCoordinator.CONFIG);
+            int id = in.readInt();
+            int width = in.readInt();
+            int firstRow = in.readInt();
+            int rows = in.readInt();
+            int fishCycle = in.readInt();
+            int sharkCycle = in.readInt();
+            double fish = in.readDouble();
+            double sharks = in.readDouble();
+            long seed = in.readLong();
+            int threads = in.readInt();
+            String nextHost = in.readUTF();
+            int nextPort = in.readInt();
+
+            chunk = new OceanChunk(width, firstRow, rows);
+            chunk.fill(fish, sharks, seed, 0);
+            model = new SharkFishModel(chunk.getOcean(), threads);
+            model.setVerbose(false);
+            model.notifyRecycleChanged(fishCycle, sharkCycle);
+
+            // Anillo: conectar con el siguiente y aceptar al anterior. El
+            // connect no espera al accept del otro lado, así que el orden
+            // no bloquea (ni siquiera con un solo nodo)
+            next = new NodeLink(new Socket(nextHost, nextPort), "next-" + id);
+            prev = new NodeLink(server.accept(), "prev-" + id);
+        }
+
+        try {
+            sendStatistics();
+            while (true) {
+                DataInputStream in = coordinator.receive();
+                if (in.readByte() == DistributedCoordinator.STOP)
+                    break;
+                step();
+                sendStatistics();
+            }
+        } finally {
+            model.shutdown();
+            next.close();
+            prev.close();
+            coordinator.close();
+        }
+    }
+
+    /**
+     * Una generación (pasos 1 a 6 de la descripción de la clase).
+     */
+    private void step() throws IOException {
+        int g = OceanChunk.GHOST;
+
+        // Mitad superior
+        chunk.writeRows(next.begin(), chunk.lowerTo() - g, g);
+        next.send();
+        chunk.readRows(prev.receive(), chunk.topGhost(), g);
+
+        model.stepRows(chunk.upperFrom(), chunk.upperTo());
+
+        chunk.writeRows(prev.begin(), chunk.topGhost(), g);
+        prev.send();
+        chunk.readRows(next.receive(), chunk.lowerTo() - g, g);
+
+        // Mitad inferior
+        chunk.writeRows(prev.begin(), chunk.upperFrom(), g);
+        prev.send();
+        chunk.readRows(next.receive(), chunk.bottomGhost(), g);
+
+        model.stepRows(chunk.lowerFrom(), chunk.lowerTo());
+
+        chunk.writeRows(next.begin(), chunk.bottomGhost(), g);
+        next.send();
+        chunk.readRows(prev.receive(), chunk.upperFrom(), g);
+
+        model.endGeneration();
+    }
+
+    private void sendStatistics() throws IOException {
+        StatisticsData stats = chunk.statistics();
+        DataOutputStream out = coordinator.begin();
+        out.writeByte(DistributedCoordinator.STATS);
+        out.writeInt(model.getGeneration());
+        out.writeInt(stats.fish);
+        out.writeInt(stats.sharks);
+        out.writeInt(stats.empty);
+        out.writeInt(stats.ageDistribution.size());
+        for (Map.Entry<Integer, int[]> e : stats.ageDistribution.entrySet()) {
+            out.writeInt(e.getKey());
+            out.writeInt(e.getValue()[0]);
+            out.writeInt(e.getValue()[1]);
+        }
+        coordinator.send();
+    }
+
+    static void expect(DataInputStream in, byte type) throws IOException {
+        byte t = in.readByte();
+        if (t != type)
+            throw new IOException("Mensaje inesperado: " + t + " (se esperaba " + type + ")");
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        String address = "127.0.0.1:" + DistributedCoordinator.DEFAULT_PORT;
+        for (String arg : args) {
+            if (arg.startsWith("coordinator="))
+                address = arg.substring("coordinator=".length());
+            else
+                throw new IllegalArgumentException("Parámetro desconocido: " + arg);
+        }
+
+        int colon = address.lastIndexOf(':');
+        new DistributedNode(address.substring(0, colon),
+                Integer.parseInt(address.substring(colon + 1))).run();
+    }
+}
@@ -0,0 +1,97 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : EngineBenchmark.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compara los motores de simulación (SimulationEngine.Kind) sobre la misma
+ * carga: el mismo océano, la misma semilla y las mismas generaciones.
+ *
+ * Para cada motor se crea un modelo nuevo, se rellena con la misma semilla,
+ * se cambia de motor con setEngine() y, tras unas generaciones de
+ * calentamiento, se mide el tiempo por generación. Al final se indican las
+ * poblaciones: los motores con varios hilos que comparten el generador del
+ * océano no son reproducibles, así que solo sirven como comprobación de
+ * que la dinámica es parecida.
+ *
+ * Uso: EngineBenchmark [ancho] [alto] [generaciones] [hilos] [motor,motor...]
+ */
+public class EngineBenchmark {
+
+    private static final int WARMUP = 20;
+
+    private final int width, height, generations, threads;
+
+    private EngineBenchmark(int width, int height, int generations, int threads) {
+        this.width = width;
+        this.height = height;
+        this.generations = generations;
+        this.threads = threads;
+    }
+
+    /**
+     * @return {ms por generación, peces, tiburones}
+     */
+    private double[] run(SimulationEngine.Kind kind) {
+        SharkFishModel model = new SharkFishModel(width, height, threads);
+        model.setVerbose(false);
+        try {
+            model.fillOceanRandomly(.3, .1, 1L);
+            model.setEngine(kind);
+
+            for (int g = 0; g < WARMUP; g++)
+                model.step();
+
+            long start = System.nanoTime();
+            for (int g = 0; g < generations; g++)
+                model.step();
+            long elapsed = System.nanoTime() - start;
+
+            return new double[]{elapsed * 1e-6 / generations,
+                    model.getFishCount(), model.getSharkCount()};
+        } finally {
+            model.shutdown();
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : width;
+        int generations = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : SharkFishModel.NUM_THREADS;
+        List<SimulationEngine.Kind> kinds = new ArrayList<>();
+        if (args.length > 4)
+            for (String name : args[4].split(","))
+                kinds.add(SimulationEngine.Kind.parse(name));
+        else
+            kinds.addAll(Arrays.asList(SimulationEngine.Kind.values()));
+
+        EngineBenchmark b = new EngineBenchmark(width, height, generations, threads);
+        System.out.println("Océano " + width + "x" + height + " (30% peces, 10% tiburones), "
+                + generations + " generaciones, " + threads + " hilos");
+        double base = 0;
+        for (SimulationEngine.Kind kind : kinds) {
+            double[] r;
+            try {
+                r = b.run(kind);
+            } catch (IllegalArgumentException e) {
+                System.out.printf("%-12s no aplicable: %s%n", kind, e.getMessage());
+                continue;
+            }
+            if (base == 0)
+                base = r[0];
+            System.out.printf("%-12s %9.3f ms/gen %9.1f gen/s  x%5.2f   peces %8.0f  tiburones %8.0f%n",
+                    kind, r[0], 1000 / r[0], base / r[0], r[1], r[2]);
+        }
+    }
+}
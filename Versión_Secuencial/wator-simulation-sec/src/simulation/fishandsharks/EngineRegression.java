@@ -0,0 +1,408 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : EngineRegression.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Comprobación de regresiones de los motores de simulación: ejecuta unos
+ * escenarios con semilla en cada motor (SimulationEngine.Kind) y comprueba
+ * tres cosas.
+ *
+ * 1. Reproducibilidad, bit a bit, en los motores deterministas: el
+ *    secuencial y el de franjas privadas dan lo mismo al repetir la
+ *    ejecución, y el de intenciones da lo mismo con 1 hilo y con varios.
+ *    Se compara un hash de la especie y la edad de cada celda en cada
+ *    generación.
+ * 2. Equivalencia estadística con el secuencial: para cada semilla se
+ *    toma la población media de cada especie en la segunda mitad de la
+ *    ejecución, y la media sobre las semillas no se puede separar de la
+ *    del secuencial más que tolerance (fracción). Junto a la diferencia se
+ *    muestran tres errores estándar: si pasan de la tolerancia, la
+ *    comparación es poco fiable y hacen falta más semillas.
+ *    El de intenciones se compara, con la misma tolerancia, con sus propias
+ *    medias de referencia (Scenario.intentFish e intentSharks, medidas con
+ *    las semillas 1 a 16). No se compara con el secuencial porque sus reglas
+ *    son simultáneas (quien pierde un arbitraje no se mueve y la cría nace
+ *    en la celda que deja su madre) y sus poblaciones son de forma esperada
+ *    más bajas: entre un 14% y un 25% por debajo de las del secuencial en
+ *    los tres escenarios (equilibrio -25%/-23%, escaso -19%/-15%, denso
+ *    -14%/-20%, peces/tiburones). Si cambian sus reglas hay que volver a
+ *    medirlas.
+ *    Además las estadísticas de cada generación deben coincidir con el
+ *    contenido del océano.
+ * 3. Rendimiento: generaciones por segundo (la mejor de las semillas)
+ *    frente a las guardadas en baseline. Falla si alguna baja más de
+ *    threshold (fracción). Con record=true se guardan en su lugar; la
+ *    referencia solo vale para la máquina y los hilos con que se grabó,
+ *    por eso no se incluye ninguna: los motores sin referencia se listan
+ *    como "sin referencia" y no se comprueban.
+ *
+ * Termina con código 1 si falla alguna comprobación.
+ *
+ * Uso (parámetros clave=valor):
+ *   java simulation.fishandsharks.EngineRegression [scenarios=equilibrio,...]
+ *        [engines=secuencial,...] [seeds=4] [threads=4] [tolerance=0.15]
+ *        [baseline=engine-baseline.properties] [threshold=0.2] [record=false]
+ */
+public class EngineRegression {
+
+    /**
+     * Océano, densidades, ciclos y generaciones de un caso de prueba.
+     */
+    static final class Scenario {
+        final String name;
+        final int width, height, generations;
+        final double fish, sharks;
+        final int fishCycle, sharkCycle;
+        // Poblaciones medias del motor de intenciones con las semillas 1..16
+        final double intentFish, intentSharks;
+
+        Scenario(String name, int width, int height, double fish, double sharks,
+                 int fishCycle, int sharkCycle, int generations,
+                 double intentFish, double intentSharks) {
+            this.name = name;
+            this.width = width;
+            this.height = height;
+            this.fish = fish;
+            this.sharks = sharks;
+            this.fishCycle = fishCycle;
+            this.sharkCycle = sharkCycle;
+            this.generations = generations;
+            this.intentFish = intentFish;
+            this.intentSharks = intentSharks;
+        }
+    }
+
+    // Casos por defecto: oscilación típica, océano poco poblado y no
+    // cuadrado (teselas impares) y océano casi lleno. El denso necesita
+    // más generaciones: hasta la 200 sigue en el hundimiento inicial y la
+    // media de cada semilla varía un ±30%; de la 300 a la 600, un ±3%.
+    // Sus ciclos dejan margen en ese hundimiento (al menos unas veinte
+    // criaturas de cada especie): con ciclos 3/6 bajaba a 2-5 tiburones y
+    // algunas semillas de los motores no deterministas se quedaban sin
+    // ninguno, lo que llena el océano de peces y dispara la media
+    static final Scenario[] SCENARIOS = {
+            new Scenario("equilibrio", 128, 128, .3, .1, 2, 3, 300, 2354, 1857),
+            new Scenario("escaso", 200, 96, .05, .01, 3, 6, 300, 3417, 1706),
+            new Scenario("denso", 160, 160, .5, .2, 2, 6, 600, 4657, 2962),
+    };
+
+    /**
+     * Resultado de una ejecución.
+     */
+    static final class Run {
+        double fishMean, sharkMean;
+        long hash;
+        double generationsPerSecond;
+        // Primera generación en la que las estadísticas no cuadran (-1 si ninguna)
+        int inconsistent = -1;
+    }
+
+    private final int threads;
+    private final double tolerance;
+
+    private int failures, unchecked;
+
+    EngineRegression(int threads, double tolerance) {
+        this.threads = threads;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Ejecuta un escenario con un motor y una semilla.
+     */
+    Run run(Scenario s, SimulationEngine.Kind kind, int threads, long seed) {
+        SharkFishModel model = new SharkFishModel(s.width, s.height, threads);
+        model.setVerbose(false);
+        Run r = new Run();
+        try {
+            model.notifyRecycleChanged(s.fishCycle, s.sharkCycle);
+            model.fillOceanRandomly(s.fish, s.sharks, seed);
+            model.setEngine(kind);
+
+            Ocean ocean = model.getOcean();
+            int from = s.generations / 2;
+            long fishSum = 0, sharkSum = 0, nanos = 0;
+            for (int g = 0; g < s.generations && model.isSimulationActive(); g++) {
+                long start = System.nanoTime();
+                model.step();
+                nanos += System.nanoTime() - start;
+
+                int occupied = 0;
+                for (int y = 0; y < s.height; y++)
+                    for (int x = 0; x < s.width; x++) {
+                        byte type = ocean.typeAt(x, y);
+                        r.hash = r.hash * 31 + type;
+                        if (type != Ocean.EMPTY) {
+                            r.hash = r.hash * 31 + ocean.ageAt(x, y);
+                            occupied++;
+                        }
+                    }
+                if (r.inconsistent < 0 && (occupied != model.getFishCount() + model.getSharkCount()
+                        || occupied + model.getEmptyCount() != s.width * s.height))
+                    r.inconsistent = model.getGeneration();
+                if (g >= from) {
+                    fishSum += model.getFishCount();
+                    sharkSum += model.getSharkCount();
+                }
+            }
+            // Las generaciones que faltan tras una extinción total cuentan como 0
+            r.fishMean = (double) fishSum / (s.generations - from);
+            r.sharkMean = (double) sharkSum / (s.generations - from);
+            r.generationsPerSecond = model.getGeneration() / (nanos * 1e-9);
+            return r;
+        } finally {
+            model.shutdown();
+        }
+    }
+
+    /**
+     * Ejecuta un escenario en todos los motores y compara con el secuencial.
+     *
+     * @return Generaciones por segundo de cada motor (NaN si no es aplicable)
+     */
+    double[] check(Scenario s, List<SimulationEngine.Kind> kinds, long[] seeds) {
+        System.out.printf("%n%s: %dx%d, peces %.2f, tiburones %.2f, ciclos %d/%d, %d generaciones%n",
+                s.name, s.width, s.height, s.fish, s.sharks, s.fishCycle, s.sharkCycle,
+                s.generations);
+
+        Run[] reference = runAll(s, SimulationEngine.Kind.SEQUENTIAL, seeds);
+        double[] throughput = new double[SimulationEngine.Kind.values().length];
+        Arrays.fill(throughput, Double.NaN);
+
+        for (SimulationEngine.Kind kind : kinds) {
+            Run[] runs = kind == SimulationEngine.Kind.SEQUENTIAL ? reference : runAll(s, kind, seeds);
+            if (runs == null) {
+                System.out.printf("  %-12s no aplicable a este océano%n", kind);
+                continue;
+            }
+            StringBuilder line = new StringBuilder();
+
+            // 1. Reproducibilidad
+            String det = determinism(s, kind, seeds[0], runs[0]);
+            line.append(det == null ? "  no determinista" : det);
+
+            // 2. Equivalencia estadística y consistencia de las estadísticas
+            if (kind == SimulationEngine.Kind.INTENTS) {
+                line.append(compare("peces", new double[]{s.intentFish}, runs, true));
+                line.append(compare("tiburones", new double[]{s.intentSharks}, runs, false));
+            } else if (kind != SimulationEngine.Kind.SEQUENTIAL) {
+                line.append(compare("peces", means(reference, true), runs, true));
+                line.append(compare("tiburones", means(reference, false), runs, false));
+            }
+            for (Run r : runs)
+                if (r.inconsistent >= 0) {
+                    failures++;
+                    line.append("  ESTADÍSTICAS INCORRECTAS (gen ").append(r.inconsistent).append(')');
+                    break;
+                }
+
+            double best = 0;
+            for (Run r : runs)
+                best = Math.max(best, r.generationsPerSecond);
+            throughput[kind.ordinal()] = best;
+            System.out.printf(Locale.ROOT, "  %-12s %9.1f gen/s%s%n", kind, best, line);
+        }
+        return throughput;
+    }
+
+    private Run[] runAll(Scenario s, SimulationEngine.Kind kind, long[] seeds) {
+        Run[] runs = new Run[seeds.length];
+        try {
+            for (int i = 0; i < seeds.length; i++)
+                runs[i] = run(s, kind, threads, seeds[i]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return runs;
+    }
+
+    /**
+     * @return Resultado de la comparación bit a bit (null si el motor no es determinista)
+     */
+    private String determinism(Scenario s, SimulationEngine.Kind kind, long seed, Run first) {
+        Run again;
+        String what;
+        switch (kind) {
+            case SEQUENTIAL:
+            case CHUNKS:
+                again = run(s, kind, threads, seed);
+                what = "repetido";
+                break;
+            case INTENTS:
+                again = run(s, kind, 1, seed);
+                what = "1 hilo = " + threads + " hilos";
+                break;
+            default:
+                return null;
+        }
+        if (again.hash == first.hash)
+            return "  idéntico (" + what + ")";
+        failures++;
+        return "  DISTINTO (" + what + ")";
+    }
+
+    /**
+     * Compara la población media de una especie con la de la referencia.
+     *
+     * @param ref Media de cada ejecución de referencia (o una sola media guardada)
+     */
+    private String compare(String species, double[] ref, Run[] runs, boolean fish) {
+        double[] val = means(runs, fish);
+        double refMean = mean(ref), valMean = mean(val);
+        double diff = valMean - refMean;
+        double se = Math.sqrt(variance(ref) / ref.length + variance(val) / val.length);
+        boolean ok = Math.abs(diff) <= tolerance * refMean;
+        if (!ok)
+            failures++;
+        return String.format(Locale.ROOT, "  %s %.0f vs %.0f (%+.1f%% ±%.1f%%)%s%s", species, valMean,
+                refMean, refMean == 0 ? 0 : 100 * diff / refMean, refMean == 0 ? 0 : 300 * se / refMean,
+                3 * se > tolerance * refMean ? " pocas semillas" : "",
+                ok ? "" : " FUERA DE TOLERANCIA");
+    }
+
+    private static double[] means(Run[] runs, boolean fish) {
+        double[] v = new double[runs.length];
+        for (int i = 0; i < v.length; i++)
+            v[i] = fish ? runs[i].fishMean : runs[i].sharkMean;
+        return v;
+    }
+
+    private static double mean(double[] v) {
+        double sum = 0;
+        for (double x : v)
+            sum += x;
+        return sum / v.length;
+    }
+
+    private static double variance(double[] v) {
+        if (v.length < 2)
+            return 0;
+        double m = mean(v), sum = 0;
+        for (double x : v)
+            sum += (x - m) * (x - m);
+        return sum / (v.length - 1);
+    }
+
+    /**
+     * Compara el rendimiento con la referencia guardada (o la guarda).
+     */
+    void checkThroughput(Scenario s, double[] throughput, Properties baseline,
+                         boolean record, double threshold) {
+        for (SimulationEngine.Kind kind : SimulationEngine.Kind.values()) {
+            double now = throughput[kind.ordinal()];
+            if (Double.isNaN(now))
+                continue;
+            String key = s.name + "." + kind.getLabel();
+            if (record) {
+                baseline.setProperty(key, String.format(Locale.ROOT, "%.1f", now));
+                continue;
+            }
+            String stored = baseline.getProperty(key);
+            if (stored == null) {
+                unchecked++;
+                System.out.printf(Locale.ROOT, "  %s/%s: %.1f gen/s sin referencia%n", s.name, kind, now);
+                continue;
+            }
+            double before = Double.parseDouble(stored);
+            if (now < before * (1 - threshold)) {
+                failures++;
+                System.out.printf(Locale.ROOT, "  REGRESIÓN %s/%s: %.1f gen/s (referencia %.1f, %.0f%% más lento)%n",
+                        s.name, kind, now, before, 100 * (1 - now / before));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+
+        List<Scenario> scenarios = new ArrayList<>(Arrays.asList(SCENARIOS));
+        List<SimulationEngine.Kind> kinds = new ArrayList<>(Arrays.asList(SimulationEngine.Kind.values()));
+        int seedCount = 4, threads = SharkFishModel.NUM_THREADS;
+        double tolerance = .15, threshold = .2;
+        Path baselineFile = Paths.get("engine-baseline.properties");
+        boolean record = false;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0)
+                throw new IllegalArgumentException("Parámetro sin valor: " + arg);
+            String key = arg.substring(0, eq);
+            String[] values = arg.substring(eq + 1).split(",");
+
+            switch (key) {
+                case "scenarios":
+                    scenarios.clear();
+                    for (String v : values)
+                        scenarios.add(scenario(v));
+                    break;
+                case "engines":
+                    kinds.clear();
+                    for (String v : values)
+                        kinds.add(SimulationEngine.Kind.parse(v));
+                    break;
+                case "seeds": seedCount = Integer.parseInt(values[0]); break;
+                case "threads": threads = Integer.parseInt(values[0]); break;
+                case "tolerance": tolerance = Double.parseDouble(values[0]); break;
+                case "threshold": threshold = Double.parseDouble(values[0]); break;
+                case "baseline": baselineFile = Paths.get(values[0]); break;
+                case "record": record = Boolean.parseBoolean(values[0]); break;
+                default:
+                    throw new IllegalArgumentException("Parámetro desconocido: " + key);
+            }
+        }
+
+        long[] seeds = new long[seedCount];
+        for (int i = 0; i < seedCount; i++)
+            seeds[i] = i + 1;
+
+        Properties baseline = new Properties();
+        if (Files.exists(baselineFile))
+            try (InputStream in = Files.newInputStream(baselineFile)) {
+                baseline.load(in);
+            }
+
+        EngineRegression harness = new EngineRegression(threads, tolerance);
+        System.out.println("Motores " + kinds + ", " + seedCount + " semillas, " + threads + " hilos");
+        for (Scenario s : scenarios)
+            harness.checkThroughput(s, harness.check(s, kinds, seeds), baseline, record, threshold);
+
+        if (record) {
+            try (OutputStream out = Files.newOutputStream(baselineFile)) {
+                baseline.store(out, "Generaciones por segundo (EngineRegression, " + threads + " hilos)");
+            }
+            System.out.println("\nReferencia de rendimiento guardada en " + baselineFile.toAbsolutePath());
+        }
+
+        System.out.println();
+        if (!record && harness.unchecked > 0)
+            System.out.println(harness.unchecked + " rendimientos sin referencia en "
+                    + baselineFile + " (se graban con record=true)");
+        System.out.println(harness.failures == 0 ? "Todo correcto"
+                : harness.failures + " comprobaciones fallidas");
+        System.exit(harness.failures == 0 ? 0 : 1);
+    }
+
+    private static Scenario scenario(String name) {
+        for (Scenario s : SCENARIOS)
+            if (s.name.equals(name))
+                return s;
+        throw new IllegalArgumentException("Escenario desconocido: " + name);
+    }
+}
@@ -0,0 +1,466 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : EnsembleRunner.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ejecutor de conjuntos (ensembles) de simulaciones Wa-Tor independientes.
+ *
+ * Recibe una rejilla de parámetros (ciclos de reproducción, densidades
+ * iniciales y semillas), lanza una simulación sin interfaz por cada
+ * combinación y escribe una línea CSV por ejecución en cuanto termina.
+ *
+ * Reparto de los núcleos:
+ * - Si hay al menos tantas ejecuciones como núcleos, cada simulación es
+ *   secuencial (1 hilo) y se ejecutan tantas a la vez como núcleos. Las
+ *   ejecuciones son independientes, así que esto no tiene coste de
+ *   sincronización.
+ * - Si hay menos ejecuciones que núcleos, los núcleos sobrantes se reparten
+ *   como hilos worker de cada simulación, sin bajar de MIN_ROWS_PER_THREAD
+ *   filas por hilo.
+ *
+ * Con steady=true cada ejecución se detiene también en cuanto un
+ * SteadyStateDetector reconoce que se ha estabilizado (equilibrio, ciclo o
+ * saturación de una especie), y el CSV indica cómo terminó cada una.
+ *
+ * Con engine= todas las ejecuciones usan ese motor (SimulationEngine.Kind).
+ * Sin él, cada ejecución usa un motor determinista: el secuencial si tiene
+ * un solo hilo y el de franjas privadas si tiene más, así que una misma
+ * semilla con los mismos hilos da siempre el mismo resultado. Como el
+ * resultado de las franjas depende del número de hilos, el CSV indica el
+ * motor y los hilos de cada ejecución.
+ *
+ * seeds= es siempre la lista de semillas (seeds=42 es solo la semilla 42);
+ * seedCount=n ejecuta las semillas 1..n.
+ *
+ * Uso (parámetros clave=valor, listas separadas por comas):
+ *   java simulation.fishandsharks.EnsembleRunner width=100 height=100
+ *        generations=2000 fishCycle=2,3 sharkCycle=3,4 fish=0.1,0.2
+ *        shark=0.05 seedCount=10 out=ensemble.csv
+ *        [steady=true tolerance=0.01 window=500 maxPeriod=200]
+ *        [seeds=7,42 en lugar de seedCount]
+ *        [engine=secuencial|workers|franjas|intenciones|teselas]
+ */
+public class EnsembleRunner {
+
+    // Mínimo de filas por hilo para que compense repartir una simulación
+    static final int MIN_ROWS_PER_THREAD = 16;
+
+    /**
+     * Parámetros de una única ejecución.
+     */
+    public static class Parameters {
+        public final int fishCycle;
+        public final int sharkCycle;
+        public final double fishDensity;
+        public final double sharkDensity;
+        public final long seed;
+
+        public Parameters(int fishCycle, int sharkCycle,
+                          double fishDensity, double sharkDensity, long seed) {
+            this.fishCycle = fishCycle;
+            this.sharkCycle = sharkCycle;
+            this.fishDensity = fishDensity;
+            this.sharkDensity = sharkDensity;
+            this.seed = seed;
+        }
+    }
+
+    /**
+     * Rejilla de parámetros: el producto cartesiano de todas las listas.
+     */
+    public static class ParameterGrid {
+        private final List<Integer> fishCycles = new ArrayList<>();
+        private final List<Integer> sharkCycles = new ArrayList<>();
+        private final List<Double> fishDensities = new ArrayList<>();
+        private final List<Double> sharkDensities = new ArrayList<>();
+        private final List<Long> seeds = new ArrayList<>();
+
+        public ParameterGrid fishCycles(Integer... values) {
+            Collections.addAll(fishCycles, values);
+            return this;
+        }
+
+        public ParameterGrid sharkCycles(Integer... values) {
+            Collections.addAll(sharkCycles, values);
+            return this;
+        }
+
+        public ParameterGrid fishDensities(Double... values) {
+            Collections.addAll(fishDensities, values);
+            return this;
+        }
+
+        public ParameterGrid sharkDensities(Double... values) {
+            Collections.addAll(sharkDensities, values);
+            return this;
+        }
+
+        public ParameterGrid seeds(Long... values) {
+            Collections.addAll(seeds, values);
+            return this;
+        }
+
+        /**
+         * @return Todas las combinaciones de la rejilla
+         */
+        public List<Parameters> expand() {
+            if (fishCycles.isEmpty() || sharkCycles.isEmpty() || fishDensities.isEmpty()
+                    || sharkDensities.isEmpty() || seeds.isEmpty())
+                throw new IllegalStateException("Todas las dimensiones de la rejilla necesitan al menos un valor");
+
+            List<Parameters> runs = new ArrayList<>();
+            for (int fc : fishCycles)
+                for (int sc : sharkCycles)
+                    for (double fd : fishDensities)
+                        for (double sd : sharkDensities)
+                            for (long seed : seeds)
+                                runs.add(new Parameters(fc, sc, fd, sd, seed));
+            return runs;
+        }
+    }
+
+    /**
+     * Resultado agregado de una ejecución.
+     * Medias y varianzas calculadas en streaming (algoritmo de Welford).
+     */
+    public static class RunResult {
+        public final Parameters params;
+        // Motor y hilos con los que se ejecutó
+        public final SimulationEngine.Kind engine;
+        public final int threads;
+        public final int generations;
+        // Generación en la que se extinguió cada especie (-1 si no ocurrió)
+        public final int fishExtinction;
+        public final int sharkExtinction;
+        public final double fishMean, fishVariance;
+        public final double sharkMean, sharkVariance;
+        public final long elapsedNanos;
+        // EXTINCTION, LIMIT (se alcanzó maxGenerations) o el régimen detectado
+        public final String outcome;
+        // Período del ciclo detectado (0 si no es un ciclo)
+        public final int period;
+
+        RunResult(Parameters params, SimulationEngine.Kind engine, int threads,
+                  int generations, int fishExtinction, int sharkExtinction,
+                  double fishMean, double fishVariance,
+                  double sharkMean, double sharkVariance, long elapsedNanos,
+                  String outcome, int period) {
+            this.params = params;
+            this.engine = engine;
+            this.threads = threads;
+            this.generations = generations;
+            this.fishExtinction = fishExtinction;
+            this.sharkExtinction = sharkExtinction;
+            this.fishMean = fishMean;
+            this.fishVariance = fishVariance;
+            this.sharkMean = sharkMean;
+            this.sharkVariance = sharkVariance;
+            this.elapsedNanos = elapsedNanos;
+            this.outcome = outcome;
+            this.period = period;
+        }
+
+        static String csvHeader() {
+            return "fishCycle,sharkCycle,fishDensity,sharkDensity,seed,engine,threads,"
+                    + "generations,"
+                    + "fishExtinction,sharkExtinction,fishMean,fishVariance,"
+                    + "sharkMean,sharkVariance,seconds,outcome,period";
+        }
+
+        String toCsv() {
+            return String.format(Locale.ROOT, "%d,%d,%.4f,%.4f,%d,%s,%d,%d,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%s,%d",
+                    params.fishCycle, params.sharkCycle, params.fishDensity,
+                    params.sharkDensity, params.seed, engine, threads, generations, fishExtinction,
+                    sharkExtinction, fishMean, fishVariance, sharkMean,
+                    sharkVariance, elapsedNanos * 1e-9, outcome, period);
+        }
+    }
+
+    private final int width, height;
+    private final int maxGenerations;
+    private final int cores;
+
+    // Detección de régimen estacionario (tolerance < 0 = desactivada)
+    private double steadyTolerance = -1;
+    private int steadyWindow, steadyMaxPeriod;
+
+    // Motor de cada ejecución (null = uno determinista según los hilos)
+    private SimulationEngine.Kind engine;
+
+    /**
+     * @param width Ancho del océano de cada ejecución
+     * @param height Alto del océano de cada ejecución
+     * @param maxGenerations Límite de generaciones por ejecución
+     * @param cores Núcleos disponibles para todo el ensemble
+     */
+    public EnsembleRunner(int width, int height, int maxGenerations, int cores) {
+        if (width < 1 || height < 1 || maxGenerations < 1 || cores < 1)
+            throw new IllegalArgumentException();
+        this.width = width;
+        this.height = height;
+        this.maxGenerations = maxGenerations;
+        this.cores = cores;
+    }
+
+    /**
+     * Detiene cada ejecución en cuanto se estabiliza (ver SteadyStateDetector).
+     *
+     * @param tolerance Tolerancia como fracción de las celdas del océano
+     * @param window Generaciones estables necesarias
+     * @param maxPeriod Período máximo de los ciclos buscados
+     */
+    public EnsembleRunner setSteadyState(double tolerance, int window, int maxPeriod) {
+        if (tolerance < 0 || window < 1)
+            throw new IllegalArgumentException();
+        this.steadyTolerance = tolerance;
+        this.steadyWindow = window;
+        this.steadyMaxPeriod = maxPeriod;
+        return this;
+    }
+
+    /**
+     * @param engine Motor de todas las ejecuciones (null = uno determinista
+     *               según los hilos, ver deterministicKind)
+     */
+    public EnsembleRunner setEngine(SimulationEngine.Kind engine) {
+        this.engine = engine;
+        return this;
+    }
+
+    /**
+     * Decide cuántas simulaciones ejecutar a la vez y con cuántos hilos cada una.
+     *
+     * @param runs Número de ejecuciones pendientes
+     * @param cores Núcleos disponibles
+     * @param height Filas del océano (limita los hilos por simulación)
+     * @return {simulaciones_simultáneas, hilos_por_simulación}
+     */
+    static int[] chooseParallelism(int runs, int cores, int height) {
+        if (runs >= cores)
+            return new int[]{cores, 1};
+
+        int instances = Math.max(1, runs);
+        int threads = Math.max(1, cores / instances);
+        threads = Math.min(threads, Math.max(1, height / MIN_ROWS_PER_THREAD));
+        return new int[]{instances, threads};
+    }
+
+    /**
+     * Ejecuta todas las combinaciones y escribe los resultados en output
+     * a medida que terminan (una línea por ejecución, con flush inmediato).
+     *
+     * @return Resultados en el orden de finalización
+     */
+    public List<RunResult> run(List<Parameters> runs, Path output)
+            throws IOException, InterruptedException {
+        int[] parallelism = chooseParallelism(runs.size(), cores, height);
+        int instances = parallelism[0], threadsPerInstance = parallelism[1];
+
+        System.out.println("=== Ensemble: " + runs.size() + " ejecuciones, " + instances
+                + " simultáneas x " + threadsPerInstance + " hilos ===");
+
+        List<RunResult> results = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger done = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(instances);
+
+        try (BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            out.write(RunResult.csvHeader());
+            out.newLine();
+            out.flush();
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (Parameters p : runs) {
+                futures.add(pool.submit(() -> {
+                    RunResult r = runSingle(p, threadsPerInstance);
+                    results.add(r);
+
+                    // Escritura en streaming: el fichero siempre refleja lo terminado
+                    synchronized (out) {
+                        try {
+                            out.write(r.toCsv());
+                            out.newLine();
+                            out.flush();
+                        } catch (IOException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    System.out.println("Ejecución " + done.incrementAndGet() + "/"
+                            + runs.size() + " terminada (" + r.generations + " generaciones, " + r.outcome + ")");
+                    return null;
+                }));
+            }
+
+            for (Future<?> f : futures) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Fallo en una ejecución del ensemble", e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return results;
+    }
+
+    /**
+     * Motor por defecto de una ejecución con threads hilos: reproducible con
+     * la misma semilla y los mismos hilos.
+     */
+    static SimulationEngine.Kind deterministicKind(int threads) {
+        return threads > 1 ? SimulationEngine.Kind.CHUNKS : SimulationEngine.Kind.SEQUENTIAL;
+    }
+
+    /**
+     * Ejecuta una simulación completa sin interfaz gráfica.
+     */
+    RunResult runSingle(Parameters p, int threads) {
+        long start = System.nanoTime();
+        SharkFishModel model = new SharkFishModel(width, height, threads);
+        model.setVerbose(false);
+        SimulationEngine.Kind kind = engine != null ? engine : deterministicKind(threads);
+        model.setEngine(kind);
+        SteadyStateDetector detector = null;
+        if (steadyTolerance >= 0) {
+            detector = new SteadyStateDetector(width * height).setTolerance(steadyTolerance)
+                    .setWindow(steadyWindow).setCycle(steadyMaxPeriod, 3, 0);
+            model.setSteadyStateDetector(detector, true);
+        }
+
+        try {
+            model.notifyRecycleChanged(p.fishCycle, p.sharkCycle);
+            model.fillOceanRandomly(p.fishDensity, p.sharkDensity, p.seed);
+
+            int fishExtinction = -1, sharkExtinction = -1;
+            long n = 0;
+            double fishMean = 0, fishM2 = 0, sharkMean = 0, sharkM2 = 0;
+
+            while (model.isSimulationActive() && model.getGeneration() < maxGenerations) {
+                model.step();
+
+                int fish = model.getFishCount(), sharks = model.getSharkCount();
+                if (fish == 0 && fishExtinction < 0)
+                    fishExtinction = model.getGeneration();
+                if (sharks == 0 && sharkExtinction < 0)
+                    sharkExtinction = model.getGeneration();
+
+                // Welford: media y varianza sin guardar la serie
+                n++;
+                double d = fish - fishMean;
+                fishMean += d / n;
+                fishM2 += d * (fish - fishMean);
+                d = sharks - sharkMean;
+                sharkMean += d / n;
+                sharkM2 += d * (sharks - sharkMean);
+            }
+
+            SteadyStateDetector.Verdict v = detector != null ? detector.getVerdict() : null;
+            String outcome = v != null ? v.kind.name()
+                    : model.isSimulationActive() ? "LIMIT" : "EXTINCTION";
+            return new RunResult(p, kind, threads, model.getGeneration(),
+                    fishExtinction, sharkExtinction,
+                    fishMean, n > 1 ? fishM2 / (n - 1) : 0,
+                    sharkMean, n > 1 ? sharkM2 / (n - 1) : 0,
+                    System.nanoTime() - start, outcome, v != null ? v.period : 0);
+        } finally {
+            model.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = 100, height = 100, generations = 1000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        Path out = Paths.get("ensemble.csv");
+        boolean steady = false;
+        double tolerance = .01;
+        int window = 500, maxPeriod = 200;
+        SimulationEngine.Kind engine = null;
+        ParameterGrid grid = new ParameterGrid();
+        boolean fc = false, sc = false, fd = false, sd = false, seeds = false;
+
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq < 0)
+                throw new IllegalArgumentException("Parámetro sin valor: " + arg);
+            String key = arg.substring(0, eq);
+            String[] values = arg.substring(eq + 1).split(",");
+
+            switch (key) {
+                case "width": width = Integer.parseInt(values[0]); break;
+                case "height": height = Integer.parseInt(values[0]); break;
+                case "generations": generations = Integer.parseInt(values[0]); break;
+                case "cores": cores = Integer.parseInt(values[0]); break;
+                case "out": out = Paths.get(values[0]); break;
+                case "steady": steady = Boolean.parseBoolean(values[0]); break;
+                case "tolerance": tolerance = Double.parseDouble(values[0]); break;
+                case "window": window = Integer.parseInt(values[0]); break;
+                case "maxPeriod": maxPeriod = Integer.parseInt(values[0]); break;
+                case "engine": engine = SimulationEngine.Kind.parse(values[0]); break;
+                case "fishCycle":
+                    for (String v : values) grid.fishCycles(Integer.parseInt(v));
+                    fc = true;
+                    break;
+                case "sharkCycle":
+                    for (String v : values) grid.sharkCycles(Integer.parseInt(v));
+                    sc = true;
+                    break;
+                case "fish":
+                    for (String v : values) grid.fishDensities(Double.parseDouble(v));
+                    fd = true;
+                    break;
+                case "shark":
+                    for (String v : values) grid.sharkDensities(Double.parseDouble(v));
+                    sd = true;
+                    break;
+                case "seeds":
+                    for (String v : values) grid.seeds(Long.parseLong(v));
+                    seeds = true;
+                    break;
+                case "seedCount":
+                    for (long s = 1; s <= Long.parseLong(values[0]); s++) grid.seeds(s);
+                    seeds = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Parámetro desconocido: " + key);
+            }
+        }
+
+        // Valores por defecto iguales a los de la GUI
+        if (!fc) grid.fishCycles(2);
+        if (!sc) grid.sharkCycles(3);
+        if (!fd) grid.fishDensities(.1);
+        if (!sd) grid.sharkDensities(.05);
+        if (!seeds) grid.seeds(1L);
+
+        EnsembleRunner runner = new EnsembleRunner(width, height, generations, cores);
+        if (steady)
+            runner.setSteadyState(tolerance, window, maxPeriod);
+        runner.setEngine(engine);
+        runner.run(grid.expand(), out);
+        System.out.println("Resultados escritos en " + out.toAbsolutePath());
+    }
+}
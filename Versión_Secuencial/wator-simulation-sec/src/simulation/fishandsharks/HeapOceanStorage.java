@@ -0,0 +1,82 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : HeapOceanStorage.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Almacenamiento de las celdas en una matriz Cell[][] en el heap.
+ */
+public class HeapOceanStorage implements OceanStorage {
+
+    private final Cell[][] cells;
+    private final int width, height;
+
+    public HeapOceanStorage(int width, int height) {
+        Ocean.checkSize(width, height);
+        this.width = width;
+        this.height = height;
+        this.cells = new Cell[height][width];
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Cell get(int x, int y) {
+        return cells[y][x];
+    }
+
+    @Override
+    public void set(int x, int y, Cell value) {
+        cells[y][x] = value;
+    }
+
+    @Override
+    public void commit(int x, int y, Cell value) {
+        // La celda guardada es el propio objeto
+    }
+
+    @Override
+    public byte typeAt(int x, int y) {
+        return Ocean.typeOf(cells[y][x]);
+    }
+
+    @Override
+    public byte displayTypeAt(int x, int y) {
+        return Ocean.displayTypeOf(cells[y][x]);
+    }
+
+    @Override
+    public int ageAt(int x, int y) {
+        Cell c = cells[y][x];
+        return c == null ? 0 : c.getAge();
+    }
+
+    @Override
+    public void copyRowTypes(int y, byte[] dst) {
+        Cell[] row = cells[y];
+        for (int x = 0; x < width; x++)
+            dst[x] = Ocean.typeOf(row[x]);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,502 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : IntentEngine.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Paso de simulación por intenciones: en lugar de mover cada criatura en
+ * cuanto se actualiza (y resolver los conflictos con locks), la generación
+ * se calcula en tres fases sobre el estado del inicio de la generación.
+ * Cada fase se reparte por bandas de filas (ParallelBands) y cada celda la
+ * escribe un único hilo, así que dentro de una fase no hay locks ni
+ * operaciones atómicas; entre fases solo está la espera del pool.
+ *
+ *   1. Propuesta: cada criatura lee sus vecinos y guarda en su celda su
+ *      intención (comerse un pez, moverse a una celda libre o quedarse) y
+ *      si se reproducirá.
+ *   2. Arbitraje: cada celda destino mira las intenciones de sus 4 vecinos
+ *      que apuntan a ella y elige un ganador: al azar o la criatura más
+ *      vieja (Priority). Un pez que se comen no se puede mover.
+ *   3. Aplicación: cada celda calcula su nuevo ocupante (el ganador que
+ *      llega, la cría que deja quien se ha ido, quien se queda o nadie) y
+ *      sus estadísticas.
+ *
+ * Las reglas son las de Ocean.Fish y Ocean.Shark con dos diferencias
+ * inevitables al ser simultáneas: quien pierde el arbitraje se queda
+ * quieto, y la cría nace en la celda que deja su madre (la única libre
+ * que nadie más puede reclamar). Los números aleatorios de cada celda se
+ * derivan de una semilla por generación y del índice de la celda, así que
+ * el resultado no depende del número de hilos.
+ *
+ * Con los contadores de ocupación del océano, las fases se saltan los
+ * bloques vacíos cuyos 8 vecinos también lo están: nadie puede llegar a
+ * ellos en esta generación.
+ */
+public class IntentEngine implements SimulationEngine {
+
+    /**
+     * Criterio para elegir entre varias criaturas que reclaman la misma celda.
+     */
+    public enum Priority {
+        RANDOM, OLDEST
+    }
+
+    // Intención (3 bits bajos): dirección de NEIGHBOUR_MASK, quedarse o
+    // no actuar (celda vacía o criatura que ya se ha actualizado)
+    private static final byte STAY = 4, IDLE = 5, DIR_MASK = 7;
+
+    // Indicadores de la intención
+    private static final byte EAT = 0x08, BREED = 0x10, FED = 0x20;
+
+    // Sin ganador en el arbitraje
+    private static final byte NONE = -1;
+
+    private final Ocean ocean;
+    private final OceanStorage storage;
+    private final int width, height;
+    private final Priority priority;
+    private final ParallelBands bands;
+
+    // Estado del inicio de la generación (códigos de visualización y celdas)
+    private final byte[] types;
+    private final Cell[] cells;
+
+    // Fase 1: intención de cada celda. Fase 2: dirección del ganador
+    private final byte[] intent;
+    private final byte[] winner;
+
+    // Resultados de cada banda en la fase 3
+    private int[] bounds;
+    private StatisticsData[] bandStats;
+    private long[][] bandDirty;
+
+    // Crías y criaturas muertas de cada banda (solo las usa la fase 3)
+    private CellPool[] bandPools;
+    private volatile boolean cellPooling = true;
+
+    // Ocupación de cada bloque del océano resultante (Ocean.setOccupancy).
+    // Las bandas empiezan en múltiplos de OCC_TILE: cada bloque es de una banda
+    private final int[] occupancy;
+
+    // Bloques vacíos al inicio de la generación y bloques vacíos con sus 8
+    // vecinos vacíos (a estos tampoco puede llegar nadie)
+    private final boolean[] emptyBlock, quietBlock;
+
+    // Semilla de la generación en curso
+    private long stepSeed;
+
+    /**
+     * @param threads Hilos de las tres fases (1 = en el hilo que llama)
+     */
+    public IntentEngine(Ocean ocean, Priority priority, int threads) {
+        this.ocean = ocean;
+        this.storage = ocean.getStorage();
+        this.width = ocean.getWidth();
+        this.height = ocean.getHeight();
+        this.priority = priority;
+        this.bands = new ParallelBands(threads, "IntentEngine");
+
+        int n = width * height;
+        this.types = new byte[n];
+        this.cells = new Cell[n];
+        this.intent = new byte[n];
+        this.winner = new byte[n];
+        this.occupancy = new int[ocean.getOccTilesX() * ocean.getOccTilesY()];
+        this.emptyBlock = new boolean[occupancy.length];
+        this.quietBlock = new boolean[occupancy.length];
+    }
+
+    public Priority getPriority() {
+        return priority;
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.INTENTS;
+    }
+
+    @Override
+    public void setCellPooling(boolean enabled) {
+        this.cellPooling = enabled;
+    }
+
+    /**
+     * Simula la generación generation sobre todo el océano. Se debe llamar
+     * con el resto de la simulación parada (sin workers en marcha).
+     *
+     * @return Estadísticas del océano resultante
+     */
+    @Override
+    public StatisticsData step(int generation, int fishCycle, int sharkCycle) {
+        stepSeed = ocean.getRandom().nextLong();
+        boolean fishBreed = generation % fishCycle == 0;
+        boolean sharkBreed = generation % sharkCycle == 0;
+
+        if (bounds == null) {
+            bounds = bands.split(0, height, Ocean.OCC_TILE);
+            bandStats = new StatisticsData[bounds.length - 1];
+            bandDirty = new long[bounds.length - 1][ocean.getDirtyWords()];
+            bandPools = new CellPool[bounds.length - 1];
+            for (int b = 0; b < bandPools.length; b++)
+                bandPools[b] = new CellPool();
+        }
+        findQuietBlocks();
+
+        bands.forEachBand(bounds, (from, to) -> propose(from, to, generation, fishBreed, sharkBreed));
+        bands.forEachBand(bounds, this::arbitrate);
+        bands.forEachBand(bounds, (from, to) -> apply(from, to, generation));
+
+        int fish = 0, sharks = 0, empty = 0;
+        Map<Integer, int[]> ages = new TreeMap<>();
+        for (int b = 0; b < bandStats.length; b++) {
+            fish += bandStats[b].fish;
+            sharks += bandStats[b].sharks;
+            empty += bandStats[b].empty;
+            for (Map.Entry<Integer, int[]> e : bandStats[b].ageDistribution.entrySet()) {
+                int[] counts = ages.computeIfAbsent(e.getKey(), a -> new int[2]);
+                counts[0] += e.getValue()[0];
+                counts[1] += e.getValue()[1];
+            }
+            ocean.touchTiles(bandDirty[b]);
+            Arrays.fill(bandDirty[b], 0);
+        }
+        ocean.setOccupancy(occupancy);
+        return new StatisticsData(fish, sharks, empty, ages);
+    }
+
+    /**
+     * Calcula emptyBlock y quietBlock con los contadores de ocupación del océano.
+     */
+    private void findQuietBlocks() {
+        int bx = ocean.getOccTilesX(), by = ocean.getOccTilesY();
+        int[] row = new int[bx];
+        for (int j = 0; j < by; j++) {
+            ocean.copyOccupancyRow(j << Ocean.OCC_SHIFT, row);
+            for (int i = 0; i < bx; i++)
+                emptyBlock[j * bx + i] = row[i] == 0;
+        }
+        for (int j = 0; j < by; j++) {
+            for (int i = 0; i < bx; i++) {
+                boolean quiet = true;
+                for (int dj = -1; dj <= 1 && quiet; dj++)
+                    for (int di = -1; di <= 1 && quiet; di++)
+                        quiet = emptyBlock[(j + dj + by) % by * bx + (i + di + bx) % bx];
+                quietBlock[j * bx + i] = quiet;
+            }
+        }
+    }
+
+    /**
+     * @return Celdas de la fila y desde x que hay que saltar (las del
+     *         bloque de x si está marcado en blocks y x es su primera
+     *         columna), o 0
+     */
+    private int skip(boolean[] blocks, int x, int y) {
+        if ((x & (Ocean.OCC_TILE - 1)) != 0
+                || !blocks[(y >> Ocean.OCC_SHIFT) * ocean.getOccTilesX() + (x >> Ocean.OCC_SHIFT)])
+            return 0;
+        return Math.min(Ocean.OCC_TILE, width - x);
+    }
+
+    // ===== Fase 1: propuestas =====
+
+    /**
+     * Guarda el estado inicial de las filas [from, to) y la intención de
+     * cada criatura. Los vecinos de otras bandas se leen del almacenamiento,
+     * que nadie modifica hasta la fase 3.
+     */
+    private void propose(int from, int to, int generation, boolean fishBreed, boolean sharkBreed) {
+        for (int y = from; y < to; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int n = skip(emptyBlock, x, y);
+                if (n > 0) {
+                    Arrays.fill(cells, i, i + n, null);
+                    Arrays.fill(types, i, i + n, Ocean.EMPTY);
+                    Arrays.fill(intent, i, i + n, IDLE);
+                    x += n - 1;
+                    continue;
+                }
+                Cell c = storage.get(x, y);
+                cells[i] = c;
+                types[i] = Ocean.displayTypeOf(c);
+                if (c == null || !c.isPending(generation)) {
+                    intent[i] = IDLE;
+                    continue;
+                }
+
+                int dir;
+                if (c.species == Ocean.SHARK) {
+                    // Regla 1: comer el primer pez vecino (en el orden de
+                    // NEIGHBOUR_MASK). Regla 2: si no hay, moverse
+                    dir = firstNeighbour(x, y, Ocean.FISH);
+                    if (dir >= 0) {
+                        intent[i] = (byte) (dir | EAT | FED | (sharkBreed ? BREED : 0));
+                        continue;
+                    }
+                    dir = randomFreeNeighbour(x, y, i);
+                    intent[i] = (byte) (dir < 0 ? STAY : dir | (sharkBreed ? BREED : 0));
+                } else {
+                    dir = randomFreeNeighbour(x, y, i);
+                    intent[i] = (byte) (dir < 0 ? STAY : dir | (fishBreed ? BREED : 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Primera dirección de NEIGHBOUR_MASK cuyo vecino es de la
+     *         especie type, o -1
+     */
+    private int firstNeighbour(int x, int y, byte type) {
+        for (int d = 0; d < 4; d++)
+            if (storage.typeAt(nx(x, d), ny(y, d)) == type)
+                return d;
+        return -1;
+    }
+
+    /**
+     * @return Dirección de un vecino libre elegido como Ocean.getRandomly(), o -1
+     */
+    private int randomFreeNeighbour(int x, int y, int i) {
+        // Direcciones libres (un bit por dirección), sin reservar memoria
+        int free = 0;
+        for (int d = 0; d < 4; d++)
+            if (storage.typeAt(nx(x, d), ny(y, d)) == Ocean.EMPTY)
+                free |= 1 << d;
+        int n = Integer.bitCount(free);
+        if (n == 0)
+            return -1;
+        long h = cellHash(i);
+        double u1 = (h >>> 11) * 0x1.0p-53;
+        double u2 = (OceanRandom.mix(h) >>> 11) * 0x1.0p-53;
+        for (int k = (int) Math.round(u1 * u2 * 2 * n) % n; k > 0; k--)
+            free &= free - 1;
+        return Integer.numberOfTrailingZeros(free);
+    }
+
+    // ===== Fase 2: arbitraje =====
+
+    /**
+     * Elige para cada celda de las filas [from, to) la criatura que entra
+     * en ella: entre los tiburones que quieren comerse su pez o entre las
+     * criaturas que quieren moverse a ella si está libre.
+     */
+    private void arbitrate(int from, int to) {
+        for (int y = from; y < to; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int n = skip(quietBlock, x, y);
+                if (n > 0) {
+                    Arrays.fill(winner, i, i + n, NONE);
+                    x += n - 1;
+                    continue;
+                }
+                byte type = species(types[i]);
+                byte best = NONE;
+                int bestIndex = -1;
+
+                if (type != Ocean.SHARK) {
+                    for (int d = 0; d < 4; d++) {
+                        int j = ny(y, d) * width + nx(x, d);
+                        byte in = intent[j];
+                        // El vecino j apunta a esta celda con la dirección opuesta
+                        if ((in & DIR_MASK) != opposite(d))
+                            continue;
+                        // A un pez solo se llega comiéndolo; a una celda libre, moviéndose
+                        if (((in & EAT) != 0) != (type == Ocean.FISH))
+                            continue;
+                        // Un pez que se comen no se mueve
+                        if (species(types[j]) == Ocean.FISH && isEaten(j))
+                            continue;
+                        if (bestIndex < 0 || beats(j, bestIndex)) {
+                            best = (byte) d;
+                            bestIndex = j;
+                        }
+                    }
+                }
+                winner[i] = best;
+            }
+        }
+    }
+
+    /**
+     * @return true si algún tiburón vecino quiere comerse el pez de la celda i
+     */
+    private boolean isEaten(int i) {
+        int x = i % width, y = i / width;
+        for (int d = 0; d < 4; d++) {
+            byte in = intent[ny(y, d) * width + nx(x, d)];
+            if ((in & EAT) != 0 && (in & DIR_MASK) == opposite(d))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return true si la criatura de la celda a tiene prioridad sobre la de b
+     */
+    private boolean beats(int a, int b) {
+        if (priority == Priority.OLDEST) {
+            int ageA = cells[a].getAge(), ageB = cells[b].getAge();
+            if (ageA != ageB)
+                return ageA > ageB;
+        }
+        return OceanRandom.mix(cellHash(a)) > OceanRandom.mix(cellHash(b));
+    }
+
+    // ===== Fase 3: aplicación =====
+
+    /**
+     * Calcula el nuevo ocupante de cada celda de las filas [from, to), lo
+     * guarda en el almacenamiento y cuenta las estadísticas de la banda.
+     * Cada criatura la modifica solo la celda en la que acaba.
+     */
+    private void apply(int from, int to, int generation) {
+        int band = Arrays.binarySearch(bounds, from);
+        long[] dirty = bandDirty[band];
+        CellPool pool = bandPools[band];
+        pool.recycle(ocean, cellPooling);
+        int fish = 0, sharks = 0, empty = 0;
+        Map<Integer, int[]> ages = new TreeMap<>();
+        int occX = ocean.getOccTilesX();
+        Arrays.fill(occupancy, (from >> Ocean.OCC_SHIFT) * occX,
+                ((to + Ocean.OCC_TILE - 1) >> Ocean.OCC_SHIFT) * occX, 0);
+
+        for (int y = from; y < to; y++) {
+            for (int x = 0; x < width; x++) {
+                int i = y * width + x;
+                int n = skip(quietBlock, x, y);
+                if (n > 0) {
+                    // Sigue vacío
+                    empty += n;
+                    x += n - 1;
+                    continue;
+                }
+                byte old = types[i];
+                Cell result;
+
+                if (winner[i] != NONE) {
+                    // Llega una criatura (y si había un pez, se lo come)
+                    if (old == Ocean.FISH && !hasLeft(x, y))
+                        pool.release(cells[i]);
+                    int j = ny(y, winner[i]) * width + nx(x, winner[i]);
+                    result = advance(cells[j], intent[j], true);
+                    if (result == null)
+                        pool.release(cells[j]);
+                } else if (old == Ocean.EMPTY) {
+                    empty++;
+                    continue;
+                } else {
+                    byte in = intent[i];
+                    if (hasLeft(x, y)) {
+                        // Se ha ido: deja una cría o la celda vacía
+                        result = (in & BREED) != 0
+                                ? pool.newCell(species(old), generation + 1) : null;
+                    } else if (in == IDLE) {
+                        result = cells[i];
+                    } else {
+                        result = advance(cells[i], in, false);
+                        if (result == null)
+                            pool.release(cells[i]);
+                    }
+                }
+
+                if (result != null) {
+                    result.posX = x;
+                    result.posY = y;
+                }
+                storage.set(x, y, result);
+                if (Ocean.displayTypeOf(result) != old) {
+                    int t = (y >> Ocean.TILE_SHIFT) * ocean.getTilesX() + (x >> Ocean.TILE_SHIFT);
+                    dirty[t >> 6] |= 1L << t;
+                }
+
+                if (result == null) {
+                    empty++;
+                    continue;
+                }
+                occupancy[(y >> Ocean.OCC_SHIFT) * occX + (x >> Ocean.OCC_SHIFT)]++;
+                int s = result.species == Ocean.SHARK ? 1 : 0;
+                if (s == 0)
+                    fish++;
+                else
+                    sharks++;
+                ages.computeIfAbsent(result.getAge(), a -> new int[2])[s]++;
+            }
+        }
+        bandStats[band] = new StatisticsData(fish, sharks, empty, ages);
+    }
+
+    /**
+     * Actualiza una criatura que se queda o que ha ganado su celda destino
+     * (como Cell.update).
+     *
+     * @return La criatura, o null si es un tiburón que muere de hambre
+     */
+    private Cell advance(Cell c, byte in, boolean moved) {
+        c.setGeneration(c.getGeneration() + 1);
+        c.setAge(c.getAge() + 1);
+        if (c.species != Ocean.SHARK)
+            return c;
+
+        Shark s = (Shark) c;
+        // Regla 1: comer. Regla 3: reproducirse cuesta energía
+        if (moved && (in & EAT) != 0)
+            s.lifeIndex += Ocean.DFishEnergy;
+        if (moved && (in & BREED) != 0)
+            s.lifeIndex--;
+        // Regla 4: sin peces vecinos pierde energía
+        if ((in & FED) == 0)
+            s.lifeIndex--;
+        return s.lifeIndex < 1 ? null : s;
+    }
+
+    /**
+     * @return true si la criatura de la celda (x, y) ha ganado la celda a la que quería ir
+     */
+    private boolean hasLeft(int x, int y) {
+        int d = intent[y * width + x] & DIR_MASK;
+        return d < 4 && winner[ny(y, d) * width + nx(x, d)] == opposite(d);
+    }
+
+    // ===== Utilidades =====
+
+    private long cellHash(int i) {
+        return OceanRandom.mix(stepSeed + OceanRandom.mix(i));
+    }
+
+    private int nx(int x, int d) {
+        int v = x + Ocean.NEIGHBOUR_MASK[d].x;
+        return v < 0 ? width - 1 : v >= width ? 0 : v;
+    }
+
+    private int ny(int y, int d) {
+        int v = y + Ocean.NEIGHBOUR_MASK[d].y;
+        return v < 0 ? height - 1 : v >= height ? 0 : v;
+    }
+
+    private static int opposite(int d) {
+        return (d + 2) & 3;
+    }
+
+    private static byte species(byte displayType) {
+        return displayType == Ocean.HUNGRY_SHARK ? Ocean.SHARK : displayType;
+    }
+
+    @Override
+    public void close() {
+        bands.close();
+    }
+}
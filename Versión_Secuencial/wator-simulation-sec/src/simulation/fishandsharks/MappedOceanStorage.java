@@ -0,0 +1,284 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : MappedOceanStorage.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Fish;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Almacenamiento de las celdas fuera del heap, en un fichero mapeado en memoria.
+ *
+ * Cada celda es un registro de RECORD_BYTES bytes (generación, edad,
+ * lifeIndex y especie). El recolector de basura no ve el océano: solo las
+ * copias de las celdas que se están actualizando en cada momento. El fichero
+ * se mapea por trozos de como mucho CHUNK_BYTES (un MappedByteBuffer no
+ * puede pasar de 2 GB) y el sistema operativo se encarga de cargar y
+ * descargar las páginas, así que el océano puede ser mayor que la memoria.
+ *
+ * El fichero se crea disperso (las celdas vacías son ceros) y sobrevive al
+ * proceso: al volver a abrirlo con las mismas dimensiones se recuperan las
+ * celdas y el estado guardado con saveState(). Un fichero con otro
+ * contenido no se sobrescribe nunca.
+ *
+ * Formato (little-endian):
+ *   Cabecera (HEADER_BYTES): MAGIC, VERSION, ancho, alto, generación,
+ *   ciclo de peces, ciclo de tiburones, estado guardado (0/1) (int) y
+ *   estado del generador aleatorio (long)
+ *   Registro (índice y*ancho + x): generación (int), edad (int),
+ *   lifeIndex (short), especie (byte: Ocean.EMPTY, FISH o SHARK), relleno
+ */
+public class MappedOceanStorage implements OceanStorage {
+
+    static final int MAGIC = 0x57544D4F; // "WTMO"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int RECORD_BYTES = 12;
+
+    // Tamaño máximo de cada trozo mapeado
+    static final long CHUNK_BYTES = 1L << 30;
+
+    // Desplazamientos dentro de la cabecera y de cada registro
+    private static final int H_GENERATION = 16, H_FISH_CYCLE = 20, H_SHARK_CYCLE = 24, H_SAVED = 28, H_RANDOM = 32;
+    private static final int TIME = 0, AGE = 4, LIFE = 8, TYPE = 10;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] chunks;
+    private final int width, height, rowsPerChunk;
+    private final boolean restored;
+
+    private MappedOceanStorage(FileChannel channel, int width, int height, boolean restored)
+            throws IOException {
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        this.restored = restored;
+
+        long rowBytes = (long) width * RECORD_BYTES;
+        if (rowBytes > CHUNK_BYTES)
+            throw new IllegalArgumentException("Fila demasiado larga para mapearla: " + width);
+        rowsPerChunk = (int) Math.min(height, CHUNK_BYTES / rowBytes);
+
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.order(ByteOrder.LITTLE_ENDIAN);
+
+        chunks = new MappedByteBuffer[(height + rowsPerChunk - 1) / rowsPerChunk];
+        for (int i = 0; i < chunks.length; i++) {
+            int rows = Math.min(rowsPerChunk, height - i * rowsPerChunk);
+            chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + i * rowsPerChunk * rowBytes, rows * rowBytes);
+            chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /**
+     * Abre el océano guardado en file o, si no existe o está vacío, crea
+     * uno vacío.
+     *
+     * @throws FileAlreadyExistsException Si file tiene contenido que no es
+     *         un océano de width x height (otro fichero, otra versión u
+     *         otras dimensiones). No se modifica: para reemplazarlo hay que
+     *         borrarlo antes
+     */
+    public static MappedOceanStorage open(Path file, int width, int height) throws IOException {
+        Ocean.checkSize(width, height);
+
+        long size = HEADER_BYTES + (long) width * height * RECORD_BYTES;
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long existing = channel.size();
+            boolean restored = existing > 0;
+            if (restored) {
+                ByteBuffer h = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+                channel.read(h, 0);
+                h.flip();
+                if (h.remaining() < 16 || h.getInt() != MAGIC || h.getInt() != VERSION)
+                    throw new FileAlreadyExistsException(file.toString(), null,
+                            "no es un océano de Wa-Tor");
+                int fileWidth = h.getInt(), fileHeight = h.getInt();
+                if (fileWidth != width || fileHeight != height || existing != size)
+                    throw new FileAlreadyExistsException(file.toString(), null,
+                            "contiene un océano de " + fileWidth + "x" + fileHeight);
+            } else {
+                // Fichero disperso: solo ocupa disco lo que se escribe
+                ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                h.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+                h.clear();
+                channel.write(h, 0);
+                channel.write(ByteBuffer.allocate(1), size - 1);
+            }
+
+            return new MappedOceanStorage(channel, width, height, restored);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true si las celdas se han recuperado de un fichero existente
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * @return true si el fichero tiene un estado guardado con saveState()
+     */
+    public boolean hasSavedState() {
+        return header.getInt(H_SAVED) == 1;
+    }
+
+    public int getSavedGeneration() {
+        return header.getInt(H_GENERATION);
+    }
+
+    public int getSavedFishCycle() {
+        return header.getInt(H_FISH_CYCLE);
+    }
+
+    public int getSavedSharkCycle() {
+        return header.getInt(H_SHARK_CYCLE);
+    }
+
+    public long getSavedRandomState() {
+        return header.getLong(H_RANDOM);
+    }
+
+    /**
+     * Guarda en la cabecera el estado de la simulación que acompaña a las celdas.
+     */
+    public void saveState(int generation, int fishCycle, int sharkCycle, long randomState) {
+        header.putInt(H_GENERATION, generation);
+        header.putInt(H_FISH_CYCLE, fishCycle);
+        header.putInt(H_SHARK_CYCLE, sharkCycle);
+        header.putLong(H_RANDOM, randomState);
+        header.putInt(H_SAVED, 1);
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    private MappedByteBuffer chunk(int y) {
+        return chunks[y / rowsPerChunk];
+    }
+
+    private int offset(int x, int y) {
+        return ((y % rowsPerChunk) * width + x) * RECORD_BYTES;
+    }
+
+    @Override
+    public Cell get(int x, int y) {
+        MappedByteBuffer b = chunk(y);
+        int off = offset(x, y);
+        byte type = b.get(off + TYPE);
+        if (type == Ocean.EMPTY)
+            return null;
+
+        Cell c;
+        if (type == Ocean.FISH) {
+            c = new Fish();
+        } else {
+            Shark s = new Shark();
+            s.lifeIndex = b.getShort(off + LIFE);
+            c = s;
+        }
+        c.setGeneration(b.getInt(off + TIME));
+        c.setAge(b.getInt(off + AGE));
+        return c;
+    }
+
+    @Override
+    public void set(int x, int y, Cell value) {
+        MappedByteBuffer b = chunk(y);
+        int off = offset(x, y);
+        if (value == null) {
+            b.put(off + TYPE, Ocean.EMPTY);
+            return;
+        }
+        write(b, off, value);
+        b.put(off + TYPE, Ocean.typeOf(value));
+    }
+
+    @Override
+    public void commit(int x, int y, Cell value) {
+        MappedByteBuffer b = chunk(y);
+        int off = offset(x, y);
+        if (b.get(off + TYPE) == Ocean.typeOf(value))
+            write(b, off, value);
+    }
+
+    private static void write(MappedByteBuffer b, int off, Cell value) {
+        b.putInt(off + TIME, value.getGeneration());
+        b.putInt(off + AGE, value.getAge());
+        b.putShort(off + LIFE, value.species == Ocean.SHARK ? (short) ((Shark) value).lifeIndex : 0);
+    }
+
+    @Override
+    public byte typeAt(int x, int y) {
+        return chunk(y).get(offset(x, y) + TYPE);
+    }
+
+    @Override
+    public byte displayTypeAt(int x, int y) {
+        MappedByteBuffer b = chunk(y);
+        int off = offset(x, y);
+        byte type = b.get(off + TYPE);
+        return type == Ocean.SHARK && b.getShort(off + LIFE) <= 1 ? Ocean.HUNGRY_SHARK : type;
+    }
+
+    @Override
+    public int ageAt(int x, int y) {
+        MappedByteBuffer b = chunk(y);
+        int off = offset(x, y);
+        return b.get(off + TYPE) == Ocean.EMPTY ? 0 : b.getInt(off + AGE);
+    }
+
+    @Override
+    public void copyRowTypes(int y, byte[] dst) {
+        MappedByteBuffer b = chunk(y);
+        int off = offset(0, y) + TYPE;
+        for (int x = 0; x < width; x++, off += RECORD_BYTES)
+            dst[x] = b.get(off);
+    }
+
+    @Override
+    public void flush() {
+        header.force();
+        for (MappedByteBuffer b : chunks)
+            b.force();
+    }
+
+    /**
+     * Escribe los cambios a disco y cierra el fichero. Las zonas mapeadas se
+     * liberan cuando el recolector de basura recoge los buffers.
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+}
@@ -0,0 +1,119 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : NodeLink.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Conexión TCP entre dos procesos de la simulación distribuida
+ * (DistributedCoordinator y DistributedNode), con mensajes delimitados
+ * (longitud + contenido).
+ *
+ * Un hilo lector recibe los mensajes en cuanto llegan y los deja en una
+ * cola. Así enviar nunca se bloquea esperando a que el otro extremo lea:
+ * si todos los nodos del anillo envían a la vez filas que no caben en los
+ * buffers del socket, no hay interbloqueo.
+ *
+ * Se escribe desde un único hilo y se lee desde un único hilo.
+ */
+public class NodeLink implements Closeable {
+
+    // Marca de fin de la cola (conexión cerrada)
+    private static final byte[] CLOSED = new byte[0];
+
+    private final Socket socket;
+    private final DataOutputStream out;
+    private final ByteArrayOutputStream message = new ByteArrayOutputStream();
+    private final DataOutputStream messageOut = new DataOutputStream(message);
+    private final BlockingQueue<byte[]> inbox = new LinkedBlockingQueue<>();
+    private final Thread reader;
+
+    public NodeLink(Socket socket, String name) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 1 << 16));
+        reader = new Thread(() -> readLoop(in), "NodeLink-" + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    private void readLoop(DataInputStream in) {
+        try {
+            while (true) {
+                byte[] m = new byte[in.readInt()];
+                in.readFully(m);
+                inbox.add(m);
+            }
+        } catch (IOException e) {
+            // Conexión cerrada por el otro extremo o por close()
+        } finally {
+            inbox.add(CLOSED);
+        }
+    }
+
+    /**
+     * Empieza un mensaje nuevo: se escribe en el stream devuelto y se
+     * envía con send().
+     */
+    public DataOutputStream begin() {
+        message.reset();
+        return messageOut;
+    }
+
+    /**
+     * Envía el mensaje escrito desde el último begin().
+     */
+    public void send() throws IOException {
+        messageOut.flush();
+        out.writeInt(message.size());
+        message.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Espera al siguiente mensaje.
+     *
+     * @throws EOFException Si la conexión se ha cerrado
+     */
+    public DataInputStream receive() throws IOException {
+        byte[] m;
+        try {
+            m = inbox.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrumpido esperando un mensaje", e);
+        }
+        if (m == CLOSED) {
+            inbox.add(CLOSED);
+            throw new EOFException("Conexión cerrada: " + socket.getRemoteSocketAddress());
+        }
+        return new DataInputStream(new ByteArrayInputStream(m));
+    }
+
+    public Socket getSocket() {
+        return socket;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
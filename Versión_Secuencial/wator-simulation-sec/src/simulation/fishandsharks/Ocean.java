@@ -9,6 +9,7 @@ package simulation.fishandsharks;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.io.IOException;
 import java.util.Arrays;
 
 /**
@@ -17,38 +18,102 @@ import java.util.Arrays;
  * MODIFICACIONES PARA CONCURRENCIA:
  * - Métodos getField() y setField() declarados como synchronized
  * - Métodos getFreeNeighbours(), getFishNeighbours(), getSharkNeighbours() sincronizados
- * - Corrección en Shark.internalUpdate() para verificar null antes de acceder a celdas
+ * - Corrección en Shark.step() para verificar null antes de acceder a celdas
  *
  * Estas modificaciones evitan condiciones de carrera cuando múltiples hilos
  * acceden simultáneamente a las celdas del océano.
+ *
+ * Las celdas se guardan en un OceanStorage: en el heap (por defecto) o en un
+ * fichero mapeado en memoria (MappedOceanStorage) para océanos mayores que
+ * el heap. En el segundo caso getField() devuelve una copia de la celda, que
+ * guarda su estado final con commit() al terminar su actualización.
  */
 public class Ocean {
 	// Energía que recibe un tiburón al comer un pez
 	static final int DFishEnergy = 2;
 
+	// Códigos de especie para formatos binarios (2 bits por celda)
+	public static final byte EMPTY = 0, FISH = 1, SHARK = 2;
+
+	// Código adicional para visualización: tiburón con lifeIndex <= 1
+	// (se dibuja más pequeño, igual que en SharkFishModel.paint)
+	public static final byte HUNGRY_SHARK = 3;
+
 	// Máscara de vecinos (Norte, Este, Sur, Oeste)
 	public static final Point[] NEIGHBOUR_MASK = {
 			new Point(0, -1), new Point(1, 0), new Point(0, 1), new Point(-1, 0)
 	};
 
-	// Matriz de celdas del océano
-	private Cell[][] ocean;
+	// Tamaño (en celdas) de las teselas usadas para marcar zonas modificadas
+	public static final int TILE_SHIFT = 4, TILE = 1 << TILE_SHIFT;
+
+	// Tamaño (en celdas) de los bloques con contador de ocupación
+	public static final int OCC_SHIFT = 5, OCC_TILE = 1 << OCC_SHIFT;
+
+	// Máximo de celdas de un océano: los contadores de población son int y
+	// las copias de las especies (OceanSnapshot, grabaciones) son un byte[]
+	// con una posición por celda
+	public static final int MAX_CELLS = Integer.MAX_VALUE - 8;
+
+	// Celdas del océano
+	private final OceanStorage storage;
 	private int width, height;
 
-	public Ocean(int width, int height) {
+	// Teselas modificadas desde el último drainDirtyTiles(): un bit por
+	// tesela (índice = ty*tilesX + tx). Protegido por el lock del océano.
+	private final int tilesX, tilesY;
+	private final long[] dirtyTiles;
+
+	// Celdas ocupadas de cada bloque de OCC_TILE x OCC_TILE (índice =
+	// by*occTilesX + bx). Se actualiza en setField(); protegido por el lock
+	// del océano. Los recorridos se saltan los bloques vacíos.
+	private final int occTilesX, occTilesY;
+	private final int[] occupancy;
+
+	// Si es false copyOccupancyRow() da todos los bloques por ocupados
+	// (para medir el recorrido completo, ver SparseOceanBenchmark)
+	private boolean skipEmptyBlocks = true;
+
+	// Generador aleatorio del océano (con semilla para poder reproducir ejecuciones)
+	private final OceanRandom random = new OceanRandom();
+
+	/**
+	 * Comprueba que un océano de width x height se puede crear.
+	 *
+	 * @throws IllegalArgumentException Si algún lado es menor que 1 o hay
+	 *         más de MAX_CELLS celdas
+	 */
+	public static void checkSize(int width, int height) {
 		if (width < 1 || height < 1)
 			throw new IllegalArgumentException();
+		if ((long) width * height > MAX_CELLS)
+			throw new IllegalArgumentException("Océano demasiado grande: " + width + "x" + height
+					+ " (como mucho " + MAX_CELLS + " celdas)");
+	}
 
-		this.ocean = new Cell[height][width];
-		this.width = width;
-		this.height = height;
+	public Ocean(int width, int height) {
+		this(new HeapOceanStorage(width, height));
+	}
 
-		// Inicializar todas las celdas a null (vacías)
-		for (int j = 0; j < ocean.length; j++) {
-			for (int i = 0; i < ocean[j].length; i++) {
-				ocean[j][i] = null;
-			}
-		}
+	/**
+	 * Crea un océano sobre un almacenamiento ya creado (por ejemplo un
+	 * MappedOceanStorage, que puede contener celdas de una ejecución anterior).
+	 */
+	public Ocean(OceanStorage storage) {
+		checkSize(storage.getWidth(), storage.getHeight());
+
+		this.storage = storage;
+		this.width = storage.getWidth();
+		this.height = storage.getHeight();
+		this.tilesX = (width + TILE - 1) >> TILE_SHIFT;
+		this.tilesY = (height + TILE - 1) >> TILE_SHIFT;
+		this.dirtyTiles = new long[(tilesX*tilesY + 63) >> 6];
+		this.occTilesX = (width + OCC_TILE - 1) >> OCC_SHIFT;
+		this.occTilesY = (height + OCC_TILE - 1) >> OCC_SHIFT;
+		this.occupancy = new int[occTilesX*occTilesY];
+		// El almacenamiento puede tener ya celdas (fichero restaurado,
+		// franja sobre un océano compartido)
+		recountOccupancy();
 	}
 
 	/**
@@ -64,7 +129,141 @@ public class Ocean {
 	 * @return La celda que se colocó
 	 */
 	public synchronized Cell setField(int x, int y, Cell value) {
-		return ocean[(height+(y%height))%height][(width+(x%width))%width] = value;
+		x = (width+(x%width))%width;
+		y = (height+(y%height))%height;
+		markDirty(x, y);
+		int occupied = (value != null ? 1 : 0) - (storage.typeAt(x, y) != EMPTY ? 1 : 0);
+		if (occupied != 0)
+			occupancy[(y >> OCC_SHIFT)*occTilesX + (x >> OCC_SHIFT)] += occupied;
+		if (value != null) {
+			value.posX = x;
+			value.posY = y;
+		}
+		storage.set(x, y, value);
+		return value;
+	}
+
+	/**
+	 * Guarda el estado final de una celda que sigue en (x, y) tras su
+	 * actualización (ver OceanStorage.commit).
+	 */
+	synchronized void commit(int x, int y, Cell value) {
+		storage.commit(x, y, value);
+	}
+
+	/**
+	 * Marca como modificada la tesela de la celda (x, y), ya normalizada.
+	 * Se debe llamar con el lock del océano.
+	 */
+	private void markDirty(int x, int y) {
+		int t = (y >> TILE_SHIFT)*tilesX + (x >> TILE_SHIFT);
+		dirtyTiles[t >> 6] |= 1L << t;
+	}
+
+	/**
+	 * Marca como modificada la celda (x, y) aunque no haya cambiado de
+	 * ocupante (por ejemplo, un tiburón que pasa a estar hambriento).
+	 */
+	public synchronized void touchField(int x, int y) {
+		markDirty((width+(x%width))%width, (height+(y%height))%height);
+	}
+
+	/**
+	 * Marca como modificadas todas las teselas que tocan las celdas
+	 * [fromX, toX) x [fromY, toY) (sin topología toroidal).
+	 */
+	public synchronized void touchRegion(int fromX, int fromY, int toX, int toY) {
+		for (int ty = fromY >> TILE_SHIFT; ty <= (toY - 1) >> TILE_SHIFT; ty++)
+			for (int tx = fromX >> TILE_SHIFT; tx <= (toX - 1) >> TILE_SHIFT; tx++) {
+				int t = ty*tilesX + tx;
+				dirtyTiles[t >> 6] |= 1L << t;
+			}
+	}
+
+	/**
+	 * Marca como modificadas las teselas de src (bitmap con el formato de
+	 * drainDirtyTiles), por ejemplo las calculadas sin lock por una banda.
+	 */
+	synchronized void touchTiles(long[] src) {
+		for (int i = 0; i < dirtyTiles.length; i++)
+			dirtyTiles[i] |= src[i];
+	}
+
+	/**
+	 * Añade a dst (con OR) las teselas modificadas desde la llamada anterior
+	 * y las desmarca.
+	 *
+	 * @param dst Array de al menos getDirtyWords() posiciones
+	 */
+	public synchronized void drainDirtyTiles(long[] dst) {
+		for (int i = 0; i < dirtyTiles.length; i++) {
+			dst[i] |= dirtyTiles[i];
+			dirtyTiles[i] = 0;
+		}
+	}
+
+	/**
+	 * Copia en dst[0..getOccTilesX()) las celdas ocupadas de cada bloque de
+	 * la fila de bloques de la fila de celdas y. Un bloque con 0 celdas no
+	 * tiene nada que actualizar ni contar: las criaturas que entren en él
+	 * durante el mismo paso ya se han actualizado (o acaban de nacer).
+	 */
+	public synchronized void copyOccupancyRow(int y, int[] dst) {
+		if (skipEmptyBlocks)
+			System.arraycopy(occupancy, (y >> OCC_SHIFT)*occTilesX, dst, 0, occTilesX);
+		else
+			Arrays.fill(dst, 0, occTilesX, 1);
+	}
+
+	synchronized void setSkipEmptyBlocks(boolean skip) {
+		this.skipEmptyBlocks = skip;
+	}
+
+	/**
+	 * Sustituye los contadores de ocupación (para quien escribe en el
+	 * almacenamiento sin pasar por setField(), como IntentEngine).
+	 */
+	synchronized void setOccupancy(int[] counts) {
+		System.arraycopy(counts, 0, occupancy, 0, occupancy.length);
+	}
+
+	/**
+	 * Recalcula los contadores de ocupación recorriendo el almacenamiento
+	 * (tras modificarlo sin pasar por este océano, p. ej. con ChunkWorker).
+	 */
+	synchronized void recountOccupancy() {
+		Arrays.fill(occupancy, 0);
+		byte[] row = new byte[width];
+		for (int y = 0; y < height; y++) {
+			storage.copyRowTypes(y, row);
+			int base = (y >> OCC_SHIFT)*occTilesX;
+			for (int x = 0; x < width; x++)
+				if (row[x] != EMPTY)
+					occupancy[base + (x >> OCC_SHIFT)]++;
+		}
+	}
+
+	public int getOccTilesX() {
+		return occTilesX;
+	}
+
+	public int getOccTilesY() {
+		return occTilesY;
+	}
+
+	public int getTilesX() {
+		return tilesX;
+	}
+
+	public int getTilesY() {
+		return tilesY;
+	}
+
+	/**
+	 * @return Longitud (en longs) del bitmap de teselas
+	 */
+	public int getDirtyWords() {
+		return dirtyTiles.length;
 	}
 
 	/**
@@ -79,7 +278,56 @@ public class Ocean {
 	 * @return La celda en esa posición (puede ser null)
 	 */
 	public synchronized Cell getField(int x, int y) {
-		return ocean[(height+(y%height))%height][(width+(x%width))%width];
+		x = (width+(x%width))%width;
+		y = (height+(y%height))%height;
+		Cell c = storage.get(x, y);
+		if (c != null) {
+			c.posX = x;
+			c.posY = y;
+		}
+		return c;
+	}
+
+	/**
+	 * @return Código de especie de la celda (EMPTY, FISH o SHARK), sin
+	 *         crear la celda si el almacenamiento está fuera del heap
+	 */
+	public synchronized byte typeAt(int x, int y) {
+		return storage.typeAt((width+(x%width))%width, (height+(y%height))%height);
+	}
+
+	/**
+	 * @return Edad de la celda (0 si está vacía)
+	 */
+	public synchronized int ageAt(int x, int y) {
+		return storage.ageAt((width+(x%width))%width, (height+(y%height))%height);
+	}
+
+	/**
+	 * Copia los códigos de especie de la fila y en dst[0..width), sin lock.
+	 * Solo para cálculos sobre todo el océano con la simulación detenida
+	 * entre dos pasos (por ejemplo en paralelo con ParallelBands).
+	 */
+	void copyRowTypes(int y, byte[] dst) {
+		storage.copyRowTypes(y, dst);
+	}
+
+	public OceanStorage getStorage() {
+		return storage;
+	}
+
+	/**
+	 * Escribe a disco los cambios pendientes del almacenamiento.
+	 */
+	public synchronized void flush() throws IOException {
+		storage.flush();
+	}
+
+	/**
+	 * Cierra el almacenamiento. El océano no se puede usar después.
+	 */
+	public synchronized void close() throws IOException {
+		storage.close();
 	}
 
 	public int getWidth() {
@@ -90,13 +338,60 @@ public class Ocean {
 		return height;
 	}
 
+	/**
+	 * Generador aleatorio usado por las reglas de peces y tiburones.
+	 * Se puede fijar su semilla para repetir una ejecución.
+	 */
+	public OceanRandom getRandom() {
+		return random;
+	}
+
+	/**
+	 * Copia el código de visualización de todas las celdas (EMPTY, FISH, SHARK
+	 * o HUNGRY_SHARK) en dst, en orden de filas (índice = y*width + x).
+	 *
+	 * Adquiere el lock una sola vez para todo el océano, en lugar de una vez
+	 * por celda como getField().
+	 *
+	 * @param dst Array de al menos width*height posiciones
+	 */
+	public void copyTypes(byte[] dst) {
+		copyTypes(dst, 0, 0, width, height);
+	}
+
+	/**
+	 * Como copyTypes(byte[]) pero solo para las celdas de la ventana
+	 * [fromX, toX) x [fromY, toY), que se copian en dst en orden de filas
+	 * de la ventana (índice = (y-fromY)*(toX-fromX) + (x-fromX)).
+	 */
+	public synchronized void copyTypes(byte[] dst, int fromX, int fromY, int toX, int toY) {
+		int i = 0;
+		for (int j = fromY; j < toY; j++) {
+			for (int k = fromX; k < toX; k++)
+				dst[i++] = storage.displayTypeAt(k, j);
+		}
+	}
+
+	/**
+	 * @return Código de visualización de una celda
+	 */
+	public static byte displayTypeOf(Cell c) {
+		if (c == null)
+			return EMPTY;
+		if (c.species == SHARK)
+			return ((Shark) c).lifeIndex > 1 ? SHARK : HUNGRY_SHARK;
+		return FISH;
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer buf = new StringBuffer();
 
-		for (int j = 0; j < ocean.length; j++) {
-			for (int i = 0; i < ocean[j].length; i++)
-				buf.append(ocean[j][i] == null ? "." : ocean[j][i]);
+		for (int j = 0; j < height; j++) {
+			for (int i = 0; i < width; i++) {
+				Cell c = storage.get(i, j);
+				buf.append(c == null ? "." : c);
+			}
 			buf.append('\n');
 		}
 
@@ -142,7 +437,7 @@ public class Ocean {
 			Point neighbour_pos = new Point(x+mask.x, y+mask.y);
 			checkPointBorders(neighbour_pos);
 			cell = getField(neighbour_pos.x, neighbour_pos.y);
-			if (cell instanceof Shark) {
+			if (cell != null && cell.species == SHARK) {
 				freeCells = Arrays.copyOf(freeCells, freeCells.length+1);
 				freeCells[freeCells.length-1] = neighbour_pos;
 			}
@@ -164,7 +459,7 @@ public class Ocean {
 			Point neighbour_pos = new Point(x+mask.x, y+mask.y);
 			checkPointBorders(neighbour_pos);
 			cell = getField(neighbour_pos.x, neighbour_pos.y);
-			if (cell instanceof Fish) {
+			if (cell != null && cell.species == FISH) {
 				freeCells = Arrays.copyOf(freeCells, freeCells.length+1);
 				freeCells[freeCells.length-1] = neighbour_pos;
 			}
@@ -193,22 +488,68 @@ public class Ocean {
 
 		private int time, age;
 
-		public Cell() {
+		// Especie (Ocean.FISH u Ocean.SHARK). Los bucles del motor
+		// distinguen por este campo en lugar de por instanceof o por un
+		// método virtual: cada rama llama a un método estático de una sola
+		// especie que el JIT puede compilar en línea.
+		final byte species;
+
+		// Posición en la que está guardada (la fija Ocean en setField y getField)
+		int posX, posY;
+
+		// Está en la lista libre de un CellPool
+		boolean pooled;
+
+		// Ya se ha devuelto a un CellPool (ver CellPool.release())
+		boolean released;
+
+		Cell(byte species) {
+			this.species = species;
 			time = 0;
 			age = 0;
 		}
 
-		public void update(Ocean o, int x, int y, int generation,
-						   int fishCycle, int sharkCycle) {
-			internalUpdate(o, x, y, generation, fishCycle, sharkCycle);
+		/**
+		 * @param pool Pool del hilo que actualiza: de él salen las crías y a
+		 *             él vuelven las criaturas que mueren
+		 */
+		public final void update(Ocean o, int x, int y, int generation,
+								 int fishCycle, int sharkCycle, CellPool pool) {
+			// Se incrementan antes de moverse para que setField() guarde ya
+			// el estado nuevo si el almacenamiento está fuera del heap
 			time++;
 			age++;
+			posX = x;
+			posY = y;
+			if (species == Ocean.SHARK) {
+				if (!Shark.step(o, (Shark) this, x, y, generation, sharkCycle, pool))
+					return;
+			} else {
+				Fish.step(o, (Fish) this, x, y, generation, fishCycle, pool);
+			}
+			o.commit(posX, posY, this);
+		}
+
+		/**
+		 * @return Ocean.FISH u Ocean.SHARK
+		 */
+		public byte getSpecies() {
+			return species;
 		}
 
 		public void setGeneration(int time) {
 			this.time = time;
 		}
 
+		/**
+		 * Deja la celda como recién nacida (la usa CellPool al reutilizarla).
+		 */
+		void reset(int generation) {
+			time = generation;
+			age = 0;
+			pooled = released = false;
+		}
+
 		public boolean isPending(int generation) {
 			return generation == time;
 		}
@@ -217,8 +558,14 @@ public class Ocean {
 			return age;
 		}
 
-		protected abstract void internalUpdate(Ocean o, int x, int y,
-											   int generation, int fishCycle, int sharkCycle);
+		// Accesos de paquete para checkpoints (OceanCheckpoint) y reglas
+		int getGeneration() {
+			return time;
+		}
+
+		void setAge(int age) {
+			this.age = age;
+		}
 
 		public abstract Color getColor();
 
@@ -227,29 +574,34 @@ public class Ocean {
 	// Clase para peces
 	public static class Fish extends Cell {
 
-		@Override
-		protected void internalUpdate(Ocean o, int x, int y, int generation,
-									  int fishCycle, int sharkCycle) {
+		public Fish() {
+			super(Ocean.FISH);
+		}
+
+		/**
+		 * Reglas de un pez que está en (x, y) en la generación generation.
+		 */
+		static void step(Ocean o, Fish fish, int x, int y, int generation,
+						 int fishCycle, CellPool pool) {
 			Point[] freeNeighbors;
 
 			// Regla 1: Moverse a una celda vecina libre
 			freeNeighbors = o.getFreeNeighbours(x, y);
 			if (freeNeighbors.length > 0) {
-				Point newCell = getRandomly(freeNeighbors);
+				Point newCell = o.getRandomly(freeNeighbors);
 
 				o.setField(x, y, null);
 				x = newCell.x;
 				y = newCell.y;
-				o.setField(x, y, this);
+				o.setField(x, y, fish);
 			}
 
 			// Regla 2: Reproducirse si se cumple el ciclo
 			freeNeighbors = o.getFreeNeighbours(x, y);
 			if (freeNeighbors.length > 0 && generation%fishCycle == 0) {
-				Point newCell = getRandomly(freeNeighbors);
+				Point newCell = o.getRandomly(freeNeighbors);
 
-				o.setField(newCell.x, newCell.y, new Fish()).time =
-						super.time + 1;
+				o.setField(newCell.x, newCell.y, pool.newFish(fish.getGeneration()));
 			}
 		}
 
@@ -270,64 +622,99 @@ public class Ocean {
 
 		public int lifeIndex = 2;
 
+		public Shark() {
+			super(Ocean.SHARK);
+		}
+
 		/**
+		 * Reglas de un tiburón que está en (x, y) en la generación generation.
+		 *
 		 * MODIFICACIÓN CONCURRENTE: Verificación de null añadida
 		 *
 		 * Se añade verificación cellAtFish != null antes de acceder a la celda.
 		 * Esto previene NullPointerException cuando otro hilo ya movió/comió el pez.
+		 *
+		 * @return false si el tiburón muere
 		 */
-		@Override
-		protected void internalUpdate(Ocean o, int x, int y, int generation,
-									  int fishCycle, int sharkCycle) {
+		static boolean step(Ocean o, Shark shark, int x, int y, int generation,
+							int sharkCycle, CellPool pool) {
 			Point[] fishNeighbors;
 			Point[] freeNeighbors;
+			boolean hungry = shark.lifeIndex <= 1;
 
 			// Regla 1: Comer peces vecinos
 			fishNeighbors = o.getFishNeighbours(x, y);
-			for (Point fish : fishNeighbors) {
-				// CORRECCIÓN CONCURRENTE: Verificar que la celda todavía contiene un pez
-				// Entre getFishNeighbours() y este punto, otro hilo pudo haber
-				// movido o comido el pez, dejando la celda en null
-				Cell cellAtFish = o.getField(fish.x, fish.y);
-				if (cellAtFish != null && cellAtFish instanceof Fish) {
-					lifeIndex += DFishEnergy;
-					o.setField(fish.x, fish.y, null);
-					o.setField(x, y, null);
-					x = fish.x;
-					y = fish.y;
-					o.setField(x, y, this);
-					break;
-				}
+			Point eaten = eat(o, shark, x, y, fishNeighbors, pool);
+			if (eaten != null) {
+				x = eaten.x;
+				y = eaten.y;
 			}
 
 			// Regla 2: Moverse si no hay peces
 			freeNeighbors = o.getFreeNeighbours(x, y);
 			if (fishNeighbors.length < 1 && freeNeighbors.length > 0) {
-				Point newCell = getRandomly(freeNeighbors);
+				Point newCell = o.getRandomly(freeNeighbors);
 
 				o.setField(x, y, null);
 				x = newCell.x;
 				y = newCell.y;
-				o.setField(x, y, this);
+				o.setField(x, y, shark);
 			}
 
 			// Regla 3: Reproducirse si tiene energía suficiente
 			freeNeighbors = o.getFreeNeighbours(x, y);
 			if (freeNeighbors.length > 0 && generation%sharkCycle == 0) {
-				Point newCell = getRandomly(freeNeighbors);
+				Point newCell = o.getRandomly(freeNeighbors);
 
-				o.setField(newCell.x, newCell.y, new Shark()).time =
-						super.time + 1;
+				o.setField(newCell.x, newCell.y, pool.newShark(shark.getGeneration()));
 
-				lifeIndex--;
+				shark.lifeIndex--;
 			}
 
 			// Regla 4: Morir si no tiene energía
 			if (fishNeighbors.length < 1)
-				lifeIndex--;
-			if (lifeIndex < 1) {
+				shark.lifeIndex--;
+			if (shark.lifeIndex < 1) {
 				o.setField(x, y, null);
+				pool.release(shark);
+				return false;
+			} else if (hungry != (shark.lifeIndex <= 1)) {
+				// Cambia de color sin moverse: redibujar su casilla
+				o.touchField(x, y);
+			}
+			return true;
+		}
+
+		/**
+		 * Regla 1: se come el primer pez de fishNeighbors que siga en su
+		 * celda y ocupa su lugar. Va aparte para que step() quepa en el
+		 * tamaño máximo de método que el JIT compila en línea.
+		 *
+		 * @return Posición del pez comido (null si no ha comido)
+		 */
+		private static Point eat(Ocean o, Shark shark, int x, int y, Point[] fishNeighbors,
+								 CellPool pool) {
+			for (Point fish : fishNeighbors) {
+				// CORRECCIÓN CONCURRENTE: Verificar que la celda todavía contiene un pez
+				// Entre getFishNeighbours() y este punto, otro hilo pudo haber
+				// movido o comido el pez, dejando la celda en null
+				Cell cellAtFish = o.getField(fish.x, fish.y);
+				if (cellAtFish != null && cellAtFish.species == Ocean.FISH) {
+					shark.lifeIndex += DFishEnergy;
+					o.setField(fish.x, fish.y, null);
+					pool.release(cellAtFish);
+					o.setField(x, y, null);
+					o.setField(fish.x, fish.y, shark);
+					return fish;
+				}
 			}
+			return null;
+		}
+
+		@Override
+		void reset(int generation) {
+			super.reset(generation);
+			lifeIndex = 2;
 		}
 
 		@Override
@@ -342,8 +729,21 @@ public class Ocean {
 
 	}
 
-	public static <T> T getRandomly(T[] arr) {
-		int index = (int) Math.round(Math.random()*Math.random()*2*arr.length)%arr.length;
+	/**
+	 * @return Código de especie de una celda (EMPTY, FISH o SHARK)
+	 */
+	public static byte typeOf(Cell c) {
+		if (c == null)
+			return EMPTY;
+		return c.species;
+	}
+
+	/**
+	 * Elige un elemento al azar usando el generador del océano.
+	 * Mantiene la misma distribución que la versión original con Math.random().
+	 */
+	public <T> T getRandomly(T[] arr) {
+		int index = (int) Math.round(random.nextDouble()*random.nextDouble()*2*arr.length)%arr.length;
 		return arr[index];
 	}
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanCheckpoint.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Fish;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Guarda y restaura el estado completo de una simulación Wa-Tor
+ * en un formato binario compacto.
+ *
+ * Formato (big-endian):
+ *   Cabecera:  MAGIC, VERSION, ancho, alto, generación, ciclo de peces,
+ *              ciclo de tiburones (int) y estado del generador aleatorio (long)
+ *   Especies:  2 bits por celda (EMPTY, FISH, SHARK), 4 celdas por byte,
+ *              en orden de filas
+ *   Criaturas: por cada celda ocupada, en el mismo orden:
+ *              varint edad, varint zigzag (sello de generación - generación)
+ *              y, solo para tiburones, varint zigzag lifeIndex
+ *
+ * El sello de generación casi siempre vale generación o generación+1, por lo
+ * que se guarda como diferencia y ocupa un solo byte.
+ *
+ * Se escribe con un FileChannel y se lee mapeando el fichero en memoria
+ * (BinaryIO.Input), sin cargar el fichero en el heap.
+ *
+ * Se debe llamar entre dos pasos de simulación (nunca durante step()).
+ */
+public final class OceanCheckpoint {
+
+    static final int MAGIC = 0x57544F52; // "WTOR"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 7 * 4 + 8;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private OceanCheckpoint() { }
+
+    /**
+     * Escribe el estado del modelo en el fichero indicado.
+     */
+    public static void write(SharkFishModel model, Path file) throws IOException {
+        Ocean ocean = model.getOcean();
+        int w = ocean.getWidth(), h = ocean.getHeight();
+        int generation = model.getGeneration();
+
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             BinaryIO.Output out = new BinaryIO.Output(ch, BUFFER_SIZE)) {
+
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            out.putInt(w);
+            out.putInt(h);
+            out.putInt(generation);
+            out.putInt(model.getFishCycle());
+            out.putInt(model.getSharkCycle());
+            out.putLong(ocean.getRandom().getState());
+
+            // Sección de especies: 4 celdas por byte
+            int packed = 0, n = 0;
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    packed |= Ocean.typeOf(ocean.getField(x, y)) << (2 * n);
+                    if (++n == 4) {
+                        out.putByte(packed);
+                        packed = n = 0;
+                    }
+                }
+            }
+            if (n > 0)
+                out.putByte(packed);
+
+            // Sección de criaturas
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    Cell c = ocean.getField(x, y);
+                    if (c == null)
+                        continue;
+
+                    out.putVarInt(c.getAge());
+                    out.putVarInt(BinaryIO.zigzag(c.getGeneration() - generation));
+                    if (c instanceof Shark)
+                        out.putVarInt(BinaryIO.zigzag(((Shark) c).lifeIndex));
+                }
+            }
+        }
+    }
+
+    /**
+     * Crea un modelo nuevo con el estado guardado en el fichero.
+     *
+     * @param numThreads Hilos worker del modelo restaurado
+     */
+    public static SharkFishModel restore(Path file, int numThreads) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            BinaryIO.Input header = new BinaryIO.Input(ch, 0);
+
+            if (header.getInt() != MAGIC)
+                throw new IOException("No es un checkpoint de Wa-Tor: " + file);
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException("Versión de checkpoint no soportada: " + version);
+
+            int w = header.getInt(), h = header.getInt();
+            int generation = header.getInt();
+            int fishCycle = header.getInt(), sharkCycle = header.getInt();
+            long rngState = header.getLong();
+
+            long cells = (long) w * h;
+            BinaryIO.Input species = header;
+            // Se abre con la primera criatura: un océano vacío no tiene sección
+            BinaryIO.Input creatures = null;
+
+            SharkFishModel model = new SharkFishModel(w, h, numThreads);
+            Ocean ocean = model.getOcean();
+
+            int packed = 0, n = 4;
+            for (int y = 0; y < h; y++) {
+                for (int x = 0; x < w; x++) {
+                    if (n == 4) {
+                        packed = species.getByte();
+                        n = 0;
+                    }
+                    int type = (packed >>> (2 * n++)) & 3;
+                    if (type == Ocean.EMPTY)
+                        continue;
+
+                    if (creatures == null)
+                        creatures = new BinaryIO.Input(ch, HEADER_BYTES + (cells + 3) / 4);
+                    Cell c = type == Ocean.SHARK ? new Shark() : new Fish();
+                    c.setAge(creatures.getVarInt());
+                    c.setGeneration(generation + BinaryIO.unzigzag(creatures.getVarInt()));
+                    if (c instanceof Shark)
+                        ((Shark) c).lifeIndex = BinaryIO.unzigzag(creatures.getVarInt());
+
+                    ocean.setField(x, y, c);
+                }
+            }
+
+            ocean.getRandom().setState(rngState);
+            model.restoreState(generation, fishCycle, sharkCycle);
+            return model;
+        }
+    }
+}
@@ -0,0 +1,359 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanChunk.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Fish;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Franja de filas [firstRow, firstRow+rows) de un océano repartido, con
+ * GHOST filas fantasma por encima y por debajo (copias de las filas de las
+ * franjas vecinas).
+ *
+ * La franja se guarda en un Ocean local de rows + 2*GHOST filas:
+ *   filas locales [0, GHOST)                  fantasma superior
+ *   filas locales [GHOST, GHOST+rows)         filas propias
+ *   filas locales [GHOST+rows, rows+2*GHOST)  fantasma inferior
+ *
+ * Cada generación se simula en dos fases, primero la mitad superior de
+ * cada franja y después la inferior. Al actualizar una fila, una celda
+ * puede moverse (o comerse un pez) a la fila vecina y reproducirse en la
+ * siguiente, así que una fase lee y escribe hasta dos filas más allá de su
+ * mitad. Con al menos MIN_HALF_ROWS filas por mitad, las filas que toca una
+ * franja en una fase no se solapan con las que toca su vecina, y las filas
+ * fantasma se pueden devolver modificadas a su dueño sin conflictos: así
+ * viajan los emigrantes de una franja a otra.
+ *
+ * Las filas propias pueden estar en el propio Ocean local (un proceso de
+ * DistributedNode) o ser una vista de las filas de un Ocean compartido
+ * (ChunkWorker): en ese caso solo las filas fantasma son privadas.
+ *
+ * Las coordenadas de los métodos son filas locales salvo que se indique.
+ */
+public class OceanChunk {
+
+    // Filas fantasma a cada lado
+    public static final int GHOST = 2;
+
+    // Mínimo de filas de cada mitad para que las fases no se solapen
+    public static final int MIN_HALF_ROWS = 2 * GHOST;
+
+    private final Ocean ocean;
+    private final int width, firstRow, rows, upperRows;
+
+    /**
+     * @param width Ancho del océano completo
+     * @param firstRow Primera fila de la franja en el océano completo
+     * @param rows Filas propias (al menos 2*MIN_HALF_ROWS)
+     */
+    public OceanChunk(int width, int firstRow, int rows) {
+        if (rows < 2 * MIN_HALF_ROWS)
+            throw new IllegalArgumentException("Una franja necesita al menos "
+                    + 2 * MIN_HALF_ROWS + " filas: " + rows);
+        this.ocean = new Ocean(width, rows + 2 * GHOST);
+        this.width = width;
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.upperRows = rows / 2;
+    }
+
+    /**
+     * Franja cuyas filas propias son las filas [firstRow, firstRow+rows)
+     * del océano compartido (sin copiarlas). Solo las filas fantasma y el
+     * generador aleatorio son privados.
+     */
+    public OceanChunk(Ocean shared, int firstRow, int rows) {
+        if (rows < 2 * MIN_HALF_ROWS)
+            throw new IllegalArgumentException("Una franja necesita al menos "
+                    + 2 * MIN_HALF_ROWS + " filas: " + rows);
+        this.ocean = new Ocean(new BandStorage(shared.getStorage(), firstRow, rows));
+        this.width = shared.getWidth();
+        this.firstRow = firstRow;
+        this.rows = rows;
+        this.upperRows = rows / 2;
+    }
+
+    /**
+     * Reparte height filas en parts franjas lo más iguales posible.
+     *
+     * @return Límites de las franjas (parts+1 valores: franja i = [b[i], b[i+1]))
+     */
+    public static int[] split(int height, int parts) {
+        if (height / parts < 2 * MIN_HALF_ROWS)
+            throw new IllegalArgumentException(height + " filas no bastan para "
+                    + parts + " franjas de " + 2 * MIN_HALF_ROWS + " filas");
+        int[] bounds = new int[parts + 1];
+        for (int i = 0; i <= parts; i++)
+            bounds[i] = (int) ((long) height * i / parts);
+        return bounds;
+    }
+
+    /**
+     * Océano local (filas propias y fantasma).
+     */
+    public Ocean getOcean() {
+        return ocean;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    // Límites locales de cada mitad y de las filas fantasma
+
+    public int upperFrom() {
+        return GHOST;
+    }
+
+    public int upperTo() {
+        return GHOST + upperRows;
+    }
+
+    public int lowerFrom() {
+        return GHOST + upperRows;
+    }
+
+    public int lowerTo() {
+        return GHOST + rows;
+    }
+
+    public int topGhost() {
+        return 0;
+    }
+
+    public int bottomGhost() {
+        return GHOST + rows;
+    }
+
+    /**
+     * Coloca peces y tiburones al azar en las filas propias: cada celda es
+     * un pez con probabilidad fish, un tiburón con probabilidad sharks o
+     * queda vacía. Cada franja usa su propia semilla, derivada de seed y de
+     * firstRow, para que el resultado no dependa del orden de los nodos.
+     */
+    public void fill(double fish, double sharks, long seed, int generation) {
+        Random r = new Random(seed ^ OceanRandom.mix(firstRow));
+        ocean.getRandom().setSeed(OceanRandom.mix(seed + firstRow));
+        for (int y = upperFrom(); y < lowerTo(); y++) {
+            for (int x = 0; x < width; x++) {
+                double p = r.nextDouble();
+                Cell c = p < fish ? new Fish() : p < fish + sharks ? new Shark() : null;
+                if (c != null)
+                    c.setGeneration(generation);
+                ocean.setField(x, y, c);
+            }
+        }
+    }
+
+    /**
+     * Escribe las filas locales [from, from+count): por celda su especie y,
+     * si está ocupada, generación, edad y (tiburones) lifeIndex.
+     */
+    public void writeRows(DataOutput out, int from, int count) throws IOException {
+        for (int y = from; y < from + count; y++) {
+            for (int x = 0; x < width; x++) {
+                Cell c = ocean.getField(x, y);
+                out.writeByte(Ocean.typeOf(c));
+                if (c == null)
+                    continue;
+                out.writeInt(c.getGeneration());
+                out.writeInt(c.getAge());
+                if (c instanceof Shark)
+                    out.writeInt(((Shark) c).lifeIndex);
+            }
+        }
+    }
+
+    /**
+     * Sustituye las filas locales [from, from+count) por las leídas de in
+     * (en el formato de writeRows).
+     */
+    public void readRows(DataInput in, int from, int count) throws IOException {
+        for (int y = from; y < from + count; y++) {
+            for (int x = 0; x < width; x++) {
+                byte type = in.readByte();
+                Cell c = null;
+                if (type != Ocean.EMPTY) {
+                    c = type == Ocean.SHARK ? new Shark() : new Fish();
+                    c.setGeneration(in.readInt());
+                    c.setAge(in.readInt());
+                    if (type == Ocean.SHARK)
+                        ((Shark) c).lifeIndex = in.readInt();
+                }
+                ocean.setField(x, y, c);
+            }
+        }
+    }
+
+    /**
+     * @return Copia independiente de una celda (null si c es null)
+     */
+    static Cell copyOf(Cell c) {
+        if (c == null)
+            return null;
+        Cell copy;
+        if (c instanceof Shark) {
+            Shark s = new Shark();
+            s.lifeIndex = ((Shark) c).lifeIndex;
+            copy = s;
+        } else {
+            copy = new Fish();
+        }
+        copy.setGeneration(c.getGeneration());
+        copy.setAge(c.getAge());
+        return copy;
+    }
+
+    /**
+     * @return Estadísticas de las filas propias
+     */
+    public StatisticsData statistics() {
+        int fish = 0, sharks = 0, empty = 0;
+        Map<Integer, int[]> ages = new TreeMap<>();
+        int[] occ = new int[ocean.getOccTilesX()];
+        for (int y = upperFrom(); y < lowerTo(); y++) {
+            ocean.copyOccupancyRow(y, occ);
+            for (int x = 0; x < width; x++) {
+                // Un bloque vacío solo suma celdas vacías
+                if ((x & (Ocean.OCC_TILE - 1)) == 0 && occ[x >> Ocean.OCC_SHIFT] == 0) {
+                    empty += Math.min(Ocean.OCC_TILE, width - x);
+                    x += Ocean.OCC_TILE - 1;
+                    continue;
+                }
+                byte type = ocean.typeAt(x, y);
+                if (type == Ocean.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                int species = type == Ocean.FISH ? 0 : 1;
+                if (species == 0)
+                    fish++;
+                else
+                    sharks++;
+                ages.computeIfAbsent(ocean.ageAt(x, y), a -> new int[2])[species]++;
+            }
+        }
+        return new StatisticsData(fish, sharks, empty, ages);
+    }
+
+    /**
+     * Almacenamiento de una franja sobre un océano compartido: las filas
+     * propias se leen y escriben directamente en el almacenamiento
+     * compartido y las fantasma en uno privado.
+     *
+     * Varias franjas pueden usar a la vez el mismo almacenamiento porque
+     * cada una solo toca sus filas.
+     */
+    static class BandStorage implements OceanStorage {
+        private final OceanStorage shared;
+        private final HeapOceanStorage ghosts;
+        private final int width, firstRow, rows;
+
+        BandStorage(OceanStorage shared, int firstRow, int rows) {
+            this.shared = shared;
+            this.width = shared.getWidth();
+            this.firstRow = firstRow;
+            this.rows = rows;
+            this.ghosts = new HeapOceanStorage(width, 2 * GHOST);
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return rows + 2 * GHOST;
+        }
+
+        // Fila del almacenamiento compartido, o -1 si y es una fila fantasma
+        private int sharedRow(int y) {
+            return y >= GHOST && y < GHOST + rows ? firstRow + y - GHOST : -1;
+        }
+
+        // Fila del almacenamiento de filas fantasma
+        private int ghostRow(int y) {
+            return y < GHOST ? y : y - rows;
+        }
+
+        @Override
+        public Cell get(int x, int y) {
+            int r = sharedRow(y);
+            return r >= 0 ? shared.get(x, r) : ghosts.get(x, ghostRow(y));
+        }
+
+        @Override
+        public void set(int x, int y, Cell value) {
+            int r = sharedRow(y);
+            if (r >= 0)
+                shared.set(x, r, value);
+            else
+                ghosts.set(x, ghostRow(y), value);
+        }
+
+        @Override
+        public void commit(int x, int y, Cell value) {
+            int r = sharedRow(y);
+            if (r >= 0)
+                shared.commit(x, r, value);
+        }
+
+        @Override
+        public byte typeAt(int x, int y) {
+            int r = sharedRow(y);
+            return r >= 0 ? shared.typeAt(x, r) : ghosts.typeAt(x, ghostRow(y));
+        }
+
+        @Override
+        public byte displayTypeAt(int x, int y) {
+            int r = sharedRow(y);
+            return r >= 0 ? shared.displayTypeAt(x, r) : ghosts.displayTypeAt(x, ghostRow(y));
+        }
+
+        @Override
+        public int ageAt(int x, int y) {
+            int r = sharedRow(y);
+            return r >= 0 ? shared.ageAt(x, r) : ghosts.ageAt(x, ghostRow(y));
+        }
+
+        @Override
+        public void copyRowTypes(int y, byte[] dst) {
+            int r = sharedRow(y);
+            if (r >= 0)
+                shared.copyRowTypes(r, dst);
+            else
+                ghosts.copyRowTypes(ghostRow(y), dst);
+        }
+
+        @Override
+        public void flush() {
+            // El almacenamiento compartido lo gestiona su propio Ocean
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanFiller.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import simulation.fishandsharks.Ocean.Cell;
+import simulation.fishandsharks.Ocean.Fish;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Inicializa un océano completo con un número exacto de peces y tiburones
+ * en celdas distintas, escogidas uniformemente al azar.
+ *
+ * El océano se divide en bloques de BLOCK_ROWS filas:
+ * 1. Un solo generador reparte los totales entre los bloques, bloque a
+ *    bloque, con una hipergeométrica (los peces de un bloque son los que
+ *    salen al extraer sus celdas sin reemplazo de las que quedan; los
+ *    tiburones, igual entre las celdas que no son peces). Con muchas
+ *    extracciones se usa la aproximación normal; los totales son exactos
+ *    en cualquier caso porque el último bloque se queda con lo que falta.
+ * 2. Cada bloque escoge sus celdas con muestreo secuencial (algoritmo S de
+ *    Knuth, equivalente a un Fisher–Yates parcial sin el array de índices):
+ *    cada celda es un pez con probabilidad peces restantes / celdas
+ *    restantes, y lo mismo con los tiburones. Los bloques se rellenan en
+ *    paralelo (ParallelBands) y escriben directamente en el almacenamiento.
+ *    Con el océano en el heap, las criaturas que se sustituyen pasan al
+ *    CellPool de la banda y las nuevas salen de él, así que rellenar de
+ *    nuevo un océano poblado casi no crea objetos.
+ *
+ * Cada bloque usa su propia semilla, derivada de seed y de su primera
+ * fila, así que el resultado solo depende de la semilla y del tamaño del
+ * océano, no del número de hilos.
+ */
+public final class OceanFiller {
+
+    // Filas por bloque (múltiplo de Ocean.OCC_TILE: cada bloque cubre filas
+    // completas de contadores de ocupación)
+    static final int BLOCK_ROWS = 2 * Ocean.OCC_TILE;
+
+    // Por debajo de estas extracciones la hipergeométrica se muestrea exacta
+    private static final long EXACT_DRAWS = 4096;
+
+    private OceanFiller() {
+    }
+
+    /**
+     * Sustituye todo el contenido de ocean por exactamente fish peces y
+     * sharks tiburones (el resto de celdas quedan vacías), todos de la
+     * generación generation. Marca todo el océano como modificado y
+     * recalcula sus contadores de ocupación.
+     */
+    public static void fill(Ocean ocean, long fish, long sharks, long seed,
+                            int generation, ParallelBands bands) {
+        int width = ocean.getWidth(), height = ocean.getHeight();
+        long cells = (long) width * height;
+        if (fish < 0 || sharks < 0 || fish + sharks > cells)
+            throw new IllegalArgumentException("No caben " + fish + " peces y "
+                    + sharks + " tiburones en " + cells + " celdas");
+
+        int blocks = (height + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        long[] blockFish = new long[blocks], blockSharks = new long[blocks];
+        split(width, height, fish, sharks, seed, blockFish, blockSharks);
+
+        OceanStorage storage = ocean.getStorage();
+        // Fuera del heap cada get() crea una copia: no vale la pena reutilizarlas
+        boolean reuse = storage instanceof HeapOceanStorage;
+        int occTilesX = ocean.getOccTilesX();
+        int[] occupancy = new int[occTilesX * ocean.getOccTilesY()];
+        bands.forEach(0, height, BLOCK_ROWS, (from, to) -> {
+            CellPool pool = new CellPool();
+            for (int y = from; y < to; y += BLOCK_ROWS) {
+                int b = y / BLOCK_ROWS;
+                fillBlock(storage, width, y, Math.min(to, y + BLOCK_ROWS),
+                        blockFish[b], blockSharks[b], seed, generation, occupancy, occTilesX,
+                        reuse ? pool : null);
+            }
+        });
+
+        synchronized (ocean) {
+            ocean.setOccupancy(occupancy);
+            ocean.touchRegion(0, 0, width, height);
+        }
+    }
+
+    /**
+     * Reparte los totales entre los bloques de filas.
+     */
+    private static void split(int width, int height, long fish, long sharks, long seed,
+                              long[] blockFish, long[] blockSharks) {
+        Random r = new Random(seed);
+        long cells = (long) width * height;
+        for (int b = 0; b < blockFish.length; b++) {
+            long n = (long) width * (Math.min(height, (b + 1) * BLOCK_ROWS) - b * BLOCK_ROWS);
+            long f = hypergeometric(r, cells, fish, n);
+            long s = hypergeometric(r, cells - fish, sharks, n - f);
+            blockFish[b] = f;
+            blockSharks[b] = s;
+            cells -= n;
+            fish -= f;
+            sharks -= s;
+        }
+    }
+
+    /**
+     * @return Éxitos al extraer draws elementos sin reemplazo de total
+     *         elementos de los que successes son éxitos
+     */
+    static long hypergeometric(Random r, long total, long successes, long draws) {
+        long lo = Math.max(0, draws - (total - successes)), hi = Math.min(draws, successes);
+        if (lo == hi)
+            return lo;
+
+        // Es simétrica en successes y draws: se simula la menor
+        long m = Math.min(successes, draws), k = Math.max(successes, draws);
+        if (m <= EXACT_DRAWS) {
+            long count = 0;
+            for (long i = 0; i < m; i++)
+                if (r.nextDouble() * (total - i) < k - count)
+                    count++;
+            return count;
+        }
+
+        double p = (double) successes / total;
+        double mean = draws * p;
+        double var = draws * p * (1 - p) * (total - draws) / (total - 1);
+        long x = Math.round(mean + Math.sqrt(var) * r.nextGaussian());
+        return Math.max(lo, Math.min(hi, x));
+    }
+
+    /**
+     * Rellena las filas [from, to) con exactamente fish peces y sharks
+     * tiburones, y cuenta la ocupación de sus bloques en occupancy.
+     *
+     * @param pool Pool de la banda: recibe las criaturas sustituidas y da
+     *             las nuevas (null para crearlas siempre con new)
+     */
+    private static void fillBlock(OceanStorage storage, int width, int from, int to,
+                                  long fish, long sharks, long seed, int generation,
+                                  int[] occupancy, int occTilesX, CellPool pool) {
+        SplittableRandom r = new SplittableRandom(seed ^ OceanRandom.mix(from));
+        long remaining = (long) width * (to - from);
+        for (int y = from; y < to; y++) {
+            int base = (y >> Ocean.OCC_SHIFT) * occTilesX;
+            for (int x = 0; x < width; x++, remaining--) {
+                if (pool != null) {
+                    // Solo si está guardada aquí: una criatura que ya se ha
+                    // vuelto a colocar en esta banda no se entrega dos veces
+                    Cell old = storage.get(x, y);
+                    if (old != null && old.posX == x && old.posY == y)
+                        pool.reuse(old);
+                }
+
+                Cell c = null;
+                if (fish + sharks > 0) {
+                    long p = r.nextLong(remaining);
+                    if (p < fish) {
+                        c = pool != null ? pool.newFish(generation) : new Fish();
+                        fish--;
+                    } else if (p < fish + sharks) {
+                        c = pool != null ? pool.newShark(generation) : new Shark();
+                        sharks--;
+                    }
+                }
+                if (c != null) {
+                    c.setGeneration(generation);
+                    c.posX = x;
+                    c.posY = y;
+                    occupancy[base + (x >> Ocean.OCC_SHIFT)]++;
+                }
+                storage.set(x, y, c);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanRandom.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador pseudoaleatorio del océano (algoritmo SplitMix64).
+ *
+ * A diferencia de Math.random():
+ * - Se le puede fijar una semilla, de modo que una ejecución secuencial
+ *   con la misma semilla produce exactamente el mismo resultado.
+ * - Su estado completo es un único long, que se puede leer y restaurar.
+ *
+ * El estado es un AtomicLong y cada número se obtiene con un único
+ * getAndAdd(), por lo que varios hilos worker lo pueden usar a la vez
+ * sin bloqueos (no hay bucle CAS como en java.util.Random).
+ */
+public class OceanRandom {
+    // Incremento de SplitMix64 (parte fraccionaria de la razón áurea)
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    // Precisión de un double (53 bits)
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private final AtomicLong state;
+
+    /**
+     * Crea un generador con una semilla arbitraria (basada en el reloj).
+     */
+    public OceanRandom() {
+        this(System.nanoTime() ^ mix(System.currentTimeMillis()));
+    }
+
+    /**
+     * Crea un generador con la semilla indicada.
+     *
+     * @param seed Semilla inicial
+     */
+    public OceanRandom(long seed) {
+        this.state = new AtomicLong(seed);
+    }
+
+    /**
+     * Reinicia el generador con una nueva semilla.
+     */
+    public void setSeed(long seed) {
+        state.set(seed);
+    }
+
+    /**
+     * @return Estado interno actual (para checkpoints)
+     */
+    public long getState() {
+        return state.get();
+    }
+
+    /**
+     * Restaura un estado interno obtenido con getState().
+     */
+    public void setState(long s) {
+        state.set(s);
+    }
+
+    public long nextLong() {
+        return mix(state.getAndAdd(GOLDEN_GAMMA) + GOLDEN_GAMMA);
+    }
+
+    /**
+     * @return double uniforme en [0, 1)
+     */
+    public double nextDouble() {
+        return (nextLong() >>> 11) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @param bound Límite superior (exclusivo), debe ser positivo
+     * @return int uniforme en [0, bound)
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0)
+            throw new IllegalArgumentException("bound debe ser positivo");
+        return (int) ((nextLong() >>> 33) * bound >>> 31);
+    }
+
+    /**
+     * Función de mezcla de SplitMix64. También se usa para derivar semillas
+     * independientes (p. ej. una por ejecución o por bloque de filas).
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
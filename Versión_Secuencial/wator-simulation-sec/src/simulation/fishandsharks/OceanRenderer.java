@@ -0,0 +1,268 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanRenderer.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.awt.Graphics;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.List;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Dibuja un océano (o una ventana de él) a partir de su array de tipos de
+ * celda.
+ *
+ * En lugar de dos fillRect por celda, los colores se escriben en el raster
+ * int[] de una BufferedImage (un píxel por celda) y la imagen se dibuja
+ * escalada con un único drawImage. Después se dibuja una rejilla con una
+ * línea por fila y columna visibles para conservar el aspecto de casillas
+ * separadas. El coste de repintar depende de los píxeles visibles y no del
+ * número de celdas.
+ *
+ * La imagen solo cubre la ventana [originX, originX+ancho) x
+ * [originY, originY+alto) del océano; las coordenadas de celda de los
+ * métodos son siempre las del océano completo.
+ */
+public class OceanRenderer {
+
+    // Color de cada tipo de celda (EMPTY, FISH, SHARK, HUNGRY_SHARK)
+    static final int[] PALETTE = {
+            Cell.OCEAN_LIGHT.getRGB(), Cell.FISH.getRGB(),
+            Cell.SHARK.getRGB(), Cell.SHARK.brighter().getRGB()
+    };
+
+    // Tamaño mínimo de casilla (píxeles) a partir del cual se dibuja la rejilla
+    private static final int MIN_GRID_BOX = 6;
+
+    // Grosor de la separación entre casillas (como el margen de 2 px del dibujo original)
+    private static final int GRID_GAP = 4;
+
+    // Máximo de rectángulos que se intentan unir por parejas en mergeTiles
+    private static final int MAX_MERGE_INPUT = 256;
+
+    private int originX, originY, width, height;
+    private BufferedImage image;
+    private int[] raster;
+
+    /**
+     * Crea un renderer para un océano completo de width x height celdas.
+     */
+    public OceanRenderer(int width, int height) {
+        setWindow(0, 0, width, height);
+    }
+
+    /**
+     * Cambia la ventana del océano que cubre la imagen. La imagen solo se
+     * vuelve a crear si cambia de tamaño; su contenido queda indefinido
+     * hasta el siguiente update().
+     */
+    public void setWindow(int originX, int originY, int width, int height) {
+        this.originX = originX;
+        this.originY = originY;
+        if (image == null || width != this.width || height != this.height) {
+            this.width = width;
+            this.height = height;
+            if (width > 0 && height > 0) {
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            } else {
+                image = null;
+                raster = new int[0];
+            }
+        }
+    }
+
+    /**
+     * Copia los colores de todas las celdas de la ventana al raster.
+     *
+     * @param types Tipos de celda de la ventana (índice = (y-originY)*ancho + (x-originX))
+     */
+    public void update(byte[] types) {
+        for (int i = 0; i < raster.length; i++)
+            raster[i] = PALETTE[types[i]];
+    }
+
+    /**
+     * Copia al raster solo las celdas del rectángulo [fromX, toX) x [fromY, toY),
+     * que debe estar dentro de la ventana.
+     */
+    public void update(byte[] types, int fromX, int fromY, int toX, int toY) {
+        for (int y = fromY; y < toY; y++) {
+            int row = (y - originY) * width - originX;
+            int i = row + fromX, end = row + toX;
+            for (; i < end; i++)
+                raster[i] = PALETTE[types[i]];
+        }
+    }
+
+    /**
+     * Calcula el rectángulo de celdas [fromX, fromY, toX, toY) de la ventana
+     * visible dentro del clip del Graphics.
+     */
+    public int[] visibleCells(Graphics g, int x0, int y0, int box) {
+        Rectangle clip = g.getClipBounds();
+        if (clip == null)
+            return new int[]{originX, originY, originX + width, originY + height};
+        return new int[]{
+                Math.max(originX, (clip.x - x0) / box),
+                Math.max(originY, (clip.y - y0) / box),
+                Math.min(originX + width, Math.max(0, (clip.x + clip.width - x0 + box - 1) / box)),
+                Math.min(originY + height, Math.max(0, (clip.y + clip.height - y0 + box - 1) / box))
+        };
+    }
+
+    /**
+     * Dibuja la ventana del océano, con la esquina superior izquierda del
+     * océano completo en (x0, y0) y box píxeles por celda.
+     */
+    public void paint(Graphics g, int x0, int y0, int box) {
+        if (image == null)
+            return;
+        g.drawImage(image, x0 + originX * box, y0 + originY * box, width * box, height * box, null);
+
+        if (box < MIN_GRID_BOX)
+            return;
+
+        // Rejilla solo sobre la zona visible
+        int[] cells = visibleCells(g, x0, y0, box);
+        int fromX = cells[0], fromY = cells[1], toX = cells[2], toY = cells[3];
+        if (fromX >= toX || fromY >= toY)
+            return;
+
+        g.setColor(Cell.OCEAN_DARK);
+        int half = GRID_GAP / 2;
+        for (int x = fromX; x <= toX; x++)
+            g.fillRect(x0 + x * box - half, y0 + fromY * box, GRID_GAP, (toY - fromY) * box);
+        for (int y = fromY; y <= toY; y++)
+            g.fillRect(x0 + fromX * box, y0 + y * box - half, (toX - fromX) * box, GRID_GAP);
+    }
+
+    /**
+     * Rectángulo en píxeles que ocupan las celdas [fromX, toX) x [fromY, toY),
+     * incluida la mitad de la rejilla que las rodea.
+     */
+    public Rectangle pixelBounds(int fromX, int fromY, int toX, int toY,
+                                 int x0, int y0, int box) {
+        int half = box < MIN_GRID_BOX ? 0 : GRID_GAP / 2;
+        return new Rectangle(x0 + fromX * box - half, y0 + fromY * box - half,
+                (toX - fromX) * box + 2 * half, (toY - fromY) * box + 2 * half);
+    }
+
+    /**
+     * Agrupa las teselas marcadas de un bitmap (índice = ty*tilesX + tx) en
+     * rectángulos: primero tramos horizontales de cada fila y después los
+     * tramos con las mismas columnas en filas consecutivas. Si salen más de
+     * maxRegions rectángulos se unen por parejas, empezando por la que
+     * añade menos teselas sin modificar, hasta quedar maxRegions (con muchas
+     * zonas pequeñas es más caro dibujar cada una por separado). Con más de
+     * MAX_MERGE_INPUT rectángulos se devuelve directamente el que los engloba.
+     *
+     * Solo se tienen en cuenta las teselas [fromTx, toTx) x [fromTy, toTy).
+     *
+     * @return Rectángulos en unidades de tesela
+     */
+    public static List<Rectangle> mergeTiles(long[] bits, int tilesX,
+                                             int fromTx, int fromTy, int toTx, int toTy,
+                                             int maxRegions) {
+        List<Rectangle> regions = new ArrayList<>();
+        List<Rectangle> open = new ArrayList<>();
+        List<Rectangle> next = new ArrayList<>();
+
+        for (int ty = fromTy; ty < toTy; ty++) {
+            next.clear();
+            int tx = fromTx;
+            while (tx < toTx) {
+                if (!isSet(bits, ty * tilesX + tx)) {
+                    tx++;
+                    continue;
+                }
+                int start = tx;
+                while (tx < toTx && isSet(bits, ty * tilesX + tx))
+                    tx++;
+
+                // Alargar el rectángulo de la fila anterior con las mismas columnas
+                Rectangle r = null;
+                for (Rectangle o : open) {
+                    if (o.x == start && o.width == tx - start) {
+                        r = o;
+                        r.height++;
+                        break;
+                    }
+                }
+                if (r == null) {
+                    r = new Rectangle(start, ty, tx - start, 1);
+                    regions.add(r);
+                }
+                next.add(r);
+            }
+            List<Rectangle> t = open;
+            open = next;
+            next = t;
+        }
+
+        if (regions.size() > MAX_MERGE_INPUT) {
+            Rectangle union = regions.get(0);
+            for (Rectangle r : regions)
+                union = union.union(r);
+            regions.clear();
+            regions.add(union);
+        }
+
+        while (regions.size() > maxRegions) {
+            int bi = 0, bj = 1;
+            long best = Long.MAX_VALUE;
+            for (int i = 0; i < regions.size(); i++) {
+                Rectangle a = regions.get(i);
+                for (int j = i + 1; j < regions.size(); j++) {
+                    Rectangle b = regions.get(j);
+                    long waste = area(a.union(b)) - area(a) - area(b);
+                    if (waste < best) {
+                        best = waste;
+                        bi = i;
+                        bj = j;
+                    }
+                }
+            }
+            regions.set(bi, regions.get(bi).union(regions.remove(bj)));
+        }
+        return regions;
+    }
+
+    private static long area(Rectangle r) {
+        return (long) r.width * r.height;
+    }
+
+    private static boolean isSet(long[] bits, int i) {
+        return (bits[i >> 6] & (1L << i)) != 0;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * @return Ancho de la ventana en celdas
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Alto de la ventana en celdas
+     */
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,122 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanSnapshot.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Copia del estado visible de una generación: tipo de cada celda de una
+ * ventana del océano y estadísticas de todo el océano.
+ *
+ * Solo se copia la ventana que se está mostrando (la zona visible del
+ * JScrollPane con un margen), de modo que el coste de la copia y la memoria
+ * no dependen del tamaño del océano.
+ *
+ * Se rellena en el hilo de la simulación y se publica a través de un
+ * TripleBuffer. Una vez publicada no se modifica mientras el consumidor
+ * (el EDT) la tenga, por lo que se puede dibujar sin tomar ningún lock del
+ * océano ni detener a los workers.
+ */
+public class OceanSnapshot {
+
+    private int originX, originY, width, height;
+    private byte[] types = new byte[0];
+
+    private int generation = -1;
+    private int fish, sharks, empty;
+    private Map<Integer, int[]> ageDistribution = Collections.emptyMap();
+
+    /**
+     * Rellena la copia con el estado actual del modelo.
+     * Solo se debe llamar con la simulación detenida entre dos pasos.
+     *
+     * @param window Celdas que se copian (dentro del océano)
+     */
+    void capture(SharkFishModel model, Rectangle window) {
+        originX = window.x;
+        originY = window.y;
+        width = window.width;
+        height = window.height;
+        if (types.length < width * height)
+            types = new byte[width * height];
+        model.getOcean().copyTypes(types, originX, originY, originX + width, originY + height);
+
+        generation = model.getGeneration();
+        fish = model.getFishCount();
+        sharks = model.getSharkCount();
+        empty = model.getEmptyCount();
+
+        // Copia profunda: el modelo reutiliza sus arrays de conteos
+        TreeMap<Integer, int[]> ages = new TreeMap<>();
+        for (Map.Entry<Integer, int[]> e : model.getAgeDistribution().entrySet())
+            ages.put(e.getKey(), e.getValue().clone());
+        ageDistribution = Collections.unmodifiableMap(ages);
+    }
+
+    /**
+     * @return Primera columna de la ventana copiada
+     */
+    public int getOriginX() {
+        return originX;
+    }
+
+    /**
+     * @return Primera fila de la ventana copiada
+     */
+    public int getOriginY() {
+        return originY;
+    }
+
+    /**
+     * @return Ancho de la ventana copiada
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return Alto de la ventana copiada
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * @return Tipos de celda de la ventana (índice = (y-originY)*ancho + (x-originX)).
+     *         Puede ser más largo que la ventana. No se debe modificar.
+     */
+    public byte[] getTypes() {
+        return types;
+    }
+
+    /**
+     * @return Generación capturada, o -1 si todavía no se ha capturado ninguna
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int getFishCount() {
+        return fish;
+    }
+
+    public int getSharkCount() {
+        return sharks;
+    }
+
+    public int getEmptyCount() {
+        return empty;
+    }
+
+    public Map<Integer, int[]> getAgeDistribution() {
+        return ageDistribution;
+    }
+}
@@ -0,0 +1,78 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : OceanStorage.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Almacenamiento de las celdas de un Ocean.
+ *
+ * - HeapOceanStorage: matriz Cell[][] en el heap (la versión original).
+ * - MappedOceanStorage: registros de tamaño fijo en un fichero mapeado en
+ *   memoria, fuera del heap, para océanos que no caben en él.
+ *
+ * Las coordenadas ya vienen normalizadas (0 <= x < ancho, 0 <= y < alto) y
+ * Ocean se encarga de la sincronización: las implementaciones no necesitan
+ * ser thread-safe salvo en las lecturas (get*At, copyRow*) concurrentes.
+ */
+public interface OceanStorage extends Closeable {
+
+    int getWidth();
+
+    int getHeight();
+
+    /**
+     * @return Celda en (x, y) o null si está vacía. Con almacenamiento fuera
+     *         del heap es una copia: los cambios se guardan con set() o commit()
+     */
+    Cell get(int x, int y);
+
+    /**
+     * Coloca una celda (o la vacía con null).
+     */
+    void set(int x, int y, Cell value);
+
+    /**
+     * Guarda el estado final de una celda que ya está en (x, y) al terminar
+     * su actualización, si esa posición sigue ocupada por la misma especie
+     * (no es así si, por ejemplo, otro hilo se ha comido el pez). Con
+     * almacenamiento en el heap no hace nada: la celda es el mismo objeto.
+     */
+    void commit(int x, int y, Cell value);
+
+    /**
+     * @return Código de especie (Ocean.EMPTY, FISH o SHARK)
+     */
+    byte typeAt(int x, int y);
+
+    /**
+     * @return Código de visualización (incluye Ocean.HUNGRY_SHARK)
+     */
+    byte displayTypeAt(int x, int y);
+
+    /**
+     * @return Edad de la celda (0 si está vacía)
+     */
+    int ageAt(int x, int y);
+
+    /**
+     * Copia los códigos de especie de la fila y en dst[0..ancho).
+     */
+    void copyRowTypes(int y, byte[] dst);
+
+    /**
+     * Escribe a disco los cambios pendientes (si el almacenamiento es persistente).
+     */
+    void flush() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
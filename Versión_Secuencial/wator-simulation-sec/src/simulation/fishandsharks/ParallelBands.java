@@ -0,0 +1,117 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : ParallelBands.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Ejecuta un cálculo repartido por bandas de filas en un pool de hilos propio.
+ *
+ * Lo usan los cálculos que se hacen sobre todo el océano entre dos
+ * generaciones (pirámide de densidad, tablas de sumas acumuladas), cuando
+ * los workers de la simulación están parados. Cada banda la procesa un único
+ * hilo, así que las bandas pueden escribir sin sincronización en zonas
+ * disjuntas de un array.
+ */
+public class ParallelBands implements AutoCloseable {
+
+    /**
+     * Cálculo sobre las filas [from, to).
+     */
+    public interface Task {
+        void run(int from, int to);
+    }
+
+    private final int threads;
+    private final ExecutorService pool;
+
+    /**
+     * @param threads Número de hilos (1 = todo en el hilo que llama)
+     * @param name Nombre de los hilos (para depuración)
+     */
+    public ParallelBands(int threads, String name) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads debe ser >= 1");
+        this.threads = threads;
+        this.pool = threads == 1 ? null : Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Reparte las filas [from, to) en bandas y espera a que terminen todas.
+     *
+     * @param align Los límites entre bandas son múltiplos de align (contando
+     *              desde from), para que no se parta un bloque de filas
+     */
+    public void forEach(int from, int to, int align, Task task) {
+        forEachBand(split(from, to, align), task);
+    }
+
+    /**
+     * Calcula los límites de las bandas en que forEach() reparte [from, to).
+     *
+     * @return Límites b[0] = from < b[1] < ... < b[n] = to (banda i: [b[i], b[i+1]))
+     */
+    public int[] split(int from, int to, int align) {
+        int units = (to - from + align - 1) / align;
+        int bands = Math.max(1, Math.min(units, threads));
+        int[] bounds = new int[bands + 1];
+        for (int b = 0; b <= bands; b++)
+            bounds[b] = Math.min(to, from + (int) ((long) units * b / bands) * align);
+        return bounds;
+    }
+
+    /**
+     * Ejecuta task sobre cada banda de bounds (ver split()) y espera a que
+     * terminen todas.
+     */
+    public void forEachBand(int[] bounds, Task task) {
+        int bands = bounds.length - 1;
+        if (bands <= 1) {
+            task.run(bounds[0], bounds[bands]);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>(bands);
+        for (int b = 0; b < bands; b++) {
+            int start = bounds[b], end = bounds[b + 1];
+            tasks.add(() -> {
+                task.run(start, end);
+                return null;
+            });
+        }
+
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Fallo en el cálculo por bandas", e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null)
+            pool.shutdownNow();
+    }
+}
@@ -18,85 +18,204 @@ package simulation.fishandsharks;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
 
 import javax.swing.JComponent;
 
 import simulation.fishandsharks.Ocean.Cell;
 
+/**
+ * Stacked population chart over a PopulationSeries.
+ *
+ * Every column shows the mean share of each species in the generations it
+ * covers, plus a darker line with the min/max envelope of the species
+ * boundaries. The wheel zooms around the cursor, dragging scrolls back in
+ * time and a double click goes back to following the latest generation
+ * at one generation per column.
+ */
 public class PopulationChart extends JComponent {
 
 	private static final long serialVersionUID = 1L;
 
 	private static final int WIDTH = 2;
 	
-	private Bar[] bars;
-	private Color[] colors;
-	
-	private int i;
+	private final PopulationSeries series;
+	private final Color[] colors, envelopeColors;
+
+	// Columns and the envelope of each one (reused by every paint)
+	private final int columns;
+	private final int[] min, max;
+	private final float[] mean;
+
+	// Generations per column and first generation shown (when not following)
+	private double perColumn = 1;
+	private double viewStart;
+	private boolean follow = true;
+
+	// Drag in progress
+	private int dragX;
+	private double dragStart;
 	
 	public PopulationChart(Color[] colors) {
 		
 		this.colors = colors;
+		this.envelopeColors = new Color[colors.length];
+		for (int i = 0; i < colors.length; i++)
+			envelopeColors[i] = colors[i].darker().darker();
 		
 		setPreferredSize(new Dimension(200, 100));
 		setMinimumSize(getPreferredSize());
 		setMaximumSize(getPreferredSize());
 		
-		bars = new Bar[getPreferredSize().width/WIDTH];
-		i = 0;
+		series = new PopulationSeries(colors.length);
+		columns = getPreferredSize().width/WIDTH;
+		min = new int[columns*colors.length];
+		max = new int[columns*colors.length];
+		mean = new float[columns*colors.length];
+
+		MouseAdapter mouse = new MouseAdapter() {
+			@Override
+			public void mouseWheelMoved(MouseWheelEvent e) {
+				zoom(e.getX()/WIDTH, e.getWheelRotation() > 0 ? 2 : .5);
+			}
+
+			@Override
+			public void mousePressed(MouseEvent e) {
+				dragX = e.getX();
+				dragStart = firstShown();
+			}
+
+			@Override
+			public void mouseDragged(MouseEvent e) {
+				follow = false;
+				viewStart = dragStart - (e.getX() - dragX)/(double) WIDTH*perColumn;
+				clampView();
+				repaint();
+			}
+
+			@Override
+			public void mouseClicked(MouseEvent e) {
+				if (e.getClickCount() == 2) {
+					perColumn = 1;
+					follow = true;
+					repaint();
+				}
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		addMouseWheelListener(mouse);
+		setToolTipText("Wheel: zoom, drag: scroll, double click: latest generations");
 	}
-	
-	public synchronized void addData(int...values) {
-		if (values.length != colors.length)
-			throw new IllegalArgumentException();
-		
-		bars[i] = new Bar();
-		bars[i].parts = values;
-		bars[i].total = 0;
-		for (int value : values)
-			bars[i].total += value;
-		
-		
-		i = (i+1)%bars.length;
+
+	/**
+	 * Adds the population of one generation. It may be called from any
+	 * thread (e.g. a SharkFishModel.GenerationListener) and doesn't repaint:
+	 * the caller repaints when it shows a new frame.
+	 */
+	public void addData(long generation, int...values) {
+		series.add(generation, values);
+	}
+
+	/**
+	 * Removes all data (used when jumping around in a replay)
+	 */
+	public void clear() {
+		series.clear();
+		follow = true;
 		repaint();
 	}
 
+	/**
+	 * @return Number of generations that fit in the chart at the current zoom
+	 */
+	public int getCapacity() {
+		return (int) Math.round(columns*perColumn);
+	}
+
+	public PopulationSeries getSeries() {
+		return series;
+	}
+
+	private double firstShown() {
+		return follow ? series.getEnd() - columns*perColumn : viewStart;
+	}
+
+	/**
+	 * Zooms in or out keeping the generation under the given column in place
+	 */
+	private void zoom(int column, double factor) {
+		double first = firstShown();
+		double anchor = first + column*perColumn;
+		double total = Math.max(columns, series.getEnd() - series.getFirstRetained());
+		double next = Math.max(1, Math.min(perColumn*factor, Math.ceil(total/columns)));
+		if (next == perColumn)
+			return;
+
+		boolean atEnd = follow;
+		perColumn = next;
+		viewStart = anchor - column*perColumn;
+		follow = atEnd;
+		clampView();
+		repaint();
+	}
+
+	private void clampView() {
+		double last = series.getEnd() - columns*perColumn;
+		viewStart = Math.max(Math.min(viewStart, last), series.getFirstRetained());
+		if (viewStart >= last)
+			follow = true;
+	}
+
 	@Override
 	protected void paintComponent(Graphics g) {
 		int h = getHeight();
+		int n = colors.length;
 
 		g.setColor(Cell.OCEAN_LIGHT);
 	 	g.fillRect(0, 0, getWidth(), h);
+
+		series.envelope(firstShown(), perColumn, columns, min, max, mean);
 		
-		for (int i = 0; i < bars.length; i++) {
-			if (bars[i] == null)
+		for (int i = 0; i < columns; i++) {
+			if (min[i*n] < 0)
+				continue;
+
+			float total = 0;
+			for (int j = 0; j < n; j++)
+				total += mean[i*n + j];
+			if (total <= 0)
 				continue;
 		
+			// Mean shares, stacked
 			int x0 = 0, h0;
-			for (int j = 0; j < bars[i].parts.length; j++) {
-				h0 = (int) Math.round(bars[i].relative(j)*h);
+			for (int j = 0; j < n; j++) {
+				h0 = Math.round(mean[i*n + j]/total*h);
 				g.setColor(colors[j]);
 				g.fillRect(i*WIDTH, x0, WIDTH, h0);
 				x0 += h0;
 			}
+
+			// Envelope of the boundary below each species (except the last)
+			if (perColumn > 1) {
+				float above = 0;
+				for (int j = 0; j < n - 1; j++) {
+					int y0 = Math.round((above + min[i*n + j])/total*h);
+					int y1 = Math.round((above + max[i*n + j])/total*h);
+					g.setColor(envelopeColors[j]);
+					g.fillRect(i*WIDTH, y0, WIDTH, Math.max(1, y1 - y0));
+					above += mean[i*n + j];
+				}
+			}
 		}
 
-		// Draw scanner line and border
+		// Zoom level and border
 		g.setColor(Color.black);
-		g.drawLine(i*WIDTH, 0, i*WIDTH, h);
+		if (perColumn > 1)
+			g.drawString("x" + Math.round(perColumn), 4, h - 4);
 		g.drawRect(0, 0, getWidth()-1, getHeight()-1);
 	}
 	
-	
-	private class Bar {
-		
-		int total;
-		int[] parts;
-		
-		private float relative(int i) {
-			return ((float) parts[i])/((float) total);
-		}
-		
-	}
-	
 }
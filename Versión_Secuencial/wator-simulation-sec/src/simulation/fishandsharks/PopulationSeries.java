@@ -0,0 +1,242 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : PopulationSeries.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+
+/**
+ * Serie temporal de poblaciones (un valor por especie y generación) de
+ * memoria constante, para dibujar historias de millones de generaciones.
+ *
+ * Los datos se guardan en LEVELS niveles de buffers circulares de arrays
+ * primitivos. En el nivel L cada cubo resume FACTOR^L generaciones
+ * consecutivas con su mínimo, su máximo y su suma (para la media); cada
+ * nivel conserva sus últimos CAPACITY cubos. Al completarse un cubo se
+ * acumula en el cubo abierto del nivel siguiente, así que cada dato nuevo
+ * cuesta en promedio menos de dos actualizaciones. Las generaciones
+ * recientes se conservan una a una y las antiguas solo como envolventes
+ * mínimo/máximo cada vez más gruesas.
+ *
+ * envelope() resume cualquier intervalo en un número fijo de columnas
+ * leyendo, para cada columna, el nivel más fino que aún conserva su
+ * intervalo y cuyos cubos no son más anchos que la columna: el coste no
+ * depende de la longitud de la historia.
+ *
+ * Se escribe desde el hilo de la simulación y se lee desde el EDT.
+ */
+public class PopulationSeries {
+
+    // Cubos de un nivel por cubo del nivel siguiente (potencia de 2)
+    static final int FACTOR_SHIFT = 2, FACTOR = 1 << FACTOR_SHIFT;
+
+    // Cubos que conserva cada nivel
+    static final int CAPACITY = 2048;
+
+    // Niveles: el último abarca CAPACITY * FACTOR^(LEVELS-1) generaciones
+    static final int LEVELS = 12;
+
+    private final int series;
+
+    // Por nivel: [cubo % CAPACITY][serie], aplanado como cubo*series + serie
+    private final int[][] min, max;
+    private final long[][] sum;
+
+    // Cubos completos del nivel anterior acumulados en el cubo que se está
+    // llenando en cada nivel (índice = serie; el nivel 0 no tiene)
+    private final int[][] openMin, openMax;
+    private final long[][] openSum;
+
+    // Generación del primer dato y número de datos desde entonces
+    private long start;
+    private long count;
+
+    /**
+     * @param series Número de valores por generación
+     */
+    public PopulationSeries(int series) {
+        this.series = series;
+        min = new int[LEVELS][CAPACITY * series];
+        max = new int[LEVELS][CAPACITY * series];
+        sum = new long[LEVELS][CAPACITY * series];
+        openMin = new int[LEVELS][series];
+        openMax = new int[LEVELS][series];
+        openSum = new long[LEVELS][series];
+    }
+
+    public int getSeries() {
+        return series;
+    }
+
+    /**
+     * Añade los valores de una generación. Si no es la siguiente a la
+     * última añadida (la simulación se ha reiniciado o se ha saltado a otra
+     * generación de una grabación), la serie empieza de nuevo en ella.
+     * No guarda ninguna referencia a values.
+     */
+    public synchronized void add(long generation, int... values) {
+        if (values.length != series)
+            throw new IllegalArgumentException();
+        if (count == 0 || generation != start + count)
+            reset(generation);
+
+        // Nivel 0: un cubo por dato
+        int base = (int) (count % CAPACITY) * series;
+        for (int s = 0; s < series; s++) {
+            min[0][base + s] = max[0][base + s] = values[s];
+            sum[0][base + s] = values[s];
+        }
+
+        // Cada cubo que se completa se acumula en el nivel siguiente
+        long done = count + 1;
+        for (int level = 1; level < LEVELS; level++) {
+            int below = (level - 1) * FACTOR_SHIFT;
+            long bucket = (done >> below) - 1;
+            int from = (int) (bucket % CAPACITY) * series;
+            boolean opening = (bucket & (FACTOR - 1)) == 0;
+            int[] oMin = openMin[level], oMax = openMax[level];
+            long[] oSum = openSum[level];
+            for (int s = 0; s < series; s++) {
+                int lo = min[level - 1][from + s], hi = max[level - 1][from + s];
+                long total = sum[level - 1][from + s];
+                oMin[s] = opening ? lo : Math.min(oMin[s], lo);
+                oMax[s] = opening ? hi : Math.max(oMax[s], hi);
+                oSum[s] = opening ? total : oSum[s] + total;
+            }
+
+            int shift = level * FACTOR_SHIFT;
+            if ((done & ((1L << shift) - 1)) != 0)
+                break;
+            base = (int) (((done >> shift) - 1) % CAPACITY) * series;
+            System.arraycopy(oMin, 0, min[level], base, series);
+            System.arraycopy(oMax, 0, max[level], base, series);
+            System.arraycopy(oSum, 0, sum[level], base, series);
+        }
+        count++;
+    }
+
+    /**
+     * Vacía la serie.
+     */
+    public synchronized void clear() {
+        count = 0;
+    }
+
+    private void reset(long generation) {
+        start = generation;
+        count = 0;
+    }
+
+    /**
+     * @return Generación del primer dato añadido desde el último reinicio
+     */
+    public synchronized long getStart() {
+        return start;
+    }
+
+    /**
+     * @return Generación siguiente a la del último dato (getStart() si no hay datos)
+     */
+    public synchronized long getEnd() {
+        return start + count;
+    }
+
+    /**
+     * @return Primera generación de la que aún queda algún resumen
+     */
+    public synchronized long getFirstRetained() {
+        return start + firstRetained(LEVELS - 1);
+    }
+
+    // Primer dato (relativo a start) que conserva el nivel level
+    private long firstRetained(int level) {
+        int shift = level * FACTOR_SHIFT;
+        long complete = count >> shift;
+        return Math.max(0, complete - CAPACITY) << shift;
+    }
+
+    /**
+     * Resume las generaciones [from, from + columns*perColumn) en columns
+     * columnas. Para cada columna c y serie s deja en out[c*series + s] el
+     * mínimo, el máximo y la media (en los arrays min, max y mean); las
+     * columnas sin datos conservados tienen min = -1.
+     *
+     * El mínimo y el máximo de una columna pueden incluir algunas
+     * generaciones de las columnas vecinas (las de los cubos de sus extremos).
+     *
+     * @param perColumn Generaciones por columna (al menos 1)
+     */
+    public synchronized void envelope(double from, double perColumn, int columns,
+                                      int[] outMin, int[] outMax, float[] outMean) {
+        Arrays.fill(outMin, 0, columns * series, -1);
+        long first = firstRetained(LEVELS - 1);
+        for (int c = 0; c < columns; c++) {
+            long a = (long) Math.floor(from + c * perColumn) - start;
+            long b = Math.max(a + 1, (long) Math.floor(from + (c + 1) * perColumn) - start);
+            a = Math.max(a, first);
+            b = Math.min(b, count);
+            if (a >= b)
+                continue;
+
+            // Nivel más fino con cubos no más anchos que la columna que
+            // todavía conserva el principio del intervalo
+            int level = 0;
+            while (level < LEVELS - 1 && (1L << ((level + 1) * FACTOR_SHIFT)) <= b - a)
+                level++;
+            while (level < LEVELS - 1 && a < firstRetained(level))
+                level++;
+
+            summarize(level, a, b, c * series, outMin, outMax, outMean);
+        }
+    }
+
+    /**
+     * Combina los cubos del nivel level que cubren los datos [a, b). Los
+     * cubos que solo se solapan en parte con [a, b) cuentan en la media en
+     * proporción al solape.
+     */
+    private void summarize(int level, long a, long b, int out,
+                           int[] outMin, int[] outMax, float[] outMean) {
+        int shift = level * FACTOR_SHIFT;
+        long complete = count >> shift;
+        for (int s = 0; s < series; s++) {
+            outMin[out + s] = Integer.MAX_VALUE;
+            outMax[out + s] = Integer.MIN_VALUE;
+            outMean[out + s] = 0;
+        }
+
+        for (long bucket = a >> shift; bucket <= (b - 1) >> shift; bucket++) {
+            long first = bucket << shift;
+            long overlap = Math.min(b, first + (1L << shift)) - Math.max(a, first);
+            if (bucket < complete) {
+                int base = (int) (bucket % CAPACITY) * series;
+                combine(min[level], max[level], sum[level], base,
+                        (double) overlap / (1L << shift), out, outMin, outMax, outMean);
+                continue;
+            }
+
+            // Cubo abierto: los cubos abiertos de este nivel y de los
+            // inferiores cubren los datos [first, count)
+            double weight = (double) overlap / (count - first);
+            for (int k = level; k >= 1; k--)
+                if (((count >> ((k - 1) * FACTOR_SHIFT)) & (FACTOR - 1)) != 0)
+                    combine(openMin[k], openMax[k], openSum[k], 0, weight,
+                            out, outMin, outMax, outMean);
+        }
+        for (int s = 0; s < series; s++)
+            outMean[out + s] /= (float) (b - a);
+    }
+
+    private void combine(int[] bMin, int[] bMax, long[] bSum, int base, double weight,
+                         int out, int[] outMin, int[] outMax, float[] outMean) {
+        for (int s = 0; s < series; s++) {
+            outMin[out + s] = Math.min(outMin[out + s], bMin[base + s]);
+            outMax[out + s] = Math.max(outMax[out + s], bMax[base + s]);
+            outMean[out + s] += (float) (bSum[base + s] * weight);
+        }
+    }
+}
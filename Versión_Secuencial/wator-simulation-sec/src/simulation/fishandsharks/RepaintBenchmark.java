@@ -0,0 +1,171 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : RepaintBenchmark.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+
+import simulation.fishandsharks.Ocean.Fish;
+
+/**
+ * Compara el redibujado incremental (solo las teselas modificadas) con el
+ * redibujado completo del océano.
+ *
+ * 1. Actividad sintética: en cada fotograma se modifican tantas celdas
+ *    como un porcentaje dado del número de teselas, cada una en una tesela
+ *    al azar (puede repetirse).
+ * 2. Simulación real: se ejecutan generaciones y se mide la fracción de
+ *    teselas modificadas por generación.
+ *
+ * En ambos casos el coste incluye actualizar la imagen y dibujar en una
+ * BufferedImage del tamaño del océano en pantalla. El redibujado completo
+ * se obtiene marcando todas las teselas, que equivale al dibujo anterior.
+ *
+ * Uso: RepaintBenchmark [ancho] [alto] [fotogramas]
+ */
+public class RepaintBenchmark {
+
+    private static final int WARMUP = 50;
+
+    private final SharkFishModel model;
+    private final Ocean ocean;
+    private final BufferedImage image;
+
+    private RepaintBenchmark(int width, int height) {
+        model = new SharkFishModel(width, height, 1);
+        model.setVerbose(false);
+        model.setSize(model.getPreferredSize());
+        ocean = model.getOcean();
+        image = new BufferedImage(model.getWidth(), model.getHeight(), BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Publica el estado actual y redibuja lo modificado como lo haría el EDT.
+     *
+     * @param full Redibujar todo el océano
+     * @return Tiempo en nanosegundos
+     */
+    private long repaint(boolean full) {
+        if (full) {
+            for (int y = 0; y < ocean.getHeight(); y += Ocean.TILE)
+                for (int x = 0; x < ocean.getWidth(); x += Ocean.TILE)
+                    ocean.touchField(x, y);
+        }
+        model.publishSnapshot(true);
+
+        long start = System.nanoTime();
+        List<Rectangle> regions = model.takeDirtyRegions();
+        for (Rectangle r : regions) {
+            Graphics2D g = image.createGraphics();
+            g.clip(r);
+            model.paint(g);
+            g.dispose();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * @return Fracción de teselas marcadas ahora mismo en el océano
+     */
+    private double dirtyFraction() {
+        long[] bits = new long[ocean.getDirtyWords()];
+        ocean.drainDirtyTiles(bits);
+        int n = 0;
+        for (long b : bits)
+            n += Long.bitCount(b);
+        // Volver a marcarlas para que las recoja publishSnapshot()
+        int tilesX = ocean.getTilesX();
+        for (int t = 0; t < tilesX * ocean.getTilesY(); t++)
+            if ((bits[t >> 6] & (1L << t)) != 0)
+                ocean.touchField((t % tilesX) << Ocean.TILE_SHIFT, (t / tilesX) << Ocean.TILE_SHIFT);
+        return (double) n / (tilesX * ocean.getTilesY());
+    }
+
+    private void synthetic(double activity, int frames) {
+        Random r = new Random(1);
+        int tilesX = ocean.getTilesX(), tiles = tilesX * ocean.getTilesY();
+        int changed = Math.max(1, (int) Math.round(activity * tiles));
+        long incremental = 0, full = 0;
+
+        for (int i = 0; i < WARMUP + frames; i++) {
+            for (boolean f : new boolean[]{false, true}) {
+                for (int k = 0; k < changed; k++) {
+                    int t = r.nextInt(tiles);
+                    int x = Math.min(ocean.getWidth() - 1, ((t % tilesX) << Ocean.TILE_SHIFT) + r.nextInt(Ocean.TILE));
+                    int y = Math.min(ocean.getHeight() - 1, ((t / tilesX) << Ocean.TILE_SHIFT) + r.nextInt(Ocean.TILE));
+                    ocean.setField(x, y, ocean.getField(x, y) == null ? new Fish() : null);
+                }
+                long ns = repaint(f);
+                if (i >= WARMUP) {
+                    if (f)
+                        full += ns;
+                    else
+                        incremental += ns;
+                }
+            }
+        }
+        print(String.format("%.0f%% teselas", activity * 100), incremental, full, frames);
+    }
+
+    private void simulation(int frames) {
+        model.fillOceanRandomly(.1, .05, 1);
+        model.takeDirtyRegions();
+        long incremental = 0, full = 0;
+        double dirty = 0;
+        int measured = 0;
+
+        for (int i = 0; i < WARMUP + frames && model.isSimulationActive(); i++) {
+            model.step();
+            double d = dirtyFraction();
+            long ns = repaint(i % 2 == 1);
+            if (i >= WARMUP) {
+                dirty += d;
+                measured++;
+                if (i % 2 == 1)
+                    full += ns;
+                else
+                    incremental += ns;
+            }
+        }
+        if (measured < 2) {
+            System.out.println("simulación: extinción antes de terminar el calentamiento");
+            return;
+        }
+        print(String.format("simulación (%.0f%%)", 100 * dirty / measured), incremental, full, measured / 2);
+    }
+
+    private static void print(String label, long incremental, long full, int frames) {
+        System.out.printf("%-22s incremental %8.3f ms   completo %8.3f ms   x%.1f%n", label,
+                incremental * 1e-6 / frames, full * 1e-6 / frames,
+                (double) full / Math.max(1, incremental));
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : width;
+        int frames = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+
+        RepaintBenchmark b = new RepaintBenchmark(width, height);
+        System.out.println("Océano " + width + "x" + height + ", teselas de "
+                + Ocean.TILE + "x" + Ocean.TILE + " (" + b.ocean.getTilesX() * b.ocean.getTilesY() + ")");
+
+        for (double activity : new double[]{.01, .05, .1, .25, .5, 1})
+            b.synthetic(activity, frames);
+        b.model.shutdown();
+
+        // La simulación empieza con un océano limpio
+        b = new RepaintBenchmark(width, height);
+        b.simulation(frames);
+        b.model.shutdown();
+    }
+}
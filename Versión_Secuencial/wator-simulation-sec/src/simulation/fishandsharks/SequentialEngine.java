@@ -0,0 +1,89 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : SequentialEngine.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Motor secuencial: actualiza todas las celdas en orden en el hilo que
+ * llama, saltándose los bloques vacíos (Ocean.copyOccupancyRow). Es la
+ * referencia con la que se comparan los motores concurrentes.
+ */
+public class SequentialEngine implements SimulationEngine {
+
+    private final Ocean ocean;
+
+    // Crías y criaturas muertas de este motor
+    private final CellPool cellPool;
+    private volatile boolean cellPooling = true;
+
+    // false si las estadísticas se calculan fuera (setCountStatistics)
+    private volatile boolean countStatistics = true;
+
+    // Ocupación de los bloques de la fila que se está recorriendo
+    private final int[] occupancy;
+
+    public SequentialEngine(Ocean ocean) {
+        this(ocean, new CellPool());
+    }
+
+    /**
+     * @param cellPool Pool del hilo que llama a step() (el del modelo)
+     */
+    SequentialEngine(Ocean ocean, CellPool cellPool) {
+        this.ocean = ocean;
+        this.cellPool = cellPool;
+        this.occupancy = new int[ocean.getOccTilesX()];
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.SEQUENTIAL;
+    }
+
+    @Override
+    public StatisticsData step(int generation, int fishCycle, int sharkCycle) {
+        updateRows(0, ocean.getHeight(), generation, fishCycle, sharkCycle);
+        return countStatistics ? StatisticsData.count(ocean, 0, ocean.getHeight()) : null;
+    }
+
+    /**
+     * Actualiza en orden las celdas de las filas [from, to) sin contar las
+     * estadísticas (SharkFishModel.stepRows).
+     */
+    void updateRows(int from, int to, int generation, int fishCycle, int sharkCycle) {
+        cellPool.recycle(ocean, cellPooling);
+        for (int y = from; y < to; y++) {
+            ocean.copyOccupancyRow(y, occupancy);
+            for (int x = 0; x < ocean.getWidth(); x++) {
+                if ((x & (Ocean.OCC_TILE - 1)) == 0 && occupancy[x >> Ocean.OCC_SHIFT] == 0) {
+                    x += Ocean.OCC_TILE - 1;
+                    continue;
+                }
+                Cell c = ocean.getField(x, y);
+                if (c != null && c.isPending(generation))
+                    c.update(ocean, x, y, generation, fishCycle, sharkCycle, cellPool);
+            }
+        }
+    }
+
+    @Override
+    public void setCellPooling(boolean enabled) {
+        this.cellPooling = enabled;
+    }
+
+    @Override
+    public void setCountStatistics(boolean enabled) {
+        this.countStatistics = enabled;
+    }
+
+    @Override
+    public void close() {
+        // Sin hilos propios
+    }
+}
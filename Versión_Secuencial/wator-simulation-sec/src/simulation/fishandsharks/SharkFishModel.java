@@ -9,31 +9,39 @@ package simulation.fishandsharks;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.swing.JComponent;
 import javax.swing.JOptionPane;
+import javax.swing.JViewport;
+import javax.swing.event.ChangeListener;
 
 import simulation.fishandsharks.Ocean.Cell;
-import simulation.fishandsharks.Ocean.Fish;
-import simulation.fishandsharks.Ocean.Shark;
 
 /**
  * Modelo principal de la simulación Wa-Tor.
  *
  * MODIFICACIONES PARA VERSIÓN CONCURRENTE:
  * 1. Añadidos campos para gestión de hilos:
- *    - workers: Array de hilos SimulationWorker
- *    - syncManager: Gestor de sincronización
+ *    - engine: Motor que calcula cada generación (WorkerEngine con
+ *      los hilos SimulationWorker y su SynchronizationManager)
  *    - NUM_THREADS: Número de hilos (configurable)
  *
  * 2. Método step() modificado:
- *    - Versión concurrente: stepConcurrent()
- *    - Versión secuencial: stepSequential() (conservada para comparación)
+ *    - Delega en el motor activo (SimulationEngine): secuencial, workers,
+ *      franjas privadas, intenciones o teselas, intercambiable en marcha
  *
  * 3. Control de extinción añadido:
  *    - simulationActive: Flag para detener simulación
@@ -41,8 +49,18 @@ import simulation.fishandsharks.Ocean.Shark;
  *    - ExtinctionListener: Interfaz para notificar extinción a la GUI
  *
  * 4. Gestión del ciclo de vida de hilos:
- *    - initializeThreads(): Crea e inicia los hilos worker
+ *    - WorkerEngine: Crea e inicia los hilos worker
  *    - shutdown(): Finaliza los hilos de forma segura
+ *
+ * 5. Estadísticas asíncronas (setAsyncStatistics):
+ *    - El motor no cuenta: al final del paso un StatisticsPipeline copia
+ *      el océano a un byte por celda (o, fuera del heap o si es muy
+ *      grande, cuenta cada banda de filas en un histograma de edades), y
+ *      termina y entrega las estadísticas mientras se calcula la siguiente
+ *      generación. Las estadísticas, la extinción y el régimen
+ *      estacionario se procesan al entregarse, en orden de generación, en
+ *      el hilo de las estadísticas; getFishCount() y demás devuelven las
+ *      de la última generación entregada.
  */
 public class SharkFishModel extends JComponent implements MouseListener {
 
@@ -52,46 +70,155 @@ public class SharkFishModel extends JComponent implements MouseListener {
 	// Modelo del océano
 	private Ocean ocean;
 
-	// Estado de la simulación
+	// Estado de la simulación. Las estadísticas se protegen con el lock del
+	// modelo: con estadísticas asíncronas las escribe el hilo que las entrega
 	private int generation;
 	private int fishCnt, sharkCnt, emptyCnt;
 	private int fishRebornCycle, sharkRebornCycle;
 
 	// Variables para rendering
 	private int x0, y0;
-	private Class<? extends Cell> newType;
+	private final OceanRenderer renderer;
+
+	// Copias del estado para dibujar sin tocar el océano (productor: hilo
+	// que ejecuta step(); consumidor: EDT) y copia que se está mostrando
+	private final TripleBuffer<OceanSnapshot> snapshots;
+	private OceanSnapshot shownSnapshot;
+
+	// Teselas modificadas en las copias publicadas que el EDT aún no ha
+	// redibujado (productor: publishSnapshot(); consumidor: EDT)
+	private final long[] pendingDirty;
+	private final long[] shownDirty;
+
+	// Máximo de zonas que se redibujan por separado en cada refresco
+	static final int MAX_REPAINT_REGIONS = 16;
+
+	// Ventana (en celdas) que se copia en cada OceanSnapshot: la zona
+	// visible del JScrollPane con un margen. La fija el EDT y la lee quien
+	// publica; publishedWindow es la de la última copia publicada.
+	private volatile Rectangle window;
+	private Rectangle publishedWindow;
+
+	// Océanos de hasta este número de celdas se copian enteros
+	static final int MAX_FULL_WINDOW = 1 << 20;
+
+	// Celdas de margen alrededor de la zona visible
+	static final int WINDOW_MARGIN = 2*Ocean.TILE;
+
+	// Se mantiene durante cada paso y cada publicación: el EDT solo copia
+	// el océano por su cuenta si puede tomarlo sin esperar
+	private final ReentrantLock stepLock = new ReentrantLock();
+
+	private final ChangeListener viewportListener = e -> viewportChanged();
+
+	// Pirámide de densidad para la vista alejada (null si está desactivada)
+	// y pool de hilos de los cálculos sobre todo el océano entre pasos
+	private volatile DensityPyramid density;
+	private ParallelBands analysisBands;
+
+	// Tablas de sumas acumuladas por especie (null si están desactivadas)
+	private volatile SummedAreaTables areaTables;
+
+	// Especie que se coloca al hacer clic (Ocean.FISH, Ocean.SHARK u Ocean.EMPTY)
+	private byte newSpecies = Ocean.EMPTY;
 	private Map<Integer, int[]> ageDistribution;
 
+	// Crías y criaturas muertas del paso secuencial y celdas colocadas;
+	// cada worker tiene el suyo
+	private final CellPool cellPool = new CellPool();
+
+	// false para no reutilizar criaturas muertas (para medir su efecto)
+	private volatile boolean cellPooling = true;
+
 	// ===== CAMPOS NUEVOS PARA CONCURRENCIA =====
 
-	// Array de hilos worker que ejecutan la simulación
-	private SimulationWorker[] workers;
+	// Motor que calcula cada generación (ver SimulationEngine)
+	private SimulationEngine engine;
+
+	// Motor secuencial sobre cellPool: paso con un solo hilo y stepRows()
+	// sin workers
+	private final SequentialEngine rowEngine;
 
-	// Gestor centralizado de sincronización
-	private SynchronizationManager syncManager;
+	// Número de hilos worker por defecto (GUI)
+	static final int NUM_THREADS = 4;
 
-	// Número de hilos worker (configurable)
-	private static final int NUM_THREADS = 4;
+	// Número de hilos worker de este modelo
+	private final int numThreads;
 
-	// Flag para activar/desactivar modo concurrente
-	private boolean concurrentMode = true;
+	// Si es false no se escriben trazas por generación (ejecuciones por lotes)
+	private boolean verbose = true;
+
+	// Recuento en segundo plano (null = lo hace el motor en cada paso)
+	private StatisticsPipeline statisticsPipeline;
+
+	// Observadores de las estadísticas de cada generación
+	private final List<StatisticsListener> statisticsListeners = new CopyOnWriteArrayList<>();
 
 	// ===== CAMPOS PARA CONTROL DE EXTINCIÓN =====
 
-	// Flag que indica si la simulación sigue activa
-	private boolean simulationActive = true;
+	// Flag que indica si la simulación sigue activa (con estadísticas
+	// asíncronas la baja el hilo que las entrega)
+	private volatile boolean simulationActive = true;
 
 	// Listener para notificar a la GUI cuando ocurre extinción
 	private ExtinctionListener extinctionListener;
 
+	// Detector de régimen estacionario (null = solo se para por extinción)
+	private SteadyStateDetector steadyStateDetector;
+	private boolean stopOnSteadyState;
+	private SteadyStateListener steadyStateListener;
+
+	// Motivo por el que se detuvo la simulación
+	private String stopReason = "todas las especies extintas";
+
+	// Observadores que se ejecutan al final de cada generación (p. ej. grabación)
+	private final List<GenerationListener> generationListeners = new CopyOnWriteArrayList<>();
+
 	/**
 	 * Constructor del modelo.
 	 * Inicializa el océano y los hilos worker si está en modo concurrente.
 	 */
 	public SharkFishModel(int width, int height) {
-		ocean = new Ocean(width, height);
+		this(width, height, NUM_THREADS);
+	}
+
+	/**
+	 * Constructor con número de hilos configurable.
+	 * Con un solo hilo se usa directamente la versión secuencial,
+	 * sin crear workers ni sincronización.
+	 *
+	 * @param numThreads Número de hilos worker (>= 1)
+	 */
+	public SharkFishModel(int width, int height, int numThreads) {
+		this(new Ocean(width, height), numThreads);
+	}
+
+	/**
+	 * Constructor sobre un océano ya creado (por ejemplo con almacenamiento
+	 * fuera del heap o con celdas ya colocadas; en ese caso se debe llamar
+	 * después a restoreState() para recalcular las estadísticas).
+	 *
+	 * @param numThreads Número de hilos worker (>= 1)
+	 */
+	public SharkFishModel(Ocean ocean, int numThreads) {
+		if (numThreads < 1)
+			throw new IllegalArgumentException("numThreads debe ser >= 1");
+
+		int width = ocean.getWidth(), height = ocean.getHeight();
+		this.numThreads = numThreads;
+		this.ocean = ocean;
+		this.rowEngine = new SequentialEngine(ocean, cellPool);
+		renderer = new OceanRenderer(0, 0);
+		snapshots = new TripleBuffer<>(OceanSnapshot::new);
+		window = (long) width*height <= MAX_FULL_WINDOW ? new Rectangle(0, 0, width, height)
+				: new Rectangle(0, 0, Math.min(width, 256), Math.min(height, 256));
+		pendingDirty = new long[ocean.getDirtyWords()];
+		shownDirty = new long[ocean.getDirtyWords()];
+		// La imagen empieza vacía: el primer refresco la dibuja entera
+		Arrays.fill(pendingDirty, -1L);
 		generation = fishCnt = sharkCnt = 0;
 		emptyCnt = width*height;
+		// Solo el tamaño: no se reserva ni recorre nada del tamaño del océano
 		setPreferredSize(new Dimension(BOX_SIZE*width, BOX_SIZE*height));
 		setMinimumSize(getPreferredSize());
 		setMaximumSize(getPreferredSize());
@@ -103,68 +230,63 @@ public class SharkFishModel extends JComponent implements MouseListener {
 		ageDistribution = new TreeMap<Integer, int[]>();
 
 		// Inicializar hilos worker si está en modo concurrente
-		if (concurrentMode) {
-			initializeThreads();
-		}
-	}
+		engine = createEngine(defaultKind());
 
-	/**
-	 * Inicializa los hilos worker para simulación concurrente.
-	 *
-	 * Distribución de trabajo:
-	 * - Divide el mapa en NUM_THREADS secciones de filas
-	 * - Cada hilo recibe aproximadamente height/NUM_THREADS filas
-	 * - El último hilo recibe las filas restantes (para manejar divisiones inexactas)
-	 */
-	private void initializeThreads() {
-		System.out.println("=== Inicializando modo CONCURRENTE con " + NUM_THREADS + " hilos ===");
-
-		// Crear gestor de sincronización compartido
-		syncManager = new SynchronizationManager(NUM_THREADS);
-		workers = new SimulationWorker[NUM_THREADS];
-
-		// Calcular filas por hilo
-		int rowsPerThread = ocean.getHeight() / NUM_THREADS;
-
-		// Crear e iniciar cada hilo worker
-		for (int i = 0; i < NUM_THREADS; i++) {
-			int startRow = i * rowsPerThread;
-			// El último hilo toma todas las filas restantes
-			int endRow = (i == NUM_THREADS - 1) ?
-					ocean.getHeight() : (i + 1) * rowsPerThread;
-
-			workers[i] = new SimulationWorker(i, startRow, endRow, this, syncManager);
-			workers[i].start();
-		}
+		publishSnapshot(true);
+		takeDirtyRegions();
 	}
 
-	// Getters
 	public int getGeneration() {
 		return generation;
 	}
 
-	public int getFishCount() {
+	public synchronized int getFishCount() {
 		return fishCnt;
 	}
 
-	public int getSharkCount() {
+	public synchronized int getSharkCount() {
 		return sharkCnt;
 	}
 
-	public int getEmptyCount() {
+	public synchronized int getEmptyCount() {
 		return emptyCnt;
 	}
 
 	public void place(int x, int y, Cell c) {
 		ocean.setField(x, y, c);
+		recountChunks();
 	}
 
-	public Map<Integer, int[]> getAgeDistribution() {
+	/**
+	 * Las franjas privadas tienen sus propios contadores de ocupación: se
+	 * recalculan tras escribir en el océano compartido desde fuera del paso.
+	 */
+	private void recountChunks() {
+		SimulationEngine e = engine;
+		if (e instanceof ChunkEngine)
+			((ChunkEngine) e).recountOccupancy();
+	}
+
+	/**
+	 * Las franjas privadas tienen sus propios generadores: se vuelven a
+	 * sembrar cuando se fija el del océano.
+	 */
+	private void reseedChunks() {
+		SimulationEngine e = engine;
+		if (e instanceof ChunkEngine)
+			((ChunkEngine) e).reseed();
+	}
+
+	public synchronized Map<Integer, int[]> getAgeDistribution() {
 		return ageDistribution;
 	}
 
-	public void notifyPlaceModeChanged(Class<? extends Cell> type) {
-		this.newType = type;
+	/**
+	 * @param species Especie que se coloca al hacer clic (Ocean.FISH,
+	 *                Ocean.SHARK u Ocean.EMPTY para vaciar la celda)
+	 */
+	public void notifyPlaceModeChanged(byte species) {
+		this.newSpecies = species;
 	}
 
 	public void notifyRecycleChanged(int fishCycle, int sharkCycle) {
@@ -172,44 +294,201 @@ public class SharkFishModel extends JComponent implements MouseListener {
 		this.sharkRebornCycle = sharkCycle;
 	}
 
+	/**
+	 * Activa o desactiva las trazas por generación (por consola).
+	 * En ejecuciones por lotes las trazas dominan el tiempo de cada paso.
+	 */
+	public void setVerbose(boolean verbose) {
+		this.verbose = verbose;
+		engine.setVerbose(verbose);
+	}
+
+	/**
+	 * Cambia el motor que calcula cada generación (entre dos pasos). El
+	 * motor anterior se cierra; el nuevo debe trabajar sobre getOcean().
+	 */
+	public void setEngine(SimulationEngine next) {
+		stepLock.lock();
+		try {
+			if (next == engine)
+				return;
+			next.setCellPooling(cellPooling);
+			next.setVerbose(verbose);
+			next.setCountStatistics(statisticsPipeline == null);
+			SimulationEngine previous = engine;
+			engine = next;
+			previous.close();
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	/**
+	 * Cambia a uno de los motores incluidos, con numThreads hilos (el de
+	 * intenciones con arbitraje al azar). No hace nada si ya es el activo.
+	 *
+	 * @throws IllegalArgumentException Si el océano no admite ese motor
+	 *         (p. ej. es demasiado pequeño para una franja privada por hilo)
+	 */
+	public void setEngine(SimulationEngine.Kind kind) {
+		stepLock.lock();
+		try {
+			if (engine.getKind() != kind)
+				setEngine(createEngine(kind));
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	public SimulationEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return Motor que se usa si no se elige otro: franjas privadas, que
+	 *         con varios hilos es correcto y reproducible, o secuencial con
+	 *         un solo hilo o si el océano no tiene filas para una franja por
+	 *         hilo
+	 */
+	public SimulationEngine.Kind defaultKind() {
+		if (numThreads > 1 && ocean.getHeight() / numThreads >= 2 * OceanChunk.MIN_HALF_ROWS)
+			return SimulationEngine.Kind.CHUNKS;
+		return SimulationEngine.Kind.SEQUENTIAL;
+	}
+
+	private SimulationEngine createEngine(SimulationEngine.Kind kind) {
+		switch (kind) {
+		case WORKERS:
+			return new WorkerEngine(this, numThreads, verbose);
+		case CHUNKS:
+			return new ChunkEngine(this, numThreads, verbose);
+		case INTENTS:
+			return new IntentEngine(ocean, IntentEngine.Priority.RANDOM, numThreads);
+		case TILED:
+			return new TiledEngine(ocean, numThreads);
+		default:
+			return rowEngine;
+		}
+	}
+
+	/**
+	 * Usa (o deja de usar) hilos con franja privada (ChunkEngine). Sin
+	 * ellas se usa el motor por teselas sobre el océano compartido, o el
+	 * secuencial con un solo hilo.
+	 */
+	public void setPrivateChunks(boolean enabled) {
+		stepLock.lock();
+		try {
+			if (enabled)
+				setEngine(SimulationEngine.Kind.CHUNKS);
+			else if (isPrivateChunks())
+				setEngine(numThreads > 1 ? SimulationEngine.Kind.TILED : SimulationEngine.Kind.SEQUENTIAL);
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	/**
+	 * Usa (o deja de usar, con null) el paso por intenciones de IntentEngine
+	 * con numThreads hilos.
+	 *
+	 * @param priority Criterio de arbitraje, o null para volver al motor por defecto
+	 */
+	public void setIntentEngine(IntentEngine.Priority priority) {
+		stepLock.lock();
+		try {
+			if (priority == getIntentPriority())
+				return;
+			setEngine(priority == null ? createEngine(defaultKind())
+					: new IntentEngine(ocean, priority, numThreads));
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	public IntentEngine.Priority getIntentPriority() {
+		SimulationEngine e = engine;
+		return e instanceof IntentEngine ? ((IntentEngine) e).getPriority() : null;
+	}
+
+	public boolean isPrivateChunks() {
+		return engine.getKind() == SimulationEngine.Kind.CHUNKS;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
 	/**
 	 * Rellena el océano aleatoriamente con peces y tiburones.
 	 * Reinicia el estado de la simulación.
 	 */
 	public void fillOceanRandomly(double fishes, double sharks) {
-		Class<? extends Cell> b4 = newType;
-		Random r = new Random();
-		int w = ocean.getWidth(), h = ocean.getHeight();
+		fillOceanRandomly(fishes, sharks, new Random().nextLong(), false);
+	}
 
-		newType = Fish.class;
-		for (int i = 0; i < Math.round(w * h * fishes); i++)
-			ocean.setField(r.nextInt(w), r.nextInt(h), getNewCellInstance());
+	/**
+	 * Rellena el océano aleatoriamente a partir de una semilla.
+	 * La misma semilla fija también el generador usado por las reglas,
+	 * de modo que una ejecución secuencial es reproducible.
+	 */
+	public void fillOceanRandomly(double fishes, double sharks, long seed) {
+		fillOceanRandomly(fishes, sharks, seed, true);
+	}
 
-		newType = Shark.class;
-		for (int i = 0; i < Math.round(w * h * sharks); i++)
-			ocean.setField(r.nextInt(w), r.nextInt(h), getNewCellInstance());
+	/**
+	 * Sustituye todo el océano por round(celdas * fishes) peces y
+	 * round(celdas * sharks) tiburones en celdas distintas (OceanFiller):
+	 * la densidad es exactamente la pedida. Si no caben todos, se colocan
+	 * los tiburones que quepan tras los peces.
+	 */
+	private void fillOceanRandomly(double fishes, double sharks, long seed, boolean seedRules) {
+		long cells = (long) ocean.getWidth() * ocean.getHeight();
+		long fishCount = Math.min(cells, Math.max(0, Math.round(cells * fishes)));
+		long sharkCount = Math.min(cells - fishCount, Math.max(0, Math.round(cells * sharks)));
+
+		if (seedRules) {
+			ocean.getRandom().setSeed(OceanRandom.mix(seed));
+			reseedChunks();
+		}
+		// Que no llegue después ninguna estadística del océano anterior
+		flushStatistics();
+		// Las criaturas nuevas se actualizan en la primera generación
+		generation = 0;
+		OceanFiller.fill(ocean, fishCount, sharkCount, seed, generation, getAnalysisBands());
 
-		newType = b4;
+		recountChunks();
 
 		// Reiniciar estado de simulación
 		simulationActive = true;
-		generation = 0;
-
-		repaint();
+		stopReason = "todas las especies extintas";
+		if (steadyStateDetector != null)
+			steadyStateDetector.reset();
+
+		// Estadísticas del estado inicial (para la copia publicada)
+		recomputeStatistics();
+		updateAreaTables();
+		publishSnapshot(true);
+		refreshSnapshot();
 	}
 
 	private Cell getNewCellInstance() {
-		if (newType == null)
-			return null;
-		else
-			try {
-				Cell c = newType.getDeclaredConstructor().newInstance();
-				c.setGeneration(generation);
-				return c;
-			} catch (Exception e1) {
-				System.out.println("Failed to place new cell: " + e1);
-			}
-		return null;
+		return cellPool.newCell(newSpecies, generation);
+	}
+
+	/**
+	 * Activa o desactiva la reutilización de criaturas muertas (CellPool)
+	 * en el paso secuencial y en los workers. Solo sirve para medir su
+	 * efecto: el resultado de la simulación es el mismo.
+	 */
+	public void setCellPooling(boolean enabled) {
+		this.cellPooling = enabled;
+		rowEngine.setCellPooling(enabled);
+		engine.setCellPooling(enabled);
+	}
+
+	public boolean isCellPooling() {
+		return cellPooling;
 	}
 
 	/**
@@ -217,111 +496,158 @@ public class SharkFishModel extends JComponent implements MouseListener {
 	 *
 	 * MODIFICACIÓN PRINCIPAL:
 	 * - Verifica si la simulación está activa (no extinta)
-	 * - Delega a stepConcurrent() o stepSequential() según modo
+	 * - Delega en el motor activo (SimulationEngine)
 	 * - Verifica extinción después de cada paso
 	 */
 	public void step() {
+		stepLock.lock();
+		try {
+			stepLocked();
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	private void stepLocked() {
 		// Verificar si la simulación está activa
 		if (!simulationActive) {
-			System.out.println("Simulación detenida: todas las especies extintas");
+			System.out.println("Simulación detenida: " + stopReason);
 			return;
 		}
 
 		long start = System.nanoTime();
 
-		// Ejecutar versión concurrente o secuencial
-		if (concurrentMode && workers != null) {
-			stepConcurrent();
-		} else {
-			stepSequential();
-		}
+		// Calcular la generación con el motor activo
+		StatisticsData stats = engine.step(generation, fishRebornCycle, sharkRebornCycle);
 
 		generation++;
 
+		// Con estadísticas asíncronas: copia del océano (o recuento por
+		// bandas) para terminarla mientras se calcula la siguiente generación
+		if (statisticsPipeline != null)
+			statisticsPipeline.submit(generation, ocean, getAnalysisBands());
+		else if (stats != null)
+			applyStatistics(stats);
+
 		long elapsed = System.nanoTime() - start;
-		System.out.println("Step " + generation + ": " + (elapsed*1e-9) + " s (" +
-				(concurrentMode ? "CONCURRENTE" : "SECUENCIAL") + ")");
+		if (verbose)
+			System.out.println("Step " + generation + ": " + (elapsed*1e-9) + " s (" +
+					engine.getKind().getLabel().toUpperCase() + ")");
+
+		// Tablas de sumas antes de los observadores, para que puedan consultarlas
+		updateAreaTables();
 
-		// Verificar si ocurrió extinción
-		checkExtinction();
+		// Notificar a los observadores (el océano está quieto hasta el siguiente paso)
+		for (GenerationListener l : generationListeners)
+			l.onGeneration(this);
 
-		repaint();
+		if (statisticsPipeline == null && stats != null)
+			statisticsReady(generation, stats);
 	}
 
 	/**
-	 * Versión CONCURRENTE del paso de simulación.
-	 *
-	 * Flujo:
-	 * 1. Inicia nueva generación (despierta a todos los hilos)
-	 * 2. Espera a que todos calculen estadísticas
-	 * 3. Obtiene estadísticas globales agregadas
+	 * Entrega de un StatisticsPipeline (hilo de las estadísticas).
 	 */
-	private void stepConcurrent() {
-		try {
-			// Iniciar nueva generación (Lock+Condition)
-			syncManager.startNewGeneration();
-
-			// Esperar a que todos calculen estadísticas (CountDownLatch)
-			syncManager.waitForStatistics();
+	private void deliverStatistics(int generation, StatisticsData stats) {
+		applyStatistics(stats);
+		statisticsReady(generation, stats);
+	}
 
-			// Obtener estadísticas globales (synchronized)
-			int[] stats = syncManager.getStatistics();
-			fishCnt = stats[0];
-			sharkCnt = stats[1];
-			emptyCnt = stats[2];
-			ageDistribution = syncManager.getAgeDistribution();
+	/**
+	 * Avisa a los StatisticsListener y comprueba si ocurrió extinción o si
+	 * ya no va a cambiar nada (una sola vez: con estadísticas asíncronas aún
+	 * pueden llegar generaciones calculadas antes de detenerse).
+	 */
+	private void statisticsReady(int generation, StatisticsData stats) {
+		for (StatisticsListener l : statisticsListeners)
+			l.onStatistics(this, generation, stats);
+		if (!simulationActive)
+			return;
+		checkExtinction(generation);
+		checkSteadyState(generation);
+	}
 
-		} catch (InterruptedException e) {
-			System.err.println("Error en simulación concurrente: " + e.getMessage());
-			e.printStackTrace();
-		}
+	private synchronized void applyStatistics(StatisticsData stats) {
+		fishCnt = stats.fish;
+		sharkCnt = stats.sharks;
+		emptyCnt = stats.empty;
+		ageDistribution = stats.ageDistribution;
 	}
 
 	/**
-	 * Versión SECUENCIAL del paso de simulación.
-	 * Conservada para comparación y testing.
+	 * Activa o desactiva el cálculo de las estadísticas en segundo plano
+	 * (StatisticsPipeline): el motor deja de contar y cada paso solo copia el
+	 * océano a un byte por celda (o cuenta histogramas de edades por bandas,
+	 * ver StatisticsPipeline). Los StatisticsListener reciben
+	 * todas las generaciones, en orden, pero con algo de retraso; la
+	 * simulación se detiene por extinción o régimen estacionario un par de
+	 * generaciones más tarde.
 	 */
-	private void stepSequential() {
-		// Actualizar todas las celdas
-		for (int y = 0; y < ocean.getHeight(); y++) {
-			for (int x = 0; x < ocean.getWidth(); x++) {
-				Cell c = ocean.getField(x, y);
-				if (c != null && c.isPending(generation))
-					c.update(ocean, x, y, generation,
-							fishRebornCycle, sharkRebornCycle);
+	public void setAsyncStatistics(boolean async) {
+		stepLock.lock();
+		try {
+			if (async == (statisticsPipeline != null))
+				return;
+			if (async) {
+				statisticsPipeline = new StatisticsPipeline(this::deliverStatistics);
+			} else {
+				statisticsPipeline.close();
+				statisticsPipeline = null;
 			}
+			engine.setCountStatistics(!async);
+		} finally {
+			stepLock.unlock();
 		}
+	}
 
-		// Calcular estadísticas
-		emptyCnt = fishCnt = sharkCnt = 0;
-		ageDistribution.clear();
-
-		for (int y = 0; y < ocean.getHeight(); y++) {
-			for (int x = 0; x < ocean.getWidth(); x++) {
-				Cell c = ocean.getField(x, y);
-
-				if (c == null)
-					emptyCnt++;
-				else if (c instanceof Fish)
-					fishCnt++;
-				else if (c instanceof Shark)
-					sharkCnt++;
+	public boolean isAsyncStatistics() {
+		return statisticsPipeline != null;
+	}
 
-				if (c != null) {
-					int[] spAge = ageDistribution.get(c.getAge());
+	/**
+	 * Espera a que se entreguen las estadísticas pendientes (no hace nada
+	 * si no son asíncronas). No se debe llamar desde un StatisticsListener.
+	 */
+	public void flushStatistics() {
+		StatisticsPipeline p = statisticsPipeline;
+		if (p != null)
+			p.flush();
+	}
 
-					if (spAge == null)
-						spAge = new int[2];
+	/**
+	 * Actualiza solo las filas [from, to) en la generación actual, sin
+	 * avanzarla, sin recalcular las estadísticas del modelo y sin avisar a
+	 * los observadores. La usa DistributedNode, que simula cada mitad de su
+	 * franja por separado (intercambiando filas con sus vecinos entre medias)
+	 * y cierra la generación con endGeneration(). Después de usarla, los
+	 * workers recuperan su reparto de filas en el siguiente step().
+	 */
+	void stepRows(int from, int to) {
+		stepLock.lock();
+		try {
+			if (engine instanceof WorkerEngine)
+				((WorkerEngine) engine).stepRows(from, to);
+			else
+				rowEngine.updateRows(from, to, generation, fishRebornCycle, sharkRebornCycle);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			stepLock.unlock();
+		}
+	}
 
-					if (c instanceof Fish)
-						spAge[0]++;
-					else
-						spAge[1]++;
+	/**
+	 * Pasa a la siguiente generación tras una o varias llamadas a stepRows().
+	 */
+	void endGeneration() {
+		generation++;
+	}
 
-					ageDistribution.put(c.getAge(), spAge);
-				}
-			}
-		}
+	/**
+	 * Recalcula las estadísticas recorriendo todo el océano.
+	 */
+	private void recomputeStatistics() {
+		applyStatistics(StatisticsData.count(ocean, 0, ocean.getHeight()));
 	}
 
 	/**
@@ -332,7 +658,7 @@ public class SharkFishModel extends JComponent implements MouseListener {
 	 * - Solo peces = 0: Avisar, simulación continúa (tiburones morirán)
 	 * - Solo tiburones = 0: Avisar, simulación continúa (peces prosperarán)
 	 */
-	private void checkExtinction() {
+	private void checkExtinction(int generation) {
 		if (fishCnt == 0 && sharkCnt == 0) {
 			simulationActive = false;
 
@@ -350,10 +676,10 @@ public class SharkFishModel extends JComponent implements MouseListener {
 			if (extinctionListener != null) {
 				extinctionListener.onExtinction(generation);
 			}
-		} else if (fishCnt == 0) {
+		} else if (fishCnt == 0 && verbose) {
 			System.out.println("Peces extintos en generación " + generation +
 					" (quedan " + sharkCnt + " tiburones)");
-		} else if (sharkCnt == 0) {
+		} else if (sharkCnt == 0 && verbose) {
 			System.out.println("Tiburones extintos en generación " + generation +
 					" (quedan " + fishCnt + " peces)");
 		}
@@ -366,14 +692,375 @@ public class SharkFishModel extends JComponent implements MouseListener {
 		void onExtinction(int finalGeneration);
 	}
 
+	/**
+	 * Pasa las poblaciones de la generación al detector de régimen
+	 * estacionario. Si detecta uno, avisa al listener y, si así se ha
+	 * pedido, detiene la simulación como una extinción.
+	 */
+	private void checkSteadyState(int generation) {
+		if (steadyStateDetector == null || !simulationActive)
+			return;
+		SteadyStateDetector.Verdict v = steadyStateDetector.add(generation, fishCnt, sharkCnt);
+		if (v == null)
+			return;
+
+		if (verbose)
+			System.out.println("Régimen estacionario en generación " + generation + ": " + v);
+		if (stopOnSteadyState) {
+			simulationActive = false;
+			stopReason = "régimen estacionario (" + v.kind + ")";
+		}
+		if (steadyStateListener != null)
+			steadyStateListener.onSteadyState(this, v);
+	}
+
+	/**
+	 * Interfaz para notificar que la simulación ha llegado a un régimen
+	 * estacionario. Se invoca en el hilo que ejecuta step().
+	 */
+	public interface SteadyStateListener {
+		void onSteadyState(SharkFishModel model, SteadyStateDetector.Verdict verdict);
+	}
+
+	/**
+	 * Activa la detección de régimen estacionario (null la desactiva).
+	 *
+	 * @param stop Si es true, la simulación se detiene al detectarlo
+	 */
+	public void setSteadyStateDetector(SteadyStateDetector detector, boolean stop) {
+		stepLock.lock();
+		try {
+			this.steadyStateDetector = detector;
+			this.stopOnSteadyState = stop;
+			if (detector != null)
+				detector.reset();
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	public SteadyStateDetector getSteadyStateDetector() {
+		return steadyStateDetector;
+	}
+
+	public void setSteadyStateListener(SteadyStateListener listener) {
+		this.steadyStateListener = listener;
+	}
+
+	/**
+	 * Publica una copia del estado actual para la interfaz.
+	 *
+	 * Solo se debe llamar entre dos pasos, desde el hilo que ejecuta step().
+	 * Si no es forzada, la ventana no ha cambiado y la interfaz aún no ha
+	 * recogido la copia anterior, no se hace nada: esa generación no se
+	 * llegaría a dibujar (y sus teselas modificadas se quedan marcadas en el
+	 * océano para la siguiente).
+	 *
+	 * @param force Publicar aunque la copia anterior no se haya recogido
+	 */
+	public void publishSnapshot(boolean force) {
+		stepLock.lock();
+		try {
+			Rectangle w = window;
+			if (force || w != publishedWindow || !snapshots.hasFresh()) {
+				snapshots.back().capture(this, w);
+				snapshots.publish();
+				publishedWindow = w;
+
+				// Las teselas se pasan después de publicar: el EDT nunca redibuja
+				// una tesela con una copia anterior al cambio sin volver a hacerlo
+				synchronized (pendingDirty) {
+					ocean.drainDirtyTiles(pendingDirty);
+				}
+			}
+
+			// La pirámide se recalcula solo si la vista ya recogió la anterior
+			DensityPyramid d = density;
+			if (d != null && (force || !d.hasFresh()))
+				d.compute(generation);
+		} finally {
+			stepLock.unlock();
+		}
+	}
+
+	/**
+	 * Activa o desactiva el cálculo de la pirámide de densidad tras cada
+	 * publicación (solo se necesita mientras se muestra la vista alejada).
+	 * Se puede llamar desde el EDT con la simulación en marcha.
+	 */
+	public void setDensityEnabled(boolean enabled) {
+		if (!enabled) {
+			density = null;
+			return;
+		}
+		if (density != null)
+			return;
+
+		DensityPyramid d = new DensityPyramid(ocean, getAnalysisBands());
+		// Primera pirámide ya si no hay ningún paso en curso; si no, al
+		// acabar la generación actual
+		if (stepLock.tryLock()) {
+			try {
+				d.compute(generation);
+			} finally {
+				stepLock.unlock();
+			}
+		}
+		density = d;
+	}
+
+	/**
+	 * @return Pirámide de densidad, o null si está desactivada
+	 */
+	public DensityPyramid getDensityPyramid() {
+		return density;
+	}
+
+	/**
+	 * Activa o desactiva las tablas de sumas acumuladas de peces y
+	 * tiburones, que se recalculan (en paralelo) al final de cada
+	 * generación. No se debe llamar con un paso en curso.
+	 */
+	public void setAreaTablesEnabled(boolean enabled) {
+		if (!enabled) {
+			areaTables = null;
+		} else if (areaTables == null) {
+			areaTables = new SummedAreaTables(ocean, getAnalysisBands());
+			updateAreaTables();
+		}
+	}
+
+	/**
+	 * Tablas de sumas acumuladas de la generación actual, para contar peces
+	 * y tiburones en cualquier rectángulo del toro en tiempo constante.
+	 * Solo se deben consultar entre dos pasos (p. ej. desde un GenerationListener).
+	 *
+	 * @return Tablas, o null si están desactivadas
+	 */
+	public SummedAreaTables getAreaTables() {
+		return areaTables;
+	}
+
+	private void updateAreaTables() {
+		SummedAreaTables t = areaTables;
+		if (t != null)
+			t.compute(generation);
+	}
+
+	/**
+	 * Pool para los cálculos sobre todo el océano entre dos pasos (se crea
+	 * al usarlo por primera vez, con un hilo por núcleo).
+	 */
+	synchronized ParallelBands getAnalysisBands() {
+		if (analysisBands == null)
+			analysisBands = new ParallelBands(Runtime.getRuntime().availableProcessors(), "OceanAnalysis");
+		return analysisBands;
+	}
+
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		if (getParent() instanceof JViewport)
+			((JViewport) getParent()).addChangeListener(viewportListener);
+	}
+
+	@Override
+	public void removeNotify() {
+		if (getParent() instanceof JViewport)
+			((JViewport) getParent()).removeChangeListener(viewportListener);
+		super.removeNotify();
+	}
+
+	/**
+	 * Se llama en el EDT al desplazar o redimensionar el JScrollPane.
+	 *
+	 * Si la zona visible se sale de la ventana copiada, se fija una nueva
+	 * ventana (zona visible + WINDOW_MARGIN). Si no hay ningún paso en curso
+	 * la copia se hace aquí mismo; si no, la publica el hilo de la
+	 * simulación al acabar la generación actual.
+	 */
+	private void viewportChanged() {
+		updateOrigin();
+		Rectangle visible = getVisibleRect();
+		int fromX = Math.max(0, (visible.x - x0)/BOX_SIZE);
+		int fromY = Math.max(0, (visible.y - y0)/BOX_SIZE);
+		int toX = Math.min(ocean.getWidth(), (visible.x + visible.width - x0 + BOX_SIZE - 1)/BOX_SIZE);
+		int toY = Math.min(ocean.getHeight(), (visible.y + visible.height - y0 + BOX_SIZE - 1)/BOX_SIZE);
+		if (toX <= fromX || toY <= fromY || window.contains(fromX, fromY, toX - fromX, toY - fromY))
+			return;
+
+		fromX = Math.max(0, fromX - WINDOW_MARGIN);
+		fromY = Math.max(0, fromY - WINDOW_MARGIN);
+		toX = Math.min(ocean.getWidth(), toX + WINDOW_MARGIN);
+		toY = Math.min(ocean.getHeight(), toY + WINDOW_MARGIN);
+		window = new Rectangle(fromX, fromY, toX - fromX, toY - fromY);
+
+		if (stepLock.tryLock()) {
+			try {
+				publishSnapshot(true);
+			} finally {
+				stepLock.unlock();
+			}
+			refreshSnapshot();
+		}
+	}
+
+	/**
+	 * Recoge la copia publicada más reciente, la fija como la que se dibuja
+	 * y repinta. Solo se debe llamar desde el EDT.
+	 *
+	 * @return Copia que se muestra a partir de ahora
+	 */
+	public OceanSnapshot refreshSnapshot() {
+		List<Rectangle> regions = takeDirtyRegions();
+
+		// Cada zona se dibuja por separado con su propio clip (repaint()
+		// las uniría en un único rectángulo)
+		if (isShowing()) {
+			for (Rectangle r : regions)
+				paintImmediately(r);
+		}
+		return shownSnapshot;
+	}
+
+	/**
+	 * Recoge la copia más reciente, actualiza la imagen solo en las teselas
+	 * modificadas y devuelve las zonas (en píxeles) que hay que redibujar.
+	 */
+	List<Rectangle> takeDirtyRegions() {
+		// Primero las teselas y luego la copia (ver publishSnapshot)
+		synchronized (pendingDirty) {
+			System.arraycopy(pendingDirty, 0, shownDirty, 0, shownDirty.length);
+			Arrays.fill(pendingDirty, 0);
+		}
+		OceanSnapshot s = shownSnapshot = snapshots.latest();
+		updateOrigin();
+
+		int wx = s.getOriginX(), wy = s.getOriginY();
+		int wx2 = wx + s.getWidth(), wy2 = wy + s.getHeight();
+		if (wx != renderer.getOriginX() || wy != renderer.getOriginY()
+				|| s.getWidth() != renderer.getWidth() || s.getHeight() != renderer.getHeight()) {
+			// Otra ventana: se redibuja entera
+			renderer.setWindow(wx, wy, s.getWidth(), s.getHeight());
+			renderer.update(s.getTypes());
+			List<Rectangle> all = new ArrayList<>();
+			all.add(renderer.pixelBounds(wx, wy, wx2, wy2, x0, y0, BOX_SIZE));
+			return all;
+		}
+
+		// Misma ventana: solo las teselas modificadas dentro de ella
+		List<Rectangle> regions = OceanRenderer.mergeTiles(shownDirty, ocean.getTilesX(),
+				wx >> Ocean.TILE_SHIFT, wy >> Ocean.TILE_SHIFT,
+				(wx2 + Ocean.TILE - 1) >> Ocean.TILE_SHIFT, (wy2 + Ocean.TILE - 1) >> Ocean.TILE_SHIFT,
+				MAX_REPAINT_REGIONS);
+		for (Rectangle t : regions) {
+			int fromX = Math.max(wx, t.x << Ocean.TILE_SHIFT);
+			int fromY = Math.max(wy, t.y << Ocean.TILE_SHIFT);
+			int toX = Math.min(wx2, (t.x + t.width) << Ocean.TILE_SHIFT);
+			int toY = Math.min(wy2, (t.y + t.height) << Ocean.TILE_SHIFT);
+
+			renderer.update(shownSnapshot.getTypes(), fromX, fromY, toX, toY);
+			t.setBounds(renderer.pixelBounds(fromX, fromY, toX, toY, x0, y0, BOX_SIZE));
+		}
+		return regions;
+	}
+
 	public void setExtinctionListener(ExtinctionListener listener) {
 		this.extinctionListener = listener;
 	}
 
+	/**
+	 * Interfaz para observar el final de cada generación.
+	 *
+	 * Se invoca en el hilo que ejecuta step(), con todos los workers
+	 * detenidos, por lo que el océano y las estadísticas son consistentes
+	 * (salvo con estadísticas asíncronas: entonces son las de la última
+	 * generación entregada, ver StatisticsListener).
+	 * Debe ser rápido: cualquier trabajo costoso se debe delegar a otro hilo.
+	 */
+	public interface GenerationListener {
+		void onGeneration(SharkFishModel model);
+	}
+
+	/**
+	 * Observador de las estadísticas de cada generación. Sin estadísticas
+	 * asíncronas se invoca en el hilo que ejecuta step(), justo después de
+	 * los GenerationListener; con ellas, en el hilo de las estadísticas,
+	 * con las generaciones en orden pero cuando el motor ya puede ir por
+	 * las siguientes (no se debe leer el océano).
+	 */
+	public interface StatisticsListener {
+		void onStatistics(SharkFishModel model, int generation, StatisticsData stats);
+	}
+
+	public void addStatisticsListener(StatisticsListener listener) {
+		statisticsListeners.add(listener);
+	}
+
+	public void removeStatisticsListener(StatisticsListener listener) {
+		statisticsListeners.remove(listener);
+	}
+
+	public void addGenerationListener(GenerationListener listener) {
+		generationListeners.add(listener);
+	}
+
+	public void removeGenerationListener(GenerationListener listener) {
+		generationListeners.remove(listener);
+	}
+
 	public boolean isSimulationActive() {
 		return simulationActive;
 	}
 
+	/**
+	 * Restaura el estado de la simulación tras cargar un checkpoint
+	 * (las celdas ya deben estar colocadas en el océano).
+	 */
+	void restoreState(int generation, int fishCycle, int sharkCycle) {
+		flushStatistics();
+		this.generation = generation;
+		this.fishRebornCycle = fishCycle;
+		this.sharkRebornCycle = sharkCycle;
+		// Las celdas pueden haberse escrito sin pasar por el océano
+		ocean.recountOccupancy();
+		recountChunks();
+		// El generador del océano ya tiene el estado guardado
+		reseedChunks();
+		recomputeStatistics();
+		simulationActive = fishCnt > 0 || sharkCnt > 0;
+		stopReason = "todas las especies extintas";
+		if (steadyStateDetector != null)
+			steadyStateDetector.reset();
+		updateAreaTables();
+		publishSnapshot(true);
+		refreshSnapshot();
+	}
+
+	/**
+	 * Crea un modelo cuyo océano está en un fichero mapeado en memoria
+	 * (MappedOceanStorage), fuera del heap. Si el fichero ya contiene un
+	 * océano de las mismas dimensiones se continúa desde su estado; si
+	 * contiene otra cosa se lanza FileAlreadyExistsException sin tocarlo.
+	 * El estado (generación, ciclos y generador aleatorio) se guarda en el
+	 * fichero al final de cada generación y las celdas se escriben a disco
+	 * en shutdown().
+	 */
+	public static SharkFishModel openMapped(Path file, int width, int height,
+											int numThreads) throws IOException {
+		MappedOceanStorage storage = MappedOceanStorage.open(file, width, height);
+		SharkFishModel model = new SharkFishModel(new Ocean(storage), numThreads);
+		if (storage.hasSavedState()) {
+			model.ocean.getRandom().setState(storage.getSavedRandomState());
+			model.restoreState(storage.getSavedGeneration(),
+					storage.getSavedFishCycle(), storage.getSavedSharkCycle());
+		} else if (storage.isRestored())
+			model.restoreState(0, model.getFishCycle(), model.getSharkCycle());
+		model.addGenerationListener(m -> storage.saveState(m.getGeneration(),
+				m.getFishCycle(), m.getSharkCycle(), m.ocean.getRandom().getState()));
+		return model;
+	}
+
 	// Métodos de acceso para los workers
 	public Ocean getOcean() {
 		return ocean;
@@ -392,19 +1079,30 @@ public class SharkFishModel extends JComponent implements MouseListener {
 	 * Se debe llamar al cerrar la aplicación.
 	 */
 	public void shutdown() {
-		if (workers != null) {
-			System.out.println("Finalizando hilos...");
+		synchronized (this) {
+			if (analysisBands != null)
+				analysisBands.close();
+		}
+		stepLock.lock();
+		try {
+			if (engine instanceof WorkerEngine)
+				System.out.println("Finalizando hilos...");
 			simulationActive = false;
-			for (SimulationWorker worker : workers) {
-				worker.stopWorker();
-			}
-			try {
-				for (SimulationWorker worker : workers) {
-					worker.join(1000);
-				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
+			engine.close();
+			if (statisticsPipeline != null)
+				statisticsPipeline.close();
+		} finally {
+			stepLock.unlock();
+		}
+
+		// Con almacenamiento en fichero: escribir las celdas y cerrarlo
+		try {
+			if (ocean.getStorage() instanceof MappedOceanStorage)
+				((MappedOceanStorage) ocean.getStorage()).saveState(generation,
+						fishRebornCycle, sharkRebornCycle, ocean.getRandom().getState());
+			ocean.close();
+		} catch (IOException e) {
+			System.err.println("Error al cerrar el océano: " + e.getMessage());
 		}
 	}
 
@@ -413,36 +1111,36 @@ public class SharkFishModel extends JComponent implements MouseListener {
 		return ocean.toString();
 	}
 
+	/**
+	 * Dibuja el océano mediante OceanRenderer.
+	 *
+	 * Se dibuja la última copia recogida con refreshSnapshot(), nunca el
+	 * océano directamente: pintar no toma locks del océano ni detiene a los
+	 * workers. La imagen solo cubre la ventana copiada (zona visible del
+	 * JScrollPane con margen), solo se actualiza en las teselas modificadas
+	 * (takeDirtyRegions) y se dibuja con un único drawImage escalado
+	 * limitado al clip. Fuera de la ventana solo se dibuja el fondo.
+	 * Los tiburones hambrientos (lifeIndex <= 1) se distinguen por el color.
+	 */
 	@Override
 	public void paint(Graphics g) {
-		x0 = (getWidth()-ocean.getWidth()*BOX_SIZE)/2;
-		y0 = (getHeight()-ocean.getHeight()*BOX_SIZE)/2;
-		x0 = x0 < 0 ? 0 : x0;
-		y0 = y0 < 0 ? 0 : y0;
+		updateOrigin();
 
 		g.setColor(Cell.OCEAN_DARK);
 		g.fillRect(0, 0, getWidth(), getHeight());
 
-		for (int y = 0; y < ocean.getHeight(); y++) {
-			for (int x = 0; x < ocean.getWidth(); x++) {
-				Cell c = ocean.getField(x, y);
-
-				if (c == null) {
-					g.setColor(Cell.OCEAN_LIGHT);
-					g.fillRect(x0+x*BOX_SIZE+2, y0+y*BOX_SIZE+2,
-							BOX_SIZE-4, BOX_SIZE-4);
-				} else {
-					g.setColor(c.getColor());
-
-					if (c instanceof Shark && ((Shark) c).lifeIndex > 1)
-						g.fillRect(x0+x*BOX_SIZE+1, y0+y*BOX_SIZE+1,
-								BOX_SIZE-2, BOX_SIZE-2);
-					else
-						g.fillRect(x0+x*BOX_SIZE+2, y0+y*BOX_SIZE+2,
-								BOX_SIZE-4, BOX_SIZE-4);
-				}
-			}
-		}
+		// La imagen ya está al día (takeDirtyRegions): solo se dibuja
+		renderer.paint(g, x0, y0, BOX_SIZE);
+	}
+
+	/**
+	 * Calcula la esquina superior izquierda del océano (centrado en el componente).
+	 */
+	private void updateOrigin() {
+		x0 = (getWidth()-ocean.getWidth()*BOX_SIZE)/2;
+		y0 = (getHeight()-ocean.getHeight()*BOX_SIZE)/2;
+		x0 = x0 < 0 ? 0 : x0;
+		y0 = y0 < 0 ? 0 : y0;
 	}
 
 	@Override
@@ -455,7 +1153,9 @@ public class SharkFishModel extends JComponent implements MouseListener {
 			return;
 
 		place(x, y, getNewCellInstance());
-		repaint();
+		updateAreaTables();
+		publishSnapshot(true);
+		refreshSnapshot();
 	}
 
 	@Override
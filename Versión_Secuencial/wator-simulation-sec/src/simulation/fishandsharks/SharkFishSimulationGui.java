@@ -22,10 +22,18 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Hashtable;
 
 import javax.swing.ButtonGroup;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
@@ -41,31 +49,61 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import simulation.fishandsharks.Ocean.Cell;
-import simulation.fishandsharks.Ocean.Fish;
-import simulation.fishandsharks.Ocean.Shark;
 
 public class SharkFishSimulationGui extends JPanel implements ActionListener {
  
 	private static final long serialVersionUID = 1L;
 	
-    private JButton stepButton, newButton, placeRandom;
+    private JButton stepButton, newButton, placeRandom, saveButton, loadButton,
+    		openReplay, closeReplay;
     
-    private JLabel generationCnt, fishCnt, sharkCnt;
+    private JLabel generationCnt, fishCnt, sharkCnt, achievedRate;
 
-    private JSlider slider;
+    private JSlider slider, replaySlider;
     
     private SharkFishModel gol;
     
-    private Timer timer;
+    private Timer displayTimer, replayTimer;
+
+    // Hilo que ejecuta la simulación en modo Run (null si está parada)
+    private SimulationRunner runner;
+
+    // Última generación mostrada en las estadísticas
+    private int shownGeneration = -1;
+
+    private JCheckBox maxSpeed;
+
+    // Create the ocean in a memory-mapped file instead of on the heap
+    private JCheckBox offHeap;
+
+    // Engine that computes each generation (SimulationEngine)
+    private JComboBox<SimulationEngine.Kind> engineChoice;
+
+    // ===== Grabación y reproducción de trayectorias =====
+    private TrajectoryRecorder recorder;
+
+    private TrajectoryReader reader;
+    private int replayGeneration = -1;	// Last generation asked for in the replay
+
+    private TrajectoryView replayView;
+
+    // Instante y generación en que empezó la reproducción automática
+    private long playStartNanos;
+
+    private int playStartGeneration;
  
     public SharkFishSimulationGui() {
         super(new BorderLayout());
         initGui();
     }
     
-    private JSpinner rows, cols, newbornFish, newbornShark;
+    private JSpinner rows, cols, newbornFish, newbornShark, replayFps;
     
-    private JToggleButton autoToggle, placeFish, placeShark, placeNothing;
+    private JToggleButton autoToggle, placeFish, placeShark, placeNothing,
+    		recordToggle, playToggle, densityToggle;
+
+    // Zoomed-out density view of the current model (null when not shown)
+    private DensityView densityView;
     
     private PopulationChart populationDiagram;
     
@@ -103,16 +141,33 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
 		generationCnt = new JLabel("0");
 		fishCnt = new JLabel("0");
 		sharkCnt = new JLabel("0");
+		achievedRate = new JLabel("-");
 		
-		slider = new JSlider(JSlider.HORIZONTAL, 2, 20, 2);
-		slider.setMajorTickSpacing(2);
-		slider.setSnapToTicks(true);
+		// Target generations per second on a logarithmic scale (1 to 10^4)
+		slider = new JSlider(JSlider.HORIZONTAL, 0, SPEED_STEPS_PER_DECADE * SPEED_DECADES,
+				SPEED_STEPS_PER_DECADE * 3 / 10);
+		Hashtable<Integer, JLabel> speedLabels = new Hashtable<>();
+		for (int d = 0; d <= SPEED_DECADES; d++)
+			speedLabels.put(d * SPEED_STEPS_PER_DECADE,
+					new JLabel(d < 3 ? String.valueOf((int) Math.pow(10, d))
+							: (int) Math.pow(10, d - 3) + "k"));
+		slider.setLabelTable(speedLabels);
+		slider.setMajorTickSpacing(SPEED_STEPS_PER_DECADE);
 		slider.setPaintLabels(true);
 		slider.setPaintTicks(true);
-		slider.setValue(2);
+		slider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				updateRunnerRate();
+			}
+		});
+
+		maxSpeed = new JCheckBox("As fast as possible");
+		maxSpeed.addActionListener(e -> updateRunnerRate());
+		updateRunnerRate();
 		
-		rows = new JSpinner(new SpinnerNumberModel(42, 2, 120, 1));
-		cols = new JSpinner(new SpinnerNumberModel(42, 2, 120, 1));
+		rows = new JSpinner(new SpinnerNumberModel(42, 2, MAX_OCEAN_SIDE, 1));
+		cols = new JSpinner(new SpinnerNumberModel(42, 2, MAX_OCEAN_SIDE, 1));
 		
 		newbornFish = new JSpinner(new SpinnerNumberModel(2, 1, 10, 1));
 		newbornFish.addChangeListener(cycleListener);
@@ -121,6 +176,25 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
 
 		newButton = new JButton("Create new field");
 		newButton.addActionListener(this);
+
+		offHeap = new JCheckBox("Off-heap (file)");
+		offHeap.setToolTipText("Keep the cells in a memory-mapped file; "
+				+ "an existing file of the same size is resumed");
+
+		engineChoice = new JComboBox<>(SimulationEngine.Kind.values());
+		engineChoice.setSelectedItem(SimulationEngine.Kind.CHUNKS);
+		engineChoice.setToolTipText("How each generation is computed; "
+				+ "it can be changed while the simulation runs");
+		engineChoice.setActionCommand("engine");
+		engineChoice.addActionListener(this);
+
+		saveButton = new JButton("Save checkpoint");
+		saveButton.setActionCommand("save");
+		saveButton.addActionListener(this);
+
+		loadButton = new JButton("Load checkpoint");
+		loadButton.setActionCommand("load");
+		loadButton.addActionListener(this);
 		
 		placeFish = new JToggleButton("Place fish");
 		placeFish.setActionCommand("placeFish");
@@ -144,11 +218,44 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
 				Cell.SHARK, Cell.OCEAN_DARK});
 		
 		popVar = new AgeDistributionChart(new Color[] {Cell.FISH, Cell.SHARK});
+
+		densityToggle = new JToggleButton("Density map");
+		densityToggle.setActionCommand("density");
+		densityToggle.addActionListener(this);
+
+		recordToggle = new JToggleButton("Record");
+		recordToggle.setActionCommand("record");
+		recordToggle.addActionListener(this);
+
+		openReplay = new JButton("Open recording");
+		openReplay.setActionCommand("openReplay");
+		openReplay.addActionListener(this);
+
+		closeReplay = new JButton("Close");
+		closeReplay.setActionCommand("closeReplay");
+		closeReplay.addActionListener(this);
+
+		playToggle = new JToggleButton("Play");
+		playToggle.setActionCommand("play");
+		playToggle.addActionListener(this);
+
+		replaySlider = new JSlider(JSlider.HORIZONTAL, 0, 0, 0);
+		replaySlider.addChangeListener(new ChangeListener() {
+			@Override
+			public void stateChanged(ChangeEvent e) {
+				if (reader != null)
+					showReplayFrame(replaySlider.getValue());
+			}
+		});
+
+		replayFps = new JSpinner(new SpinnerNumberModel(60, 1, 1000, 10));
 		
 		
 		// Set initial values
 		setEnabled(false, stepButton, autoToggle, placeFish, placeShark, 
-				placeNothing, placeRandom, slider, newbornFish, newbornShark);
+				placeNothing, placeRandom, slider, maxSpeed, newbornFish, newbornShark,
+				saveButton, recordToggle, densityToggle, engineChoice, replaySlider, replayFps,
+				playToggle, closeReplay);
 		
 		// Lay-out components
         setLayout(new BorderLayout(4, 4));
@@ -163,6 +270,8 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
         	.addSeperator("Creation")
         	.addMultiField(rows, new JLabel("x", SwingConstants.CENTER), cols)
     		.addLastField(newButton)
+    		.addLastField(offHeap)
+    		.addMultiField(saveButton, loadButton)
         	.addSeperator("Parameters")
         	.addMultiField(placeFish, placeShark)
         	.addLastField(placeNothing)
@@ -173,7 +282,17 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
         	.addLastField(newbornShark)
         	.addSeperator("Simulation")
         	.addLastField(slider)
+        	.addLastField(maxSpeed)
+        	.addLabel("Engine:")
+        	.addLastField(engineChoice)
         	.addMultiField(autoToggle, stepButton)
+        	.addMultiField(recordToggle, densityToggle)
+        	.addSeperator("Replay")
+        	.addLastField(openReplay)
+        	.addLastField(replaySlider)
+        	.addLabel("Frames / s:")
+        	.addLastField(replayFps)
+        	.addMultiField(playToggle, closeReplay)
         	.addSeperator("Statistics")
         	.addLabel("Year / G:")
         	.addLastField(generationCnt)
@@ -181,6 +300,8 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
         	.addLastField(fishCnt)
         	.addLabel("# of sharks:")
         	.addLastField(sharkCnt)
+        	.addLabel("G / s:")
+        	.addLastField(achievedRate)
         	.addLastField(populationDiagram)
         	.addLastField(popVar), BorderLayout.EAST);
     }
@@ -196,98 +317,204 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
     	
     	if (cmd.startsWith("place")) {
     		if (cmd.startsWith("placeFish"))
-    			gol.notifyPlaceModeChanged(Fish.class);
+    			gol.notifyPlaceModeChanged(Ocean.FISH);
     		else if (cmd.startsWith("placeShark"))
-    			gol.notifyPlaceModeChanged(Shark.class);
+    			gol.notifyPlaceModeChanged(Ocean.SHARK);
     		else
-    			gol.notifyPlaceModeChanged(null);
+    			gol.notifyPlaceModeChanged(Ocean.EMPTY);
     	}
 
 		if (evt.getSource() == newButton) {
 			// Create a new model/ocean
-			gol = new SharkFishModel((int) rows.getValue(),
-					(int) cols.getValue());
-
-			// ===== NUEVO: Añadir listener de extinción =====
-			gol.setExtinctionListener(new SharkFishModel.ExtinctionListener() {
-				@Override
-				public void onExtinction(int finalGeneration) {
-					// Detener automáticamente si está en modo Run
-					if (autoToggle.isSelected()) {
-						javax.swing.SwingUtilities.invokeLater(() -> {
-							autoToggle.doClick(); // Detener automáticamente
-						});
+			if (!offHeap.isSelected()) {
+				installModel(new SharkFishModel((int) rows.getValue(),
+						(int) cols.getValue()));
+			} else {
+				JFileChooser chooser = new JFileChooser();
+				if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+					// The file may be the one of the current model: close it first
+					releaseModel();
+					Path file = chooser.getSelectedFile().toPath();
+					SharkFishModel model = null;
+					try {
+						try {
+							model = SharkFishModel.openMapped(file, (int) rows.getValue(),
+									(int) cols.getValue(), SharkFishModel.NUM_THREADS);
+						} catch (FileAlreadyExistsException e) {
+							// Another file or another size: never replace it without asking
+							if (JOptionPane.showConfirmDialog(this, e.getMessage()
+									+ "\n¿Sobrescribir el fichero?", "Océano fuera del heap",
+									JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
+								Files.delete(file);
+								model = SharkFishModel.openMapped(file, (int) rows.getValue(),
+										(int) cols.getValue(), SharkFishModel.NUM_THREADS);
+							}
+						}
+					} catch (IOException e) {
+						showError("No se pudo abrir el océano", e);
 					}
+					if (model != null) {
+						installModel(model);
+						newbornFish.setValue(gol.getFishCycle());
+						newbornShark.setValue(gol.getSharkCycle());
+					} else
+						installModel(new SharkFishModel((int) rows.getValue(),
+								(int) cols.getValue()));
 				}
-			});
-
-			// Add it to the view
-			scroll.getViewport().removeAll();
-			scroll.getViewport().add(gol);
+			}
+		}
 
-			// Enable editor components
-			setEnabled(true, stepButton, autoToggle, placeFish,
-					placeShark, placeNothing, slider, placeRandom,
-					newbornFish, newbornShark);
+		if ("save".equals(cmd)) {
+			JFileChooser chooser = new JFileChooser();
+			if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+				try {
+					OceanCheckpoint.write(gol, chooser.getSelectedFile().toPath());
+				} catch (IOException e) {
+					showError("No se pudo guardar el checkpoint", e);
+				}
+			}
+		}
 
-			// De-select all place buttons
-			placeFish.setSelected(true);
-			gol.notifyPlaceModeChanged(Fish.class);
+		if ("load".equals(cmd)) {
+			JFileChooser chooser = new JFileChooser();
+			if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+				try {
+					installModel(OceanCheckpoint.restore(
+							chooser.getSelectedFile().toPath(), SharkFishModel.NUM_THREADS));
+					newbornFish.setValue(gol.getFishCycle());
+					newbornShark.setValue(gol.getSharkCycle());
+				} catch (IOException e) {
+					showError("No se pudo cargar el checkpoint", e);
+				}
+			}
 		}
 
 		if ("step".equals(evt.getActionCommand())) {
 			// Verificar si la simulación está activa
 			if (!gol.isSimulationActive()) {
-				// Detener el timer automático si está corriendo
-				if (autoToggle.isSelected()) {
-					autoToggle.doClick(); // Simula click para detener
-				}
-
-				JOptionPane.showMessageDialog(this,
-						"🔴 Extinción Total\n\n" +
-								"Todas las especies se han extinguido en la generación " + gol.getGeneration() + ".\n" +
-								"Crea un nuevo mundo para continuar.",
-						"Simulación Terminada",
-						JOptionPane.INFORMATION_MESSAGE);
+				showExtinction();
 				return;
 			}
 
-			// Perform a step
+			// Perform a step (on the EDT: the runner is stopped)
 			gol.step();
-
-			// Update the statistical data
-			generationCnt.setText(String.valueOf(gol.getGeneration()));
-
-			// Update statistical data
-			populationDiagram.addData(gol.getFishCount(),
-					gol.getSharkCount(), gol.getEmptyCount());
-			fishCnt.setText(String.valueOf(gol.getFishCount()));
-			sharkCnt.setText(String.valueOf(gol.getSharkCount()));
-
-			popVar.setData(gol.getAgeDistribution());
+			gol.publishSnapshot(true);
+			showSnapshot(gol.refreshSnapshot());
 		}
     	
     	if ("auto".equals(evt.getActionCommand())) {
-			// Starts the automatic step simulation through a timer
+			// Starts the automatic simulation on its own thread; the view is
+			// refreshed from the published snapshots by the display timer
     		if (autoToggle.isSelected()) {
-    			timer = new Timer(1000/slider.getValue(), this);
-				// Each time that the timer expires the listener action (step) is executed.
-    			timer.setActionCommand("step");
-    			timer.start();
+    			startRunner();
+    			displayTimer = new Timer(1000 / DISPLAY_FPS, this);
+    			displayTimer.setActionCommand("display");
+    			displayTimer.setCoalesce(true);
+    			displayTimer.start();
     		} else {
-    			timer.stop();
-    			timer = null;
+    			displayTimer.stop();
+    			displayTimer = null;
+    			stopRunner();
+    			showSnapshot(gol.refreshSnapshot());
+    			achievedRate.setText("-");
     		}
     		
     		// Disable other components
     		setEnabled(!autoToggle.isSelected(), stepButton, placeFish, 
-    				placeRandom, placeShark, placeNothing, slider, 
-    				newButton, cols, rows, gol, newbornFish, newbornShark);
+    				placeRandom, placeShark, placeNothing, 
+    				newButton, cols, rows, gol, newbornFish, newbornShark,
+    				saveButton, loadButton, openReplay);
     		
     		// Manage caption
     		autoToggle.setText(autoToggle.isSelected() ? "Stop" : "Run");
     	}
+
+    	if ("density".equals(cmd))
+    		setDensityMap(densityToggle.isSelected());
+
+    	if ("engine".equals(cmd) && gol != null)
+    		applyEngine(true);
+
+    	if ("display".equals(cmd) && gol != null) {
+    		// Show the latest generation published by the runner (the ones in
+    		// between are skipped if the simulation is faster than the display)
+    		showSnapshot(gol.refreshSnapshot());
+    		if (runner != null && runner.getAchievedRate() > 0)
+    			achievedRate.setText(String.format("%.1f", runner.getAchievedRate()));
+    	}
     	
+    	if ("record".equals(cmd)) {
+    		// The recorder must be attached and detached between two steps
+    		boolean running = runner != null;
+    		if (running)
+    			stopRunner();
+
+    		if (recordToggle.isSelected()) {
+    			JFileChooser chooser = new JFileChooser();
+    			if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
+    				try {
+    					// With background statistics the recorder would have to
+    					// count every generation itself
+    					gol.setAsyncStatistics(false);
+    					// Fewer queued frames for big oceans (each one is a full copy)
+    					long cells = (long) gol.getOcean().getWidth() * gol.getOcean().getHeight();
+    					int frames = (int) Math.max(2, Math.min(RECORD_BUFFERED_FRAMES,
+    							RECORD_BUFFER_BYTES / cells));
+    					recorder = new TrajectoryRecorder(chooser.getSelectedFile().toPath(),
+    							gol, RECORD_KEYFRAME_INTERVAL, frames);
+    				} catch (IOException e) {
+    					showError("No se pudo iniciar la grabación", e);
+    				}
+    			}
+    			recordToggle.setSelected(recorder != null);
+    			if (recorder == null)
+    				gol.setAsyncStatistics(true);
+    		} else {
+    			stopRecording();
+    		}
+
+    		if (running)
+    			startRunner();
+    	}
+
+    	if ("openReplay".equals(cmd)) {
+    		JFileChooser chooser = new JFileChooser();
+    		if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION)
+    			openReplay(chooser.getSelectedFile().toPath());
+    	}
+
+    	if ("play".equals(cmd)) {
+    		if (playToggle.isSelected()) {
+    			if (replaySlider.getValue() >= replaySlider.getMaximum())
+    				replaySlider.setValue(replaySlider.getMinimum());
+    			playStartNanos = System.nanoTime();
+    			playStartGeneration = replaySlider.getValue();
+    			replayTimer = new Timer(1, this);
+    			replayTimer.setActionCommand("replayTick");
+    			replayTimer.start();
+    		} else {
+    			stopReplayTimer();
+    		}
+    		playToggle.setText(playToggle.isSelected() ? "Pause" : "Play");
+    	}
+
+    	if ("replayTick".equals(cmd) && reader != null) {
+    		// La generación mostrada depende del tiempo transcurrido, no del
+    		// número de ticks: si un tick llega tarde se saltan generaciones
+    		long elapsed = System.nanoTime() - playStartNanos;
+    		long target = playStartGeneration +
+    				elapsed * (int) replayFps.getValue() / 1000000000L;
+    		if (target >= replaySlider.getMaximum()) {
+    			replaySlider.setValue(replaySlider.getMaximum());
+    			playToggle.doClick();
+    		} else {
+    			replaySlider.setValue((int) target);
+    		}
+    	}
+
+    	if ("closeReplay".equals(cmd))
+    		closeReplay();
+
     	if ("random".equals(cmd)) {
     		JSpinner fishes = new JSpinner(new SpinnerNumberModel(.1, 0.01, .5, .01));
     		JSpinner sharks = new JSpinner(new SpinnerNumberModel(.05, 0.01, .5, .01));
@@ -299,12 +526,346 @@ public class SharkFishSimulationGui extends JPanel implements ActionListener {
     				.addLabel("% of sharks:").addLastField(sharks), 
     			"Random fill", JOptionPane.OK_CANCEL_OPTION);
     		
-    		if (retVal == JOptionPane.OK_OPTION)
+    		if (retVal == JOptionPane.OK_OPTION) {
     			gol.fillOceanRandomly((double) fishes.getValue(), 
     					(double) sharks.getValue());
+    			restartPopulation();
+    			showSnapshot(gol.refreshSnapshot());
+    		}
     	}
     }
+
+    // Refresh rate of the view while the simulation runs on its own thread
+    private static final int DISPLAY_FPS = 30;
+
+    // Speed slider: positions per power of ten and powers of ten covered
+    private static final int SPEED_STEPS_PER_DECADE = 10;
+
+    private static final int SPEED_DECADES = 4;
+
+    /**
+     * Starts the simulation thread with the rate selected in the GUI
+     */
+    private void startRunner() {
+    	runner = new SimulationRunner(gol, targetRate());
+    	runner.start();
+    }
+
+    /**
+     * Stops the simulation thread after the current generation
+     */
+    private void stopRunner() {
+    	if (runner == null)
+    		return;
+    	runner.stopRunner();
+    	runner = null;
+    }
+
+    private double targetRate() {
+    	return maxSpeed.isSelected() ? 0
+    			: Math.pow(10, slider.getValue() / (double) SPEED_STEPS_PER_DECADE);
+    }
+
+    private void updateRunnerRate() {
+    	slider.setEnabled(!maxSpeed.isSelected() && maxSpeed.isEnabled());
+    	slider.setToolTipText(maxSpeed.isSelected() ? null
+    			: String.format("%.1f generations / s", targetRate()));
+    	if (runner != null)
+    		runner.setTargetRate(targetRate());
+    }
+
+    /**
+     * Updates the statistics with the given snapshot, if it is a new generation
+     */
+    private void showSnapshot(OceanSnapshot snapshot) {
+    	if (densityView != null)
+    		densityView.refresh();
+    	if (snapshot.getGeneration() == shownGeneration)
+    		return;
+    	shownGeneration = snapshot.getGeneration();
+
+    	generationCnt.setText(String.valueOf(snapshot.getGeneration()));
+    	fishCnt.setText(String.valueOf(snapshot.getFishCount()));
+    	sharkCnt.setText(String.valueOf(snapshot.getSharkCount()));
+    	// The model adds every generation to the chart (see installModel)
+    	populationDiagram.repaint();
+    	popVar.setData(snapshot.getAgeDistribution());
+    }
     
+    // Generaciones entre keyframes y fotogramas en cola al grabar desde la GUI
+    private static final int RECORD_KEYFRAME_INTERVAL = 50;
+
+    private static final int RECORD_BUFFERED_FRAMES = 32;
+
+    private static final long RECORD_BUFFER_BYTES = 256L << 20;
+
+    // Only the visible part of the ocean is copied and painted, so the size
+    // is limited by the memory of the ocean itself (Cell[][]), not the view.
+    // Any rows x cols within this side stays under Ocean.MAX_CELLS
+    private static final int MAX_OCEAN_SIDE = (int) Math.sqrt(Ocean.MAX_CELLS);
+
+    private void stopRecording() {
+    	if (recorder == null)
+    		return;
+    	try {
+    		recorder.close();
+    	} catch (IOException e) {
+    		showError("Error al cerrar la grabación", e);
+    	}
+    	recorder = null;
+    	recordToggle.setSelected(false);
+    	if (gol != null)
+    		gol.setAsyncStatistics(true);
+    }
+
+    /**
+     * Switches the view to replay mode for the given recording
+     */
+    private void openReplay(Path file) {
+    	TrajectoryReader newReader;
+    	try {
+    		newReader = new TrajectoryReader(file);
+    	} catch (IOException e) {
+    		showError("No se pudo abrir la grabación", e);
+    		return;
+    	}
+
+    	closeReplay();
+    	if (autoToggle.isSelected())
+    		autoToggle.doClick();
+    	setDensityMap(false);
+
+    	reader = newReader;
+    	replayGeneration = -1;
+    	replayView = new TrajectoryView(reader.getWidth(), reader.getHeight());
+    	scroll.getViewport().removeAll();
+    	scroll.getViewport().add(replayView);
+
+    	// The simulation can't be edited while replaying
+    	setEnabled(false, stepButton, autoToggle, placeFish, placeShark,
+    			placeNothing, placeRandom, slider, maxSpeed, newbornFish, newbornShark,
+    			saveButton, recordToggle, densityToggle, engineChoice);
+    	setEnabled(true, replaySlider, replayFps, playToggle, closeReplay);
+
+    	populationDiagram.clear();
+    	replaySlider.setMinimum(reader.getFirstGeneration());
+    	replaySlider.setMaximum(reader.getLastGeneration());
+    	replaySlider.setValue(reader.getFirstGeneration());
+    	showReplayFrame(reader.getFirstGeneration());
+    }
+
+    /**
+     * Decodes and shows one generation of the open recording
+     */
+    private void showReplayFrame(int generation) {
+    	int previous = replayGeneration;
+    	try {
+    		// Population chart: append the generations in between when moving
+    		// forward a little, otherwise refill it with the preceding history
+    		int capacity = populationDiagram.getCapacity();
+    		int from = previous + 1;
+    		if (previous < 0 || generation <= previous || generation - previous > capacity) {
+    			populationDiagram.clear();
+    			from = Math.max(reader.getFirstGeneration(), generation - capacity + 1);
+    		}
+    		// Generations dropped while recording have no counts: the chart
+    		// starts again after them instead of repeating older values
+    		for (int g = from; g <= generation; g++) {
+    			int[] counts = reader.getCounts(g);
+    			if (counts != null)
+    				populationDiagram.addData(g, counts);
+    		}
+    		populationDiagram.repaint();
+
+    		reader.seek(generation);
+    	} catch (IOException e) {
+    		showError("Error al leer la grabación", e);
+    		return;
+    	}
+    	replayGeneration = generation;
+
+    	// A dropped generation shows the previous recorded one, labelled as such
+    	replayView.setTypes(reader.getTypes());
+    	String shown = String.valueOf(reader.getGeneration());
+    	if (reader.getGeneration() != generation)
+    		shown += " (" + generation + " no grabada)";
+    	generationCnt.setText(shown);
+    	fishCnt.setText(String.valueOf(reader.getFishCount()));
+    	sharkCnt.setText(String.valueOf(reader.getSharkCount()));
+    	popVar.setData(reader.getAgeDistribution());
+    }
+
+    private void stopReplayTimer() {
+    	if (replayTimer != null) {
+    		replayTimer.stop();
+    		replayTimer = null;
+    	}
+    }
+
+    /**
+     * Leaves replay mode and shows the simulation again (if there is one)
+     */
+    private void closeReplay() {
+    	if (reader == null)
+    		return;
+
+    	stopReplayTimer();
+    	playToggle.setSelected(false);
+    	playToggle.setText("Play");
+    	try {
+    		reader.close();
+    	} catch (IOException e) {
+    		// Ignore
+    	}
+    	reader = null;
+    	replayView = null;
+
+    	scroll.getViewport().removeAll();
+    	setEnabled(false, replaySlider, replayFps, playToggle, closeReplay);
+    	populationDiagram.clear();
+    	if (gol != null) {
+    		restartPopulation();
+    		scroll.getViewport().add(gol);
+    		setEnabled(true, stepButton, autoToggle, placeFish, placeShark,
+    				placeNothing, placeRandom, maxSpeed, newbornFish, newbornShark,
+    				saveButton, recordToggle, densityToggle, engineChoice);
+    		updateRunnerRate();
+    		shownGeneration = -1;
+    		showSnapshot(gol.refreshSnapshot());
+    	}
+    	scroll.repaint();
+    }
+
+    /**
+     * Shows the zoomed-out density view of the model instead of the cells
+     * (the model only computes its density pyramid while it is shown)
+     */
+    private void setDensityMap(boolean on) {
+    	densityToggle.setSelected(on);
+    	if (on == (densityView != null) || gol == null)
+    		return;
+
+    	gol.setDensityEnabled(on);
+    	densityView = on ? new DensityView(gol) : null;
+    	scroll.getViewport().removeAll();
+    	scroll.getViewport().add(on ? densityView : gol);
+    	if (!on)
+    		gol.refreshSnapshot();
+    	scroll.revalidate();
+    	scroll.repaint();
+    }
+
+    private void showExtinction() {
+		JOptionPane.showMessageDialog(this,
+				"🔴 Extinción Total\n\n" +
+						"Todas las especies se han extinguido en la generación " + gol.getGeneration() + ".\n" +
+						"Crea un nuevo mundo para continuar.",
+				"Simulación Terminada",
+				JOptionPane.INFORMATION_MESSAGE);
+    }
+
+    private void showError(String message, Exception e) {
+    	JOptionPane.showMessageDialog(this, message + ":\n" + e.getMessage(),
+    			"Error", JOptionPane.ERROR_MESSAGE);
+    }
+
+    /**
+     * Stops everything that uses the current model and shuts it down
+     * (this also closes its mapped file, if any)
+     */
+    private void releaseModel() {
+		closeReplay();
+		if (autoToggle.isSelected())
+			autoToggle.doClick();
+		stopRecording();
+		setDensityMap(false);
+		if (gol != null)
+			gol.shutdown();
+		gol = null;
+    }
+
+    /**
+     * Shows the given model in the view, replacing (and shutting down)
+     * the previous one
+     */
+    private void installModel(SharkFishModel model) {
+		releaseModel();
+		gol = model;
+
+		// ===== NUEVO: Añadir listener de extinción =====
+		gol.setExtinctionListener(new SharkFishModel.ExtinctionListener() {
+			@Override
+			public void onExtinction(int finalGeneration) {
+				// Detener automáticamente si está en modo Run (se llama desde
+				// el hilo de la simulación: el botón solo se toca en el EDT)
+				javax.swing.SwingUtilities.invokeLater(() -> {
+					if (autoToggle.isSelected()) {
+						autoToggle.doClick(); // Detener automáticamente
+						showExtinction();
+					}
+				});
+			}
+		});
+
+		// Add it to the view
+		scroll.getViewport().removeAll();
+		scroll.getViewport().add(gol);
+
+		// Enable editor components
+		setEnabled(true, stepButton, autoToggle, placeFish,
+				placeShark, placeNothing, maxSpeed, placeRandom,
+				newbornFish, newbornShark, saveButton, recordToggle, densityToggle, engineChoice);
+		updateRunnerRate();
+		applyEngine(false);
+
+		// Statistics are finished and delivered in the background, off the
+		// simulation's critical path (the view only shows some of the
+		// generations anyway)
+		gol.setAsyncStatistics(true);
+
+		// Every generation goes to the population chart, also the ones the
+		// view skips when the simulation is faster than the display
+		gol.addStatisticsListener((m, generation, stats) -> populationDiagram.addData(generation,
+				stats.fish, stats.sharks, stats.empty));
+
+		// Show the initial state
+		restartPopulation();
+		shownGeneration = -1;
+		showSnapshot(gol.refreshSnapshot());
+
+		// De-select all place buttons
+		placeFish.setSelected(true);
+		gol.notifyPlaceModeChanged(Ocean.FISH);
+    }
+
+    /**
+     * Starts the population chart again from the current state of the model
+     */
+    private void restartPopulation() {
+    	populationDiagram.clear();
+    	populationDiagram.addData(gol.getGeneration(), gol.getFishCount(),
+    			gol.getSharkCount(), gol.getEmptyCount());
+    }
+
+    /**
+     * Switches the current model to the selected engine (the ocean may be
+     * too small for some of them, e.g. one private strip per worker)
+     *
+     * @param chosen true if the user has just picked it; otherwise (a new
+     *               model) an engine that doesn't fit falls back silently
+     *               to the model's default one
+     */
+    private void applyEngine(boolean chosen) {
+    	SimulationEngine.Kind kind = (SimulationEngine.Kind) engineChoice.getSelectedItem();
+    	try {
+    		gol.setEngine(kind);
+    	} catch (IllegalArgumentException e) {
+    		engineChoice.setSelectedItem(gol.getEngine().getKind());
+    		if (chosen)
+    			showError("No se puede usar el motor " + kind, e);
+    	}
+    }
+
     public static final void setEnabled(boolean enabled, JComponent...components) {
     	for (JComponent component : components)
 			component.setEnabled(enabled);
@@ -0,0 +1,101 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : SimulationEngine.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+/**
+ * Estrategia con la que SharkFishModel calcula cada generación.
+ *
+ * Cada motor decide cómo se reparte el trabajo (planificación) y cómo se
+ * evitan los conflictos entre hilos (sincronización); el almacenamiento
+ * de las celdas lo decide el Ocean sobre el que trabaja (OceanStorage en
+ * el heap o en un fichero), así que cualquier motor funciona con
+ * cualquier almacenamiento. El modelo solo tiene un motor activo y lo
+ * puede cambiar entre dos pasos (SharkFishModel.setEngine).
+ *
+ * Motores disponibles (Kind):
+ * - secuencial: SequentialEngine, todas las filas en orden en el hilo que llama.
+ * - workers: WorkerEngine, un SimulationWorker por franja de filas sobre
+ *   el océano compartido (SynchronizationManager).
+ * - franjas: ChunkEngine, un ChunkWorker por franja privada con buzones
+ *   en las fronteras.
+ * - intenciones: IntentEngine, propuestas, arbitraje y aplicación en tres
+ *   fases sin locks.
+ * - teselas: TiledEngine, teselas de hasta nueve colores con ForkJoin.
+ */
+public interface SimulationEngine extends AutoCloseable {
+
+    /**
+     * Motores que el modelo sabe crear, con el nombre que se usa en la
+     * línea de comandos y en las trazas.
+     */
+    enum Kind {
+        SEQUENTIAL("secuencial"), WORKERS("workers"), CHUNKS("franjas"),
+        INTENTS("intenciones"), TILED("teselas");
+
+        private final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        /**
+         * @param name Nombre (getLabel()) o nombre de la constante
+         */
+        public static Kind parse(String name) {
+            for (Kind k : values())
+                if (k.label.equalsIgnoreCase(name) || k.name().equalsIgnoreCase(name))
+                    return k;
+            throw new IllegalArgumentException("Motor desconocido: " + name);
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    Kind getKind();
+
+    /**
+     * Simula la generación generation sobre todo el océano.
+     *
+     * @return Estadísticas del océano resultante (null si no se cuentan,
+     *         ver setCountStatistics)
+     */
+    StatisticsData step(int generation, int fishCycle, int sharkCycle);
+
+    /**
+     * @param enabled false para que step() no cuente las estadísticas y
+     *                devuelva null (el modelo las calcula aparte con un
+     *                StatisticsPipeline). Los motores que las obtienen sin
+     *                un recorrido propio pueden seguir devolviéndolas.
+     */
+    default void setCountStatistics(boolean enabled) {
+    }
+
+    /**
+     * @param enabled false para no reutilizar criaturas muertas (CellPool)
+     */
+    void setCellPooling(boolean enabled);
+
+    /**
+     * Activa o desactiva las trazas por generación de los hilos del motor.
+     */
+    default void setVerbose(boolean verbose) {
+    }
+
+    /**
+     * Libera los hilos del motor. Después no se puede volver a usar.
+     */
+    @Override
+    void close();
+}
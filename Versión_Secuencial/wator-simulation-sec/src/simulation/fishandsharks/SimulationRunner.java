@@ -0,0 +1,129 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : SimulationRunner.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hilo que ejecuta la simulación de forma continua, fuera del EDT de Swing.
+ *
+ * Después de cada generación publica una copia del estado (OceanSnapshot)
+ * mediante el TripleBuffer del modelo; la interfaz recoge la más reciente a
+ * su propio ritmo de refresco y descarta las que no le da tiempo a dibujar.
+ * Así la interfaz no se congela mientras se calcula una generación y la
+ * simulación no queda limitada por el ritmo del temporizador de Swing.
+ *
+ * Velocidad:
+ * - targetRate <= 0: tan rápido como sea posible.
+ * - targetRate > 0: generaciones por segundo objetivo. Los pequeños
+ *   retrasos (esperas que se alargan, algún paso lento) se recuperan
+ *   para mantener el ritmo medio, pero nunca más de MAX_LAG_NANOS: si los
+ *   pasos tardan más que el intervalo no se acumula retraso ni hay
+ *   ráfagas para "recuperar" el tiempo perdido.
+ *
+ * Como la interfaz solo recoge una copia por fotograma, a ritmos altos se
+ * simulan muchas generaciones por cada una que se dibuja. La velocidad
+ * conseguida se mide cada RATE_WINDOW_NANOS (getAchievedRate()).
+ */
+public class SimulationRunner extends Thread {
+
+    // Retraso máximo que se recupera ejecutando pasos seguidos
+    static final long MAX_LAG_NANOS = 20_000_000L;
+
+    // Intervalo de medida de la velocidad conseguida
+    static final long RATE_WINDOW_NANOS = 500_000_000L;
+
+    private final SharkFishModel model;
+
+    private volatile double targetRate;
+    private volatile boolean running = true;
+
+    // Generaciones por segundo medidas en el último intervalo
+    private volatile double achievedRate;
+
+    /**
+     * @param model Modelo a simular
+     * @param targetRate Generaciones por segundo (<= 0 = máxima velocidad)
+     */
+    public SimulationRunner(SharkFishModel model, double targetRate) {
+        super("SimulationRunner");
+        setDaemon(true);
+        this.model = model;
+        this.targetRate = targetRate;
+    }
+
+    public void setTargetRate(double targetRate) {
+        this.targetRate = targetRate;
+        // Despertar si estaba esperando con el ritmo anterior
+        LockSupport.unpark(this);
+    }
+
+    public double getTargetRate() {
+        return targetRate;
+    }
+
+    /**
+     * @return Generaciones por segundo conseguidas en el último intervalo de medida
+     */
+    public double getAchievedRate() {
+        return achievedRate;
+    }
+
+    @Override
+    public void run() {
+        long next = System.nanoTime();
+        long windowStart = next;
+        int windowSteps = 0;
+
+        while (running && model.isSimulationActive()) {
+            model.step();
+            model.publishSnapshot(false);
+
+            double rate = targetRate;
+            long now = System.nanoTime();
+            windowSteps++;
+            if (now - windowStart >= RATE_WINDOW_NANOS) {
+                achievedRate = windowSteps * 1e9 / (now - windowStart);
+                windowStart = now;
+                windowSteps = 0;
+            }
+
+            if (rate > 0) {
+                next += (long) (1e9 / rate);
+                if (next < now - MAX_LAG_NANOS) {
+                    // Pasos más lentos que el intervalo: no acumular retraso
+                    next = now;
+                } else {
+                    // Con un retraso pequeño (next <= now) no se espera
+                    while (running && targetRate == rate && (now = System.nanoTime()) < next)
+                        LockSupport.parkNanos(this, next - now);
+                    if (targetRate != rate)
+                        next = System.nanoTime();
+                }
+            } else {
+                next = now;
+            }
+        }
+
+        // El último estado siempre debe llegar a la interfaz
+        model.publishSnapshot(true);
+    }
+
+    /**
+     * Detiene el hilo al terminar la generación en curso y espera a que acabe.
+     */
+    public void stopRunner() {
+        running = false;
+        LockSupport.unpark(this);
+        try {
+            join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -8,11 +8,6 @@ X9321862P Porosnicu, Valentin Alexandru
 package simulation.fishandsharks;
 
 import simulation.fishandsharks.Ocean.Cell;
-import simulation.fishandsharks.Ocean.Fish;
-import simulation.fishandsharks.Ocean.Shark;
-
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * Clase que representa un hilo de trabajo para la simulación concurrente Wa-Tor.
@@ -26,8 +21,8 @@ public class SimulationWorker extends Thread {
     private final int threadId;
 
     // Rango de filas que este hilo debe simular [startRow, endRow)
-    private final int startRow;
-    private final int endRow;
+    private int startRow;
+    private int endRow;
 
     // Referencia al modelo de simulación principal
     private final SharkFishModel model;
@@ -38,6 +33,12 @@ public class SimulationWorker extends Thread {
     // Flag para controlar el ciclo de vida del hilo
     private volatile boolean running = true;
 
+    // Ocupación de los bloques de la fila que se está recorriendo
+    private int[] occupancy;
+
+    // Crías y criaturas muertas de las filas de este hilo
+    private final CellPool cellPool = new CellPool();
+
     /**
      * Constructor del worker de simulación.
      *
@@ -58,6 +59,16 @@ public class SimulationWorker extends Thread {
         this.syncManager = sync;
     }
 
+    /**
+     * Cambia el rango de filas del hilo. Solo se debe llamar entre
+     * generaciones, antes de SynchronizationManager.startNewGeneration(),
+     * que publica el cambio a los workers.
+     */
+    void setRows(int start, int end) {
+        this.startRow = start;
+        this.endRow = end;
+    }
+
     /**
      * Método principal del hilo que ejecuta el ciclo de simulación.
      *
@@ -67,8 +78,9 @@ public class SimulationWorker extends Thread {
      * 3. Espera a que el hilo anterior complete su fila frontera (Semaphore)
      * 4. Simula la primera fila (con dependencia)
      * 5. Notifica que su fila frontera está lista (Semaphore)
-     * 6. Calcula estadísticas locales y las agrega al total (synchronized)
-     * 7. Espera a que todos terminen (CyclicBarrier)
+     * 6. Espera a que todos terminen de mover criaturas (CyclicBarrier)
+     * 7. Calcula estadísticas locales y las agrega al total (synchronized)
+     * 8. Espera a que todos terminen (CyclicBarrier)
      */
     @Override
     public void run() {
@@ -82,6 +94,9 @@ public class SimulationWorker extends Thread {
 
                 if (!running) break;
 
+                // Los muertos de la generación anterior ya se pueden reutilizar
+                cellPool.recycle(model.getOcean(), model.isCellPooling());
+
                 // PASO 2: Simular filas SIN dependencias (de la segunda en adelante)
                 // Estas filas no dependen de la fila anterior del hilo previo,
                 // por lo que se pueden ejecutar inmediatamente
@@ -106,13 +121,23 @@ public class SimulationWorker extends Thread {
                 // Usa Semaphore.release() para dar permiso al siguiente hilo
                 syncManager.notifyBorderRowComplete(threadId);
 
-                // PASO 6: Calcular estadísticas locales de mis filas
-                // Cada hilo calcula sus propias estadísticas
-                StatisticsData stats = calculateLocalStats();
-                // Las agrega de forma thread-safe usando synchronized
-                syncManager.addStatistics(stats);
+                // PASO 6: Esperar a que todos terminen de simular
+                // Los vecinos aún pueden mover criaturas a mis filas frontera;
+                // contarlas antes daría estadísticas de un océano a medias
+                syncManager.waitForMovesEnd();
+
+                // PASO 7: Calcular estadísticas locales de mis filas
+                // Cada hilo calcula sus propias estadísticas, salvo que se
+                // calculen aparte tras el paso (StatisticsPipeline)
+                if (syncManager.isCountStatistics()) {
+                    StatisticsData stats = calculateLocalStats();
+                    // Las agrega de forma thread-safe usando synchronized
+                    syncManager.addStatistics(stats);
+                } else {
+                    syncManager.skipStatistics();
+                }
 
-                // PASO 7: Esperar a que todos los hilos terminen la generación
+                // PASO 8: Esperar a que todos los hilos terminen la generación
                 // Usa CyclicBarrier para sincronizar el final de la generación
                 syncManager.waitForGenerationEnd();
 
@@ -142,17 +167,33 @@ public class SimulationWorker extends Thread {
 
         // Recorrer todas las filas asignadas
         for (int y = start; y < end; y++) {
+            int[] occ = occupancyRow(ocean, y);
             for (int x = 0; x < ocean.getWidth(); x++) {
+                // Saltar los bloques vacíos (Ocean.copyOccupancyRow)
+                if ((x & (Ocean.OCC_TILE - 1)) == 0 && occ[x >> Ocean.OCC_SHIFT] == 0) {
+                    x += Ocean.OCC_TILE - 1;
+                    continue;
+                }
                 Cell c = ocean.getField(x, y);
                 // Solo actualizar celdas que pertenecen a esta generación
                 // (evita procesar celdas recién creadas en esta misma generación)
                 if (c != null && c.isPending(generation)) {
-                    c.update(ocean, x, y, generation, fishCycle, sharkCycle);
+                    c.update(ocean, x, y, generation, fishCycle, sharkCycle, cellPool);
                 }
             }
         }
     }
 
+    /**
+     * @return Celdas ocupadas de los bloques de la fila y
+     */
+    private int[] occupancyRow(Ocean ocean, int y) {
+        if (occupancy == null)
+            occupancy = new int[ocean.getOccTilesX()];
+        ocean.copyOccupancyRow(y, occupancy);
+        return occupancy;
+    }
+
     /**
      * Calcula las estadísticas locales de las filas asignadas a este hilo.
      *
@@ -165,46 +206,7 @@ public class SimulationWorker extends Thread {
      * @return Objeto StatisticsData con las estadísticas calculadas
      */
     private StatisticsData calculateLocalStats() {
-        int fish = 0, sharks = 0, empty = 0;
-        Map<Integer, int[]> ageMap = new HashMap<>();
-        Ocean ocean = model.getOcean();
-
-        // Recorrer solo las filas asignadas a este hilo
-        for (int y = startRow; y < endRow; y++) {
-            for (int x = 0; x < ocean.getWidth(); x++) {
-                Cell c = ocean.getField(x, y);
-
-                if (c == null) {
-                    empty++;
-                } else if (c instanceof Fish) {
-                    fish++;
-                    // Actualizar distribución de edad (índice 0 = peces)
-                    updateAgeDistribution(ageMap, c.getAge(), 0);
-                } else if (c instanceof Shark) {
-                    sharks++;
-                    // Actualizar distribución de edad (índice 1 = tiburones)
-                    updateAgeDistribution(ageMap, c.getAge(), 1);
-                }
-            }
-        }
-
-        return new StatisticsData(fish, sharks, empty, ageMap);
-    }
-
-    /**
-     * Actualiza el mapa de distribución de edad para una especie.
-     *
-     * @param ageMap Mapa de edad -> [peces, tiburones]
-     * @param age Edad de la entidad
-     * @param speciesIndex 0 para peces, 1 para tiburones
-     */
-    private void updateAgeDistribution(Map<Integer, int[]> ageMap, int age, int speciesIndex) {
-        int[] counts = ageMap.get(age);
-        if (counts == null) {
-            counts = new int[2];
-            ageMap.put(age, counts);
-        }
-        counts[speciesIndex]++;
+        return StatisticsData.count(model.getOcean(), startRow, endRow);
     }
 
     /**
@@ -0,0 +1,115 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : SparseOceanBenchmark.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Random;
+
+import simulation.fishandsharks.Ocean.Fish;
+import simulation.fishandsharks.Ocean.Shark;
+
+/**
+ * Mide lo que se ahorra saltando los bloques vacíos (contadores de
+ * ocupación de Ocean) en océanos poco poblados.
+ *
+ * Cada escenario coloca peces y tiburones al azar solo dentro de un
+ * cuadrado que ocupa una fracción del océano (la población que queda
+ * agrupada, p. ej. tras morir los tiburones de una zona), o en todo el
+ * océano con una densidad dada. Se simula con cada paso (secuencial, con
+ * workers y por intenciones) dos veces con la misma semilla: saltando los
+ * bloques vacíos y recorriendo todas las celdas, que equivale al
+ * recorrido anterior. Las dos ejecuciones deben acabar igual.
+ *
+ * Uso: SparseOceanBenchmark [ancho] [alto] [generaciones] [hilos]
+ */
+public class SparseOceanBenchmark {
+
+    private static final int WARMUP = 5;
+
+    private final int width, height, generations, threads;
+
+    private SparseOceanBenchmark(int width, int height, int generations, int threads) {
+        this.width = width;
+        this.height = height;
+        this.generations = generations;
+        this.threads = threads;
+    }
+
+    /**
+     * Simula un escenario con un tipo de paso.
+     *
+     * @param area Fracción del océano que ocupa el cuadrado poblado
+     * @param density Densidad de peces dentro del cuadrado (tiburones: la mitad)
+     * @param mode "secuencial", "workers" o "intenciones"
+     * @return {ms por generación, peces, tiburones} al terminar
+     */
+    private double[] run(double area, double density, String mode, boolean skip) {
+        SharkFishModel model = new SharkFishModel(width, height,
+                mode.equals("workers") ? threads : 1);
+        model.setVerbose(false);
+        Ocean ocean = model.getOcean();
+        ocean.setSkipEmptyBlocks(skip);
+        ocean.getRandom().setSeed(OceanRandom.mix(1));
+
+        Random r = new Random(1);
+        int side = (int) Math.round(Math.sqrt(area) * Math.min(width, height));
+        for (int y = 0; y < side; y++) {
+            for (int x = 0; x < side; x++) {
+                double p = r.nextDouble();
+                if (p < density)
+                    model.place(x, y, new Fish());
+                else if (p < 1.5 * density)
+                    model.place(x, y, new Shark());
+            }
+        }
+        model.restoreState(0, model.getFishCycle(), model.getSharkCycle());
+        if (mode.equals("intenciones"))
+            model.setIntentEngine(IntentEngine.Priority.RANDOM);
+
+        long start = 0;
+        for (int g = 0; g < WARMUP + generations; g++) {
+            if (g == WARMUP)
+                start = System.nanoTime();
+            model.step();
+        }
+        double ms = (System.nanoTime() - start) * 1e-6 / generations;
+        double[] result = {ms, model.getFishCount(), model.getSharkCount()};
+        model.shutdown();
+        return result;
+    }
+
+    private void scenario(String label, double area, double density) {
+        for (String mode : new String[]{"secuencial", "workers", "intenciones"}) {
+            double[] skip = run(area, density, mode, true);
+            double[] full = run(area, density, mode, false);
+            // Con varios workers el orden de actualización no es fijo
+            boolean same = mode.equals("workers") && threads > 1
+                    || skip[1] == full[1] && skip[2] == full[2];
+            System.out.printf("%-26s %-12s saltando %9.3f ms   completo %9.3f ms   x%5.1f%s%n",
+                    label, mode, skip[0], full[0], full[0] / Math.max(1e-9, skip[0]),
+                    same ? "" : "   DISTINTO");
+        }
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        int width = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+        int height = args.length > 1 ? Integer.parseInt(args[1]) : width;
+        int generations = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : SharkFishModel.NUM_THREADS;
+
+        SparseOceanBenchmark b = new SparseOceanBenchmark(width, height, generations, threads);
+        System.out.println("Océano " + width + "x" + height + ", bloques de "
+                + Ocean.OCC_TILE + "x" + Ocean.OCC_TILE + ", " + generations + " generaciones");
+
+        b.scenario("todo el océano, 10%", 1, .1);
+        b.scenario("todo el océano, 0.1%", 1, .001);
+        for (double area : new double[]{.25, .05, .01})
+            b.scenario(String.format("%.0f%% del océano, 30%%", area * 100), area, .3);
+    }
+}
@@ -8,6 +8,7 @@ X9321862P Porosnicu, Valentin Alexandru
 package simulation.fishandsharks;
 
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Clase de datos que encapsula las estadísticas calculadas por un hilo worker.
@@ -49,4 +50,55 @@ public class StatisticsData {
         this.empty = empty;
         this.ageDistribution = ageDistribution;
     }
+
+    /**
+     * Cuenta las criaturas de las filas [from, to) de ocean, saltándose los
+     * bloques vacíos (Ocean.copyOccupancyRow).
+     *
+     * @return Estadísticas de esas filas
+     */
+    public static StatisticsData count(Ocean ocean, int from, int to) {
+        int fish = 0, sharks = 0, empty = 0;
+        Map<Integer, int[]> ageMap = new TreeMap<>();
+        int width = ocean.getWidth();
+        int[] occ = new int[ocean.getOccTilesX()];
+
+        for (int y = from; y < to; y++) {
+            ocean.copyOccupancyRow(y, occ);
+            for (int x = 0; x < width; x++) {
+                // Un bloque vacío solo suma celdas vacías
+                if ((x & (Ocean.OCC_TILE - 1)) == 0 && occ[x >> Ocean.OCC_SHIFT] == 0) {
+                    empty += Math.min(Ocean.OCC_TILE, width - x);
+                    x += Ocean.OCC_TILE - 1;
+                    continue;
+                }
+                // typeAt/ageAt no crean la celda si está fuera del heap
+                byte type = ocean.typeAt(x, y);
+                if (type == Ocean.EMPTY) {
+                    empty++;
+                    continue;
+                }
+                int species = type == Ocean.FISH ? 0 : 1;
+                if (species == 0)
+                    fish++;
+                else
+                    sharks++;
+                ageMap.computeIfAbsent(ocean.ageAt(x, y), age -> new int[2])[species]++;
+            }
+        }
+
+        return new StatisticsData(fish, sharks, empty, ageMap);
+    }
+
+    /**
+     * @return Estadísticas de la unión de dos zonas disjuntas del océano
+     */
+    public static StatisticsData merge(StatisticsData a, StatisticsData b) {
+        Map<Integer, int[]> ageMap = new TreeMap<>(a.ageDistribution);
+        for (Map.Entry<Integer, int[]> e : b.ageDistribution.entrySet())
+            ageMap.merge(e.getKey(), e.getValue(),
+                    (u, v) -> new int[]{u[0] + v[0], u[1] + v[1]});
+        return new StatisticsData(a.fish + b.fish, a.sharks + b.sharks,
+                a.empty + b.empty, ageMap);
+    }
 }
\ No newline at end of file
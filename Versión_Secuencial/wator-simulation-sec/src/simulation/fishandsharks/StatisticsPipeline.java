@@ -0,0 +1,324 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : StatisticsPipeline.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Estadísticas de cada generación calculadas en segundo plano, mientras el
+ * motor ya está calculando la generación siguiente.
+ *
+ * Al final de cada paso submit() recorre el océano en paralelo por bandas
+ * (con los hilos del motor parados). Hay dos formas de hacerlo:
+ * - Copia (océanos en el heap de hasta SNAPSHOT_BYTES celdas): cada banda
+ *   copia sus celdas a un byte por celda (especie y edad hasta AGE_CAP;
+ *   las edades mayores se guardan aparte), y es el hilo de las
+ *   estadísticas el que las cuenta en los histogramas de edades.
+ * - Recuento directo (océanos fuera del heap o más grandes): cada banda
+ *   cuenta sus criaturas en los histogramas durante submit(). Solo se
+ *   guardan los histogramas, así que sirve para océanos de cualquier tamaño.
+ * En ambos casos un único hilo junta los histogramas, construye el
+ * StatisticsData y lo entrega; como atiende los encargos en el orden en que
+ * llegan, las estadísticas se entregan en orden de generación.
+ *
+ * Como mucho hay MAX_PENDING generaciones pendientes de entregar; si el
+ * hilo se queda atrás, submit() espera a que termine una. Las copias y los
+ * histogramas se reutilizan.
+ */
+public class StatisticsPipeline implements AutoCloseable {
+
+    // Generaciones que pueden estar pendientes de entregar a la vez
+    static final int MAX_PENDING = 2;
+
+    // Celdas máximas de la copia de cada generación (un byte por celda)
+    static final long SNAPSHOT_BYTES = 64L << 20;
+
+    // Edad máxima que cabe en el byte de la copia; las mayores van aparte
+    static final int AGE_CAP = 126;
+
+    /**
+     * Recibe las estadísticas de cada generación, en orden, en el hilo de
+     * las estadísticas.
+     */
+    public interface Delivery {
+        void deliver(int generation, StatisticsData stats);
+    }
+
+    /**
+     * Recuento de una banda de filas: criaturas de cada especie por edad.
+     */
+    static final class BandCount {
+        long fish, sharks;
+        int maxAge;
+
+        // Criaturas de cada edad (índice = edad)
+        int[] fishAges = new int[64], sharkAges = new int[64];
+
+        // Especies de una fila y contadores de ocupación de sus bloques
+        private byte[] row = new byte[0];
+        private int[] occ = new int[0];
+
+        // Edades de la copia mayores o iguales que AGE_CAP, en orden de recorrido
+        private int[] overflow = new int[16];
+        private int overflowCount;
+
+        /**
+         * Cuenta las filas [from, to), sin lock (el océano está quieto entre
+         * dos pasos), saltándose los bloques vacíos.
+         */
+        void count(Ocean ocean, int from, int to) {
+            OceanStorage storage = ocean.getStorage();
+            int width = ocean.getWidth();
+            prepare(ocean);
+            clear();
+
+            for (int y = from; y < to; y++) {
+                ocean.copyOccupancyRow(y, occ);
+                storage.copyRowTypes(y, row);
+                for (int x = 0; x < width; x++) {
+                    if ((x & (Ocean.OCC_TILE - 1)) == 0 && occ[x >> Ocean.OCC_SHIFT] == 0) {
+                        x += Ocean.OCC_TILE - 1;
+                        continue;
+                    }
+                    byte t = row[x];
+                    if (t != Ocean.EMPTY)
+                        add(t == Ocean.FISH, storage.ageAt(x, y));
+                }
+            }
+        }
+
+        /**
+         * Copia las filas [from, to) a codes (índice = y*ancho + x): 0 si la
+         * celda está vacía y si no 1 + edad (hasta AGE_CAP), más 128 si es un
+         * tiburón. Las edades desde AGE_CAP se guardan en overflow.
+         */
+        void copy(Ocean ocean, int from, int to, byte[] codes) {
+            OceanStorage storage = ocean.getStorage();
+            int width = ocean.getWidth();
+            prepare(ocean);
+            overflowCount = 0;
+
+            for (int y = from; y < to; y++) {
+                ocean.copyOccupancyRow(y, occ);
+                int base = y * width;
+                for (int x = 0; x < width; x++) {
+                    if ((x & (Ocean.OCC_TILE - 1)) == 0 && occ[x >> Ocean.OCC_SHIFT] == 0) {
+                        Arrays.fill(codes, base + x, base + Math.min(x + Ocean.OCC_TILE, width), (byte) 0);
+                        x += Ocean.OCC_TILE - 1;
+                        continue;
+                    }
+                    // En el heap la celda es el propio objeto: se lee una sola vez
+                    Cell c = storage.get(x, y);
+                    byte t = Ocean.typeOf(c);
+                    if (t == Ocean.EMPTY) {
+                        codes[base + x] = 0;
+                        continue;
+                    }
+                    int age = c.getAge();
+                    if (age >= AGE_CAP) {
+                        if (overflowCount == overflow.length)
+                            overflow = Arrays.copyOf(overflow, 2 * overflowCount);
+                        overflow[overflowCount++] = age;
+                        age = AGE_CAP;
+                    }
+                    codes[base + x] = (byte) ((t == Ocean.SHARK ? 128 : 0) | (age + 1));
+                }
+            }
+        }
+
+        /**
+         * Cuenta la copia de las filas [from, to) hecha por copy() (en el
+         * hilo de las estadísticas).
+         */
+        void countCopy(byte[] codes, int width, int from, int to) {
+            clear();
+            int next = 0;
+            for (int i = from * width, end = to * width; i < end; i++) {
+                int c = codes[i] & 0xFF;
+                if (c == 0)
+                    continue;
+                int age = (c & 127) - 1;
+                add(c < 128, age == AGE_CAP ? overflow[next++] : age);
+            }
+        }
+
+        private void prepare(Ocean ocean) {
+            if (row.length != ocean.getWidth()) {
+                row = new byte[ocean.getWidth()];
+                occ = new int[ocean.getOccTilesX()];
+            }
+        }
+
+        private void clear() {
+            fish = sharks = 0;
+            Arrays.fill(fishAges, 0, maxAge + 1, 0);
+            Arrays.fill(sharkAges, 0, maxAge + 1, 0);
+            maxAge = -1;
+        }
+
+        private void add(boolean isFish, int age) {
+            if (age >= fishAges.length) {
+                int n = Math.max(age + 1, 2 * fishAges.length);
+                fishAges = Arrays.copyOf(fishAges, n);
+                sharkAges = Arrays.copyOf(sharkAges, n);
+            }
+            if (isFish) {
+                fish++;
+                fishAges[age]++;
+            } else {
+                sharks++;
+                sharkAges[age]++;
+            }
+            maxAge = Math.max(maxAge, age);
+        }
+    }
+
+    /**
+     * Recuentos de las bandas de una generación.
+     */
+    static final class Frame {
+        int generation;
+        long cells;
+        int[] bounds;
+        BandCount[] bands = new BandCount[0];
+
+        // Copia del océano (null o sin usar si las bandas ya se contaron)
+        byte[] codes;
+        int width;
+        boolean copied;
+
+        /**
+         * Cuenta la copia del océano, si se hizo.
+         */
+        void countCopy() {
+            if (!copied)
+                return;
+            for (int i = 0; i < bands.length; i++)
+                bands[i].countCopy(codes, width, bounds[i], bounds[i + 1]);
+        }
+
+        /**
+         * Junta los histogramas de las bandas.
+         */
+        StatisticsData merge() {
+            long fish = 0, sharks = 0;
+            int maxAge = -1;
+            for (BandCount b : bands) {
+                fish += b.fish;
+                sharks += b.sharks;
+                maxAge = Math.max(maxAge, b.maxAge);
+            }
+
+            // Una entrada por edad presente, como StatisticsData.count()
+            Map<Integer, int[]> ageMap = new TreeMap<>();
+            for (int age = 0; age <= maxAge; age++) {
+                int f = 0, s = 0;
+                for (BandCount b : bands)
+                    if (age <= b.maxAge) {
+                        f += b.fishAges[age];
+                        s += b.sharkAges[age];
+                    }
+                if (f != 0 || s != 0)
+                    ageMap.put(age, new int[]{f, s});
+            }
+            // Ocean.MAX_CELLS garantiza que los totales caben en un int
+            return new StatisticsData(Math.toIntExact(fish), Math.toIntExact(sharks),
+                    Math.toIntExact(cells - fish - sharks), ageMap);
+        }
+    }
+
+    private final Delivery delivery;
+    private final ExecutorService executor;
+    private final Semaphore pending = new Semaphore(MAX_PENDING);
+    private final ConcurrentLinkedQueue<Frame> spare = new ConcurrentLinkedQueue<>();
+
+    public StatisticsPipeline(Delivery delivery) {
+        this.delivery = delivery;
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "Estadisticas");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Copia o cuenta el océano por bandas (con los hilos del motor parados)
+     * y encarga el resto del recuento y la entrega de la generación
+     * generation. Espera si ya hay MAX_PENDING generaciones pendientes.
+     *
+     * @param bands Hilos con los que se copia o se cuenta
+     */
+    public void submit(int generation, Ocean ocean, ParallelBands bands) {
+        pending.acquireUninterruptibly();
+        Frame frame = spare.poll();
+        if (frame == null)
+            frame = new Frame();
+        Frame f = frame;
+        f.generation = generation;
+        f.cells = (long) ocean.getWidth() * ocean.getHeight();
+        f.bounds = bands.split(0, ocean.getHeight(), 1);
+        int n = f.bounds.length - 1;
+        if (f.bands.length != n) {
+            f.bands = Arrays.copyOf(f.bands, n);
+            for (int i = 0; i < n; i++)
+                if (f.bands[i] == null)
+                    f.bands[i] = new BandCount();
+        }
+
+        // La copia ocupa un byte por celda en el heap: los océanos fuera de
+        // él o demasiado grandes se cuentan aquí
+        f.copied = ocean.getStorage() instanceof HeapOceanStorage && f.cells <= SNAPSHOT_BYTES;
+        if (f.copied) {
+            if (f.codes == null || f.codes.length != f.cells)
+                f.codes = new byte[(int) f.cells];
+            f.width = ocean.getWidth();
+            bands.forEachBand(f.bounds, (from, to) ->
+                    f.bands[Arrays.binarySearch(f.bounds, 0, n, from)].copy(ocean, from, to, f.codes));
+        } else {
+            f.codes = null;
+            bands.forEachBand(f.bounds, (from, to) ->
+                    f.bands[Arrays.binarySearch(f.bounds, 0, n, from)].count(ocean, from, to));
+        }
+
+        executor.execute(() -> {
+            try {
+                f.countCopy();
+                delivery.deliver(f.generation, f.merge());
+            } finally {
+                spare.offer(f);
+                pending.release();
+            }
+        });
+    }
+
+    /**
+     * Espera a que se entreguen todas las estadísticas encargadas. No se
+     * debe llamar desde Delivery.deliver().
+     */
+    public void flush() {
+        pending.acquireUninterruptibly(MAX_PENDING);
+        pending.release(MAX_PENDING);
+    }
+
+    /**
+     * Entrega lo pendiente y termina el hilo.
+     */
+    @Override
+    public void close() {
+        flush();
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,323 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : SteadyStateDetector.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Detector en streaming de simulaciones que ya se han estabilizado, para
+ * no seguir gastando CPU en ejecuciones cuyo resultado ya se conoce.
+ *
+ * Recibe las poblaciones de peces y tiburones de cada generación y
+ * reconoce tres regímenes, con una tolerancia expresada como fracción de
+ * las celdas del océano:
+ * - EQUILIBRIUM: durante window generaciones cada especie se mantiene a
+ *   menos de la tolerancia de un valor central (su máximo y su mínimo en
+ *   la ventana no se separan más de dos veces la tolerancia).
+ * - SATURATION: lo mismo, pero con una de las especies extinta (p. ej. un
+ *   océano lleno de peces sin tiburones).
+ * - CYCLE: existe un período P (2..maxPeriod) tal que, durante al menos
+ *   cycles períodos y window generaciones seguidas, cada valor está a
+ *   menos de la tolerancia del de P generaciones antes (o de P ± jitter,
+ *   porque los ciclos de Wa-Tor no son exactos), y la oscilación dentro
+ *   de un período es mayor que la tolerancia.
+ *
+ * Cada dato cuesta O(maxPeriod): para cada período se lleva la cuenta de
+ * generaciones seguidas que coinciden con las de un período antes, y los
+ * extremos de la ventana se mantienen con colas monótonas. Solo se guardan
+ * las últimas generaciones necesarias en buffers circulares.
+ *
+ * El veredicto se emite una sola vez (add() lo devuelve en la generación
+ * en que se detecta) y se conserva hasta reset().
+ */
+public class SteadyStateDetector {
+
+    public enum Kind {EQUILIBRIUM, SATURATION, CYCLE}
+
+    /**
+     * Régimen detectado y resumen de las generaciones que lo muestran.
+     */
+    public static class Verdict {
+        public final Kind kind;
+        // Generación en la que se detectó y primera de las que lo muestran
+        public final long generation, since;
+        // Período (solo CYCLE, 0 en los demás casos)
+        public final int period;
+        public final double fishMean, sharkMean;
+        public final int fishMin, fishMax, sharkMin, sharkMax;
+
+        Verdict(Kind kind, long generation, long since, int period,
+                double fishMean, double sharkMean,
+                int fishMin, int fishMax, int sharkMin, int sharkMax) {
+            this.kind = kind;
+            this.generation = generation;
+            this.since = since;
+            this.period = period;
+            this.fishMean = fishMean;
+            this.sharkMean = sharkMean;
+            this.fishMin = fishMin;
+            this.fishMax = fishMax;
+            this.sharkMin = sharkMin;
+            this.sharkMax = sharkMax;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%s%s desde la generación %d (peces %.1f [%d..%d], tiburones %.1f [%d..%d])",
+                    kind, kind == Kind.CYCLE ? " de período " + period : "", since,
+                    fishMean, fishMin, fishMax, sharkMean, sharkMin, sharkMax);
+        }
+    }
+
+    private final int cells;
+    private double tolerance = .01;
+    private int window = 500, maxPeriod = 200, cycles = 3, jitter = 0;
+
+    // Últimas generaciones (índice = dato % capacity)
+    private int[] fish, sharks;
+    private int capacity;
+
+    // Generaciones seguidas que coinciden con las de p generaciones antes
+    private int[] run;
+    private boolean[] match;
+
+    // Extremos de cada especie en las últimas window generaciones
+    private SlidingExtreme fishMin, fishMax, sharkMin, sharkMax;
+
+    private long last, count;
+    private Verdict verdict;
+
+    /**
+     * @param cells Celdas del océano (la tolerancia es una fracción de ellas)
+     */
+    public SteadyStateDetector(int cells) {
+        if (cells < 1)
+            throw new IllegalArgumentException();
+        this.cells = cells;
+        allocate();
+    }
+
+    /**
+     * @param tolerance Diferencia admitida entre poblaciones, como fracción de las celdas
+     */
+    public SteadyStateDetector setTolerance(double tolerance) {
+        if (tolerance < 0)
+            throw new IllegalArgumentException();
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * @param window Generaciones estables necesarias para declarar un equilibrio
+     */
+    public SteadyStateDetector setWindow(int window) {
+        if (window < 1)
+            throw new IllegalArgumentException();
+        this.window = window;
+        allocate();
+        return this;
+    }
+
+    /**
+     * @param maxPeriod Período máximo de los ciclos (menor que 2 = no buscar ciclos)
+     * @param cycles Períodos seguidos que se deben repetir
+     * @param jitter Variación admitida del período en cada comparación
+     */
+    public SteadyStateDetector setCycle(int maxPeriod, int cycles, int jitter) {
+        if (cycles < 2 || jitter < 0)
+            throw new IllegalArgumentException();
+        this.maxPeriod = Math.max(0, maxPeriod);
+        this.cycles = cycles;
+        this.jitter = jitter;
+        allocate();
+        return this;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getMaxPeriod() {
+        return maxPeriod;
+    }
+
+    private void allocate() {
+        int lags = maxPeriod + jitter;
+        capacity = Math.max(window + maxPeriod, cycles * maxPeriod) + lags + 1;
+        fish = new int[capacity];
+        sharks = new int[capacity];
+        run = new int[maxPeriod + 1];
+        match = new boolean[lags + 1];
+        fishMin = new SlidingExtreme(window, false);
+        fishMax = new SlidingExtreme(window, true);
+        sharkMin = new SlidingExtreme(window, false);
+        sharkMax = new SlidingExtreme(window, true);
+        reset();
+    }
+
+    /**
+     * Olvida los datos y el veredicto.
+     */
+    public void reset() {
+        count = 0;
+        verdict = null;
+        Arrays.fill(run, 0);
+        fishMin.clear();
+        fishMax.clear();
+        sharkMin.clear();
+        sharkMax.clear();
+    }
+
+    /**
+     * @return Régimen detectado (null si todavía no se ha detectado ninguno)
+     */
+    public Verdict getVerdict() {
+        return verdict;
+    }
+
+    /**
+     * Añade las poblaciones de una generación. Si no es la siguiente a la
+     * última añadida, el detector empieza de nuevo en ella.
+     *
+     * @return El veredicto si se acaba de detectar un régimen, si no null
+     */
+    public Verdict add(long generation, int fishCount, int sharkCount) {
+        if (count > 0 && generation != last + 1)
+            reset();
+        last = generation;
+        if (verdict != null)
+            return null;
+
+        int pos = (int) (count % capacity);
+        fish[pos] = fishCount;
+        sharks[pos] = sharkCount;
+        count++;
+        double tol = tolerance * cells;
+
+        // Equilibrio: ventana de window generaciones sin salir de la banda
+        fishMin.add(count, fishCount);
+        fishMax.add(count, fishCount);
+        sharkMin.add(count, sharkCount);
+        sharkMax.add(count, sharkCount);
+        if (count >= window && fishMax.get() - fishMin.get() <= 2 * tol
+                && sharkMax.get() - sharkMin.get() <= 2 * tol)
+            return settle(fishCount == 0 || sharkCount == 0 ? Kind.SATURATION : Kind.EQUILIBRIUM,
+                    window, 0);
+
+        // Ciclos: coincidencia con cada retardo y rachas por período
+        if (maxPeriod < 2)
+            return null;
+        for (int lag = 1; lag < match.length; lag++) {
+            if (lag >= count) {
+                match[lag] = false;
+                continue;
+            }
+            int p = (int) ((count - 1 - lag) % capacity);
+            match[lag] = Math.abs(fishCount - fish[p]) <= tol
+                    && Math.abs(sharkCount - sharks[p]) <= tol;
+        }
+        for (int period = 2; period <= maxPeriod; period++) {
+            boolean m = false;
+            for (int lag = Math.max(1, period - jitter); lag <= period + jitter && !m; lag++)
+                m = match[lag];
+            if (!m) {
+                run[period] = 0;
+                continue;
+            }
+            // Racha de al menos cycles períodos y window generaciones
+            int span = Math.max(cycles, (window + period - 1) / period) * period;
+            if (++run[period] < span)
+                continue;
+
+            // Una serie que cambia poco entre generaciones coincide consigo
+            // misma con retardos cortos: solo es un ciclo si oscila más que
+            // la tolerancia dentro de un período
+            Verdict one = summary(Kind.CYCLE, period, period);
+            if (one.fishMax - one.fishMin > 2 * tol || one.sharkMax - one.sharkMin > 2 * tol)
+                return settle(Kind.CYCLE, span, period);
+            run[period] = 0;
+        }
+        return null;
+    }
+
+    private Verdict settle(Kind kind, int span, int period) {
+        verdict = summary(kind, span, period);
+        return verdict;
+    }
+
+    /**
+     * Medias y extremos de las últimas span generaciones.
+     */
+    private Verdict summary(Kind kind, int span, int period) {
+        long fishSum = 0, sharkSum = 0;
+        int fMin = Integer.MAX_VALUE, fMax = Integer.MIN_VALUE;
+        int sMin = Integer.MAX_VALUE, sMax = Integer.MIN_VALUE;
+        for (int k = 0; k < span; k++) {
+            int p = (int) ((count - 1 - k) % capacity);
+            fishSum += fish[p];
+            sharkSum += sharks[p];
+            fMin = Math.min(fMin, fish[p]);
+            fMax = Math.max(fMax, fish[p]);
+            sMin = Math.min(sMin, sharks[p]);
+            sMax = Math.max(sMax, sharks[p]);
+        }
+        return new Verdict(kind, last, last - span + 1, period,
+                (double) fishSum / span, (double) sharkSum / span, fMin, fMax, sMin, sMax);
+    }
+
+    /**
+     * Mínimo o máximo de las últimas window muestras: cola monótona de
+     * índices en la que cada muestra entra y sale una sola vez.
+     */
+    private static final class SlidingExtreme {
+        private final int window;
+        private final boolean max;
+        private final long[] index;
+        private final int[] value;
+        private int head, size;
+
+        SlidingExtreme(int window, boolean max) {
+            this.window = window;
+            this.max = max;
+            this.index = new long[window + 1];
+            this.value = new int[window + 1];
+        }
+
+        void clear() {
+            head = size = 0;
+        }
+
+        void add(long i, int v) {
+            int n = index.length;
+            while (size > 0 && index[head] <= i - window) {
+                head = (head + 1) % n;
+                size--;
+            }
+            while (size > 0) {
+                int last = value[(head + size - 1) % n];
+                if (max ? last > v : last < v)
+                    break;
+                size--;
+            }
+            int tail = (head + size) % n;
+            index[tail] = i;
+            value[tail] = v;
+            size++;
+        }
+
+        int get() {
+            return value[head];
+        }
+    }
+}
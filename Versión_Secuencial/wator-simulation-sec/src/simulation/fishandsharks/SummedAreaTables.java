@@ -0,0 +1,169 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : SummedAreaTables.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+/**
+ * Tablas de sumas acumuladas (summed-area tables) de peces y tiburones.
+ *
+ * La entrada (x, y) de cada tabla es el número de individuos de la especie
+ * en el rectángulo [0, x) x [0, y), así que el número en cualquier
+ * rectángulo se obtiene con 4 accesos. Un rectángulo que da la vuelta al
+ * toro se parte en como mucho 4 rectángulos dentro del océano: cualquier
+ * consulta es O(1).
+ *
+ * Cálculo en paralelo por bandas de filas (ParallelBands):
+ * 1. Cada banda calcula su tabla como si empezara en la fila 0.
+ * 2. Se acumulan (en serie, solo la última fila de cada banda) los
+ *    desplazamientos que hay que sumar a cada banda.
+ * 3. Cada banda suma su desplazamiento a todas sus filas.
+ *
+ * Las tablas se recalculan al final de cada generación. Las consultas son
+ * válidas entre dos pasos: desde un GenerationListener, desde el hilo que
+ * llama a step() o con la simulación parada.
+ */
+public class SummedAreaTables {
+
+    private final Ocean ocean;
+    private final ParallelBands bands;
+    private final int width, height, stride;
+
+    // (width+1) x (height+1) entradas, índice = y*stride + x
+    private final int[] fish, sharks;
+
+    private int generation = -1;
+
+    public SummedAreaTables(Ocean ocean, ParallelBands bands) {
+        this.ocean = ocean;
+        this.bands = bands;
+        this.width = ocean.getWidth();
+        this.height = ocean.getHeight();
+        this.stride = width + 1;
+        this.fish = new int[stride * (height + 1)];
+        this.sharks = new int[stride * (height + 1)];
+    }
+
+    /**
+     * Recalcula las tablas con el estado actual del océano.
+     * Solo se debe llamar con la simulación detenida entre dos pasos.
+     */
+    public void compute(int generation) {
+        int[] bounds = bands.split(0, height, 1);
+
+        // 1. Tabla local de cada banda
+        bands.forEachBand(bounds, (from, to) -> {
+            byte[] row = new byte[width];
+            for (int y = from; y < to; y++) {
+                ocean.copyRowTypes(y, row);
+                int base = (y + 1) * stride, prev = y == from ? -1 : y * stride;
+                int rowFish = 0, rowSharks = 0;
+                fish[base] = sharks[base] = 0;
+                for (int x = 0; x < width; x++) {
+                    byte t = row[x];
+                    if (t == Ocean.FISH)
+                        rowFish++;
+                    else if (t == Ocean.SHARK)
+                        rowSharks++;
+                    fish[base + x + 1] = prev < 0 ? rowFish : fish[prev + x + 1] + rowFish;
+                    sharks[base + x + 1] = prev < 0 ? rowSharks : sharks[prev + x + 1] + rowSharks;
+                }
+            }
+        });
+
+        // 2. Desplazamiento de cada banda = suma de las últimas filas de las anteriores
+        int n = bounds.length - 1;
+        int[][] offFish = new int[n][], offSharks = new int[n][];
+        for (int b = 1; b < n; b++) {
+            int last = bounds[b] * stride;
+            offFish[b] = new int[stride];
+            offSharks[b] = new int[stride];
+            for (int x = 0; x < stride; x++) {
+                offFish[b][x] = fish[last + x] + (b > 1 ? offFish[b - 1][x] : 0);
+                offSharks[b][x] = sharks[last + x] + (b > 1 ? offSharks[b - 1][x] : 0);
+            }
+        }
+
+        // 3. Sumar el desplazamiento a las filas de cada banda
+        if (n > 1) {
+            bands.forEachBand(bounds, (from, to) -> {
+                if (from == 0)
+                    return;
+                int b = 1;
+                while (bounds[b] != from)
+                    b++;
+                int[] of = offFish[b], os = offSharks[b];
+                for (int y = from; y < to; y++) {
+                    int base = (y + 1) * stride;
+                    for (int x = 0; x < stride; x++) {
+                        fish[base + x] += of[x];
+                        sharks[base + x] += os[x];
+                    }
+                }
+            });
+        }
+
+        this.generation = generation;
+    }
+
+    /**
+     * @return Generación de las tablas, o -1 si aún no se han calculado
+     */
+    public int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Número de peces en el rectángulo de w x h celdas con esquina (x, y).
+     * La esquina puede estar fuera del océano y el rectángulo puede dar la
+     * vuelta por los bordes (topología toroidal).
+     *
+     * @param w Ancho (0 <= w <= ancho del océano)
+     * @param h Alto (0 <= h <= alto del océano)
+     */
+    public int countFish(int x, int y, int w, int h) {
+        return query(fish, x, y, w, h);
+    }
+
+    /**
+     * Como countFish() para los tiburones.
+     */
+    public int countSharks(int x, int y, int w, int h) {
+        return query(sharks, x, y, w, h);
+    }
+
+    /**
+     * Como countFish() para las celdas vacías.
+     */
+    public int countEmpty(int x, int y, int w, int h) {
+        return w * h - countFish(x, y, w, h) - countSharks(x, y, w, h);
+    }
+
+    private int query(int[] table, int x, int y, int w, int h) {
+        if (w < 0 || h < 0 || w > width || h > height)
+            throw new IllegalArgumentException("Rectángulo fuera de rango: " + w + "x" + h);
+
+        x = Math.floorMod(x, width);
+        y = Math.floorMod(y, height);
+        int w1 = Math.min(w, width - x), h1 = Math.min(h, height - y);
+
+        // Parte sin vuelta y, si hace falta, las partes que dan la vuelta
+        int sum = rect(table, x, y, w1, h1);
+        if (w1 < w)
+            sum += rect(table, 0, y, w - w1, h1);
+        if (h1 < h) {
+            sum += rect(table, x, 0, w1, h - h1);
+            if (w1 < w)
+                sum += rect(table, 0, 0, w - w1, h - h1);
+        }
+        return sum;
+    }
+
+    private int rect(int[] table, int x, int y, int w, int h) {
+        int top = y * stride, bottom = (y + h) * stride;
+        return table[bottom + x + w] - table[top + x + w] - table[bottom + x] + table[top + x];
+    }
+}
@@ -19,7 +19,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * Esta clase coordina todos los mecanismos de sincronización requeridos:
  * - ReentrantLock + Condition: Para inicio de generación
  * - Semaphore: Para dependencias de filas frontera
- * - CyclicBarrier: Para sincronizar fin de generación
+ * - CyclicBarrier: Para sincronizar fin de movimientos y fin de generación
  * - CountDownLatch: Para esperar cálculo de estadísticas
  * - synchronized: Para agregación de estadísticas
  *
@@ -27,7 +27,9 @@ import java.util.concurrent.locks.ReentrantLock;
  * 1. Todos los hilos comienzan simultáneamente cada generación
  * 2. Las dependencias entre filas se respetan (topología toroidal)
  * 3. Ningún hilo comienza la siguiente generación hasta que todos terminen
- * 4. Las estadísticas se agregan sin condiciones de carrera
+ * 4. Ningún hilo cuenta sus filas hasta que todos terminen de mover
+ *    criaturas (un vecino puede mover una a las filas de otro hilo)
+ * 5. Las estadísticas se agregan sin condiciones de carrera
  */
 public class SynchronizationManager {
     private final int numThreads;
@@ -37,6 +39,10 @@ public class SynchronizationManager {
     // Todos los hilos esperan aquí antes de comenzar la siguiente generación
     private final CyclicBarrier generationBarrier;
 
+    // Sincroniza el fin de los movimientos de cada generación: después de
+    // ella las filas de cada hilo ya no cambian y se pueden contar
+    private final CyclicBarrier movesBarrier;
+
     // MECANISMO 2: Semaphore[]
     // Gestiona las dependencias de filas frontera
     // borderSemaphores[i] controla si el hilo i+1 puede procesar su primera fila
@@ -47,7 +53,13 @@ public class SynchronizationManager {
     // El hilo principal adquiere el lock, cambia el estado, y despierta a todos
     private final ReentrantLock startLock = new ReentrantLock();
     private final Condition startCondition = startLock.newCondition();
-    private volatile boolean generationStarted = false;
+
+    // Número de generaciones iniciadas por el hilo principal y última
+    // generación vista por cada worker. Con un contador (en lugar de un flag
+    // booleano) no hay carrera si el hilo principal inicia la siguiente
+    // generación antes de que todos los workers hayan salido de la barrera.
+    private long startedGenerations = 0;
+    private final long[] seenGenerations;
 
     // MECANISMO 4: synchronized
     // Protege las estadísticas compartidas contra condiciones de carrera
@@ -60,6 +72,14 @@ public class SynchronizationManager {
     // Asegura que el hilo principal espere a que todos calculen estadísticas
     private CountDownLatch statsLatch;
 
+    // Trazas por generación (se desactivan en ejecuciones por lotes)
+    private volatile boolean verbose = true;
+
+    // Si es false los workers no cuentan sus filas: llaman a
+    // skipStatistics() en lugar de addStatistics() (el modelo calcula las
+    // estadísticas aparte, ver StatisticsPipeline)
+    private volatile boolean countStatistics = true;
+
     /**
      * Constructor del gestor de sincronización.
      *
@@ -71,9 +91,12 @@ public class SynchronizationManager {
         // Inicializar CyclicBarrier
         // La acción se ejecuta cuando todos los hilos llegan a la barrera
         this.generationBarrier = new CyclicBarrier(numThreads, () -> {
-            System.out.println("Todos los hilos completaron la generación");
+            if (verbose)
+                System.out.println("Todos los hilos completaron la generación");
         });
 
+        this.movesBarrier = new CyclicBarrier(numThreads);
+
         // Inicializar Semaphores para dependencias de filas
         // Inicializados a 0 = bloqueados (no hay permisos disponibles)
         this.borderSemaphores = new Semaphore[numThreads];
@@ -81,27 +104,47 @@ public class SynchronizationManager {
             borderSemaphores[i] = new Semaphore(0);
         }
 
+        this.seenGenerations = new long[numThreads];
         this.globalAgeDistribution = new TreeMap<>();
         this.statsLatch = new CountDownLatch(numThreads);
     }
 
+    /**
+     * Activa o desactiva las trazas por generación.
+     */
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Solo se debe cambiar entre generaciones.
+     */
+    public void setCountStatistics(boolean countStatistics) {
+        this.countStatistics = countStatistics;
+    }
+
+    public boolean isCountStatistics() {
+        return countStatistics;
+    }
+
     /**
      * LOCK + CONDITION: Los hilos esperan aquí hasta que se inicie la generación.
      *
      * Los hilos worker llaman a este método y se bloquean en la condición
      * hasta que el hilo principal llame a startNewGeneration().
      *
-     * @param threadId Identificador del hilo (para logging)
+     * @param threadId Identificador del hilo
      * @throws InterruptedException Si el hilo es interrumpido mientras espera
      */
     public void waitForGenerationStart(int threadId) throws InterruptedException {
         startLock.lock();
         try {
-            // Esperar mientras la generación no haya comenzado
+            // Esperar mientras no haya una generación nueva para este hilo
             // await() libera el lock y espera a ser notificado
-            while (!generationStarted) {
+            while (seenGenerations[threadId] == startedGenerations) {
                 startCondition.await();
             }
+            seenGenerations[threadId]++;
         } finally {
             startLock.unlock();
         }
@@ -113,7 +156,7 @@ public class SynchronizationManager {
      * Este método:
      * 1. Resetea las estadísticas
      * 2. Resetea los semáforos de fronteras
-     * 3. Marca la generación como iniciada
+     * 3. Incrementa el contador de generaciones iniciadas
      * 4. Despierta a TODOS los hilos worker
      */
     public void startNewGeneration() {
@@ -128,13 +171,14 @@ public class SynchronizationManager {
             }
 
             // Marcar generación como iniciada
-            generationStarted = true;
+            startedGenerations++;
 
             // Despertar a TODOS los hilos en espera
             // signalAll() notifica a todos los hilos esperando en la condición
             startCondition.signalAll();
 
-            System.out.println(">>> Generación iniciada <<<");
+            if (verbose)
+                System.out.println(">>> Generación iniciada <<<");
         } finally {
             startLock.unlock();
         }
@@ -195,6 +239,14 @@ public class SynchronizationManager {
         statsLatch.countDown();
     }
 
+    /**
+     * Como addStatistics() pero sin aportar estadísticas: solo descuenta el
+     * hilo del CountDownLatch.
+     */
+    public void skipStatistics() {
+        statsLatch.countDown();
+    }
+
     /**
      * SYNCHRONIZED: Combina la distribución de edad local con la global.
      *
@@ -248,6 +300,20 @@ public class SynchronizationManager {
         statsLatch.await();
     }
 
+    /**
+     * Ejecuta una generación completa desde el hilo principal: despierta a
+     * los workers (Lock+Condition), espera sus estadísticas (CountDownLatch)
+     * y devuelve su suma.
+     *
+     * @throws InterruptedException Si el hilo es interrumpido
+     */
+    public StatisticsData runGeneration() throws InterruptedException {
+        startNewGeneration();
+        waitForStatistics();
+        int[] totals = getStatistics();
+        return new StatisticsData(totals[0], totals[1], totals[2], getAgeDistribution());
+    }
+
     /**
      * SYNCHRONIZED: Obtiene las estadísticas globales de forma segura.
      *
@@ -266,6 +332,23 @@ public class SynchronizationManager {
         return new TreeMap<>(globalAgeDistribution);
     }
 
+    /**
+     * BARRIER: Espera a que todos los hilos terminen de simular sus filas.
+     *
+     * Un hilo puede mover criaturas a las filas frontera de sus vecinos, así
+     * que las filas de un hilo no son definitivas hasta que terminan todos.
+     * Los workers llaman a este método antes de contar sus filas.
+     *
+     * @throws InterruptedException Si el hilo es interrumpido
+     */
+    public void waitForMovesEnd() throws InterruptedException {
+        try {
+            movesBarrier.await();
+        } catch (BrokenBarrierException e) {
+            throw new InterruptedException("Barrera rota: " + e.getMessage());
+        }
+    }
+
     /**
      * BARRIER: Espera a que todos los hilos terminen la generación actual.
      *
@@ -279,15 +362,6 @@ public class SynchronizationManager {
             // await() bloquea hasta que TODOS los hilos llamen a este método
             // Cuando el último hilo llega, todos se liberan simultáneamente
             generationBarrier.await();
-
-            // Después de que todos pasen la barrera, marcar generación como no iniciada
-            // Esto prepara el sistema para la siguiente generación
-            startLock.lock();
-            try {
-                generationStarted = false;
-            } finally {
-                startLock.unlock();
-            }
         } catch (BrokenBarrierException e) {
             throw new InterruptedException("Barrera rota: " + e.getMessage());
         }
@@ -0,0 +1,231 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : TiledEngine.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Motor por teselas con ForkJoin: el océano se divide en teselas de al
+ * menos TILE x TILE celdas y cada generación se actualiza por colores.
+ *
+ * Una criatura solo lee y escribe su celda y sus 4 vecinas, así que dos
+ * criaturas a las que separan al menos dos celdas en alguna dirección no
+ * se pueden pisar. Cada tesela recibe un color por eje (su índice par o
+ * impar; con un número impar de teselas, la última tiene un tercer color
+ * para que no toque a la primera al dar la vuelta) y las teselas de un
+ * mismo color están separadas por una tesela entera de otro color: se
+ * actualizan en paralelo sin conflictos. Hay como máximo 9 colores, uno
+ * detrás de otro; dentro de cada color el pool reparte las teselas por
+ * robo de trabajo, de modo que las teselas vacías (contadores de
+ * ocupación) no dejan a ningún hilo parado.
+ *
+ * Las criaturas se mueven con getField()/setField() del océano compartido,
+ * como en SimulationWorker, y el generador aleatorio es el del océano: el
+ * orden en que se consumen sus números depende de los hilos, así que el
+ * resultado no es reproducible con más de un hilo.
+ */
+public class TiledEngine implements SimulationEngine {
+
+    // Lado mínimo de una tesela (múltiplo de Ocean.OCC_TILE)
+    static final int TILE = 2 * Ocean.OCC_TILE;
+
+    // Filas por tarea al contar las estadísticas
+    private static final int COUNT_ROWS = 64;
+
+    private final Ocean ocean;
+    private final ForkJoinPool pool;
+
+    // Límites de las teselas en cada eje y color de cada franja
+    private final int[] xBounds, yBounds;
+    private final int[] xColor, yColor;
+
+    // Teselas de cada color, como índices ty*tilesX + tx
+    private final int[][] colors;
+
+    // Un pool de criaturas por hilo del ForkJoinPool
+    private final ThreadLocal<CellPool> cellPools;
+    private final List<CellPool> allPools = new ArrayList<>();
+    private volatile boolean cellPooling = true;
+
+    // Contadores de ocupación de una fila, uno por hilo del ForkJoinPool
+    private final ThreadLocal<int[]> occupancyRows;
+    private volatile boolean countStatistics = true;
+
+    // Parámetros de la generación en curso (se publican con invoke())
+    private int generation, fishCycle, sharkCycle;
+
+    /**
+     * @param threads Hilos del ForkJoinPool
+     */
+    public TiledEngine(Ocean ocean, int threads) {
+        this.ocean = ocean;
+        this.pool = new ForkJoinPool(threads);
+        this.xBounds = bounds(ocean.getWidth());
+        this.yBounds = bounds(ocean.getHeight());
+        this.xColor = axisColors(xBounds.length - 1);
+        this.yColor = axisColors(yBounds.length - 1);
+        this.cellPools = ThreadLocal.withInitial(() -> {
+            CellPool p = new CellPool();
+            synchronized (allPools) {
+                allPools.add(p);
+            }
+            return p;
+        });
+        this.occupancyRows = ThreadLocal.withInitial(() -> new int[ocean.getOccTilesX()]);
+
+        int tilesX = xBounds.length - 1, tilesY = yBounds.length - 1;
+        List<List<Integer>> byColor = new ArrayList<>();
+        for (int c = 0; c < 9; c++)
+            byColor.add(new ArrayList<>());
+        for (int ty = 0; ty < tilesY; ty++)
+            for (int tx = 0; tx < tilesX; tx++)
+                byColor.get(yColor[ty] * 3 + xColor[tx]).add(ty * tilesX + tx);
+        List<int[]> nonEmpty = new ArrayList<>();
+        for (List<Integer> tiles : byColor)
+            if (!tiles.isEmpty())
+                nonEmpty.add(tiles.stream().mapToInt(Integer::intValue).toArray());
+        this.colors = nonEmpty.toArray(new int[0][]);
+    }
+
+    /**
+     * Divide un eje en teselas de al menos TILE celdas, alineadas a los
+     * bloques de ocupación (la última se queda con las sobrantes).
+     */
+    private static int[] bounds(int length) {
+        int tiles = Math.max(1, length / TILE);
+        int[] b = new int[tiles + 1];
+        for (int t = 0; t < tiles; t++)
+            b[t] = t * TILE;
+        b[tiles] = length;
+        return b;
+    }
+
+    private static int[] axisColors(int tiles) {
+        int[] c = new int[tiles];
+        for (int t = 0; t < tiles; t++)
+            c[t] = tiles > 1 && tiles % 2 == 1 && t == tiles - 1 ? 2 : t & 1;
+        return c;
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.TILED;
+    }
+
+    @Override
+    public StatisticsData step(int generation, int fishCycle, int sharkCycle) {
+        this.generation = generation;
+        this.fishCycle = fishCycle;
+        this.sharkCycle = sharkCycle;
+
+        // Los hilos del pool están parados entre dos invoke()
+        synchronized (allPools) {
+            for (CellPool p : allPools)
+                p.recycle(ocean, cellPooling);
+        }
+
+        for (int[] tiles : colors)
+            pool.invoke(new TileTask(tiles, 0, tiles.length));
+        return countStatistics ? pool.invoke(new CountTask(0, ocean.getHeight())) : null;
+    }
+
+    /**
+     * Actualiza las teselas tiles[from, to), partiéndolas por la mitad
+     * hasta que queda una.
+     */
+    private final class TileTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final int[] tiles;
+        private final int from, to;
+
+        TileTask(int[] tiles, int from, int to) {
+            this.tiles = tiles;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(tiles, from, mid), new TileTask(tiles, mid, to));
+                return;
+            }
+            int tilesX = xBounds.length - 1;
+            int tx = tiles[from] % tilesX, ty = tiles[from] / tilesX;
+            updateTile(xBounds[tx], yBounds[ty], xBounds[tx + 1], yBounds[ty + 1]);
+        }
+    }
+
+    /**
+     * Actualiza en orden las celdas [x0, x1) x [y0, y1), saltándose los
+     * bloques vacíos.
+     */
+    private void updateTile(int x0, int y0, int x1, int y1) {
+        CellPool cellPool = cellPools.get();
+        int[] occ = occupancyRows.get();
+        for (int y = y0; y < y1; y++) {
+            ocean.copyOccupancyRow(y, occ);
+            for (int x = x0; x < x1; x++) {
+                if ((x & (Ocean.OCC_TILE - 1)) == 0 && occ[x >> Ocean.OCC_SHIFT] == 0) {
+                    x += Ocean.OCC_TILE - 1;
+                    continue;
+                }
+                Cell c = ocean.getField(x, y);
+                if (c != null && c.isPending(generation))
+                    c.update(ocean, x, y, generation, fishCycle, sharkCycle, cellPool);
+            }
+        }
+    }
+
+    /**
+     * Cuenta las estadísticas de las filas [from, to) partiéndolas por la
+     * mitad hasta COUNT_ROWS filas.
+     */
+    private final class CountTask extends RecursiveTask<StatisticsData> {
+        private static final long serialVersionUID = 1L;
+        private final int from, to;
+
+        CountTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected StatisticsData compute() {
+            if (to - from <= COUNT_ROWS)
+                return StatisticsData.count(ocean, from, to);
+            int mid = (from + to) >>> 1;
+            CountTask upper = new CountTask(from, mid);
+            upper.fork();
+            StatisticsData lower = new CountTask(mid, to).compute();
+            return StatisticsData.merge(upper.join(), lower);
+        }
+    }
+
+    @Override
+    public void setCellPooling(boolean enabled) {
+        this.cellPooling = enabled;
+    }
+
+    @Override
+    public void setCountStatistics(boolean enabled) {
+        this.countStatistics = enabled;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,266 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : TrajectoryReader.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Lee una grabación de TrajectoryRecorder y permite saltar a cualquier
+ * generación.
+ *
+ * Al abrir el fichero se recorren solo las cabeceras de los registros para
+ * construir un índice (generación, posición, keyframe o no). Para ir a una
+ * generación se decodifica el keyframe más cercano anterior y se aplican los
+ * deltas hasta ella; si el salto es hacia delante desde la posición actual,
+ * se aplican directamente los deltas que faltan.
+ *
+ * Para retroceder con rapidez, las generaciones ya decodificadas del tramo
+ * del keyframe actual se guardan en una caché (como máximo MAX_CACHE_BYTES):
+ * volver a una de ellas solo cuesta copiar un array.
+ *
+ * Las generaciones descartadas durante la grabación (ver isRecorded) no
+ * tienen registro: seek() se queda en la grabada inmediatamente anterior y
+ * devuelve su número, y getCounts() devuelve null.
+ *
+ * No es thread-safe: se debe usar desde un único hilo.
+ */
+public class TrajectoryReader implements Closeable {
+
+    // Memoria máxima de la caché del tramo actual
+    static final long MAX_CACHE_BYTES = 256L << 20;
+
+    private final FileChannel channel;
+    private final BinaryIO.Input in;
+    private final int width, height, keyframeInterval;
+
+    // Índice de registros
+    private int records = 0;
+    private int[] generations = new int[1024];
+    private long[] offsets = new long[1024];
+    private boolean[] keyframes = new boolean[1024];
+
+    // Estado decodificado actual
+    private final byte[] types;
+    private int current = -1;
+    private int fish, sharks, empty;
+    private Map<Integer, int[]> ageDistribution = new TreeMap<>();
+
+    // Caché de generaciones decodificadas del tramo que empieza en cacheKeyframe
+    private final byte[][] cache;
+    private int cacheKeyframe = -1;
+
+    public TrajectoryReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        in = new BinaryIO.Input(channel, 0);
+
+        if (in.getInt() != TrajectoryRecorder.MAGIC)
+            throw new IOException("No es una grabación de Wa-Tor: " + file);
+        int version = in.getInt();
+        if (version != TrajectoryRecorder.VERSION)
+            throw new IOException("Versión de grabación no soportada: " + version);
+
+        width = in.getInt();
+        height = in.getInt();
+        keyframeInterval = in.getInt();
+        if (width < 1 || height < 1 || (long) width * height > Ocean.MAX_CELLS || keyframeInterval < 1)
+            throw new IOException("Cabecera de grabación no válida: " + file);
+        types = new byte[width * height];
+        cache = new byte[(int) Math.min(keyframeInterval, MAX_CACHE_BYTES / Math.max(1, types.length))][];
+
+        buildIndex(channel.size());
+        if (records == 0 || !keyframes[0])
+            throw new IOException("La grabación no contiene ningún keyframe: " + file);
+    }
+
+    private void buildIndex(long size) throws IOException {
+        long pos = TrajectoryRecorder.HEADER_BYTES;
+
+        // Cada cabecera de registro ocupa 9 bytes; un registro incompleto
+        // al final (grabación interrumpida) se ignora
+        while (pos + 9 <= size) {
+            in.seek(pos);
+            boolean key = in.getByte() == TrajectoryRecorder.KEYFRAME;
+            int generation = in.getInt();
+            int length = in.getInt();
+            if (pos + 9 + length > size)
+                break;
+
+            if (records == generations.length) {
+                generations = Arrays.copyOf(generations, records * 2);
+                offsets = Arrays.copyOf(offsets, records * 2);
+                keyframes = Arrays.copyOf(keyframes, records * 2);
+            }
+            generations[records] = generation;
+            offsets[records] = pos;
+            keyframes[records] = key;
+            records++;
+
+            pos += 9 + length;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public int getFirstGeneration() {
+        return generations[0];
+    }
+
+    public int getLastGeneration() {
+        return generations[records - 1];
+    }
+
+    /**
+     * @return Si la generación tiene registro (no se descartó al grabar)
+     */
+    public boolean isRecorded(int generation) {
+        return Arrays.binarySearch(generations, 0, records, generation) >= 0;
+    }
+
+    /**
+     * Decodifica la generación indicada o, si no se grabó, la grabada
+     * inmediatamente antes.
+     *
+     * @return Generación realmente decodificada (la de getGeneration())
+     */
+    public int seek(int generation) throws IOException {
+        int target = Arrays.binarySearch(generations, 0, records, generation);
+        if (target < 0)
+            target = Math.max(0, -target - 2);
+
+        int keyframe = target;
+        while (!keyframes[keyframe])
+            keyframe--;
+        if (keyframe != cacheKeyframe) {
+            cacheKeyframe = keyframe;
+            Arrays.fill(cache, null);
+        }
+
+        int slot = target - keyframe;
+        if (slot < cache.length && cache[slot] != null) {
+            // Generación ya decodificada: solo copiar
+            System.arraycopy(cache[slot], 0, types, 0, types.length);
+            decodeStatistics(target);
+        } else {
+            // Avanzar desde el estado actual si está en el mismo tramo,
+            // si no, desde el keyframe
+            int from = current >= keyframe && current < target ? current + 1 : keyframe;
+            for (int i = from; i <= target; i++) {
+                decode(i);
+                slot = i - keyframe;
+                if (slot < cache.length && cache[slot] == null)
+                    cache[slot] = types.clone();
+            }
+        }
+
+        current = target;
+        return generations[target];
+    }
+
+    private void decodeStatistics(int record) throws IOException {
+        in.seek(offsets[record] + 9);
+
+        fish = in.getVarInt();
+        sharks = in.getVarInt();
+        empty = in.getVarInt();
+        int entries = in.getVarInt();
+        ageDistribution = new TreeMap<>();
+        int age = 0;
+        for (int i = 0; i < entries; i++) {
+            age += in.getVarInt();
+            ageDistribution.put(age, new int[]{in.getVarInt(), in.getVarInt()});
+        }
+    }
+
+    private void decode(int record) throws IOException {
+        decodeStatistics(record);
+
+        if (keyframes[record]) {
+            int packed = 0, n = 4;
+            for (int i = 0; i < types.length; i++) {
+                if (n == 4) {
+                    packed = in.getByte();
+                    n = 0;
+                }
+                types[i] = (byte) ((packed >>> (2 * n++)) & 3);
+            }
+        } else {
+            int changes = in.getVarInt();
+            long index = 0;
+            for (int i = 0; i < changes; i++) {
+                long v = in.getVarLong();
+                index += v >>> 2;
+                types[(int) index] = (byte) (v & 3);
+            }
+        }
+    }
+
+    /**
+     * Lee solo los conteos de una generación, sin decodificar el océano
+     * (no modifica la generación actual).
+     *
+     * @return {peces, tiburones, vacías}, o null si la generación no se grabó
+     */
+    public int[] getCounts(int generation) throws IOException {
+        int record = Arrays.binarySearch(generations, 0, records, generation);
+        if (record < 0)
+            return null;
+
+        in.seek(offsets[record] + 9);
+        return new int[]{in.getVarInt(), in.getVarInt(), in.getVarInt()};
+    }
+
+    /**
+     * @return Tipos de las celdas de la generación actual (índice = y*ancho + x).
+     *         El array se reutiliza en cada seek().
+     */
+    public byte[] getTypes() {
+        return types;
+    }
+
+    public int getGeneration() {
+        return current < 0 ? -1 : generations[current];
+    }
+
+    public int getFishCount() {
+        return fish;
+    }
+
+    public int getSharkCount() {
+        return sharks;
+    }
+
+    public int getEmptyCount() {
+        return empty;
+    }
+
+    public Map<Integer, int[]> getAgeDistribution() {
+        return ageDistribution;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
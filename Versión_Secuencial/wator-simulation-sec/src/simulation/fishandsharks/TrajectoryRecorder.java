@@ -0,0 +1,351 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : TrajectoryRecorder.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Graba la historia completa de una simulación con compresión por deltas.
+ *
+ * Cada K generaciones se escribe un fotograma clave (keyframe) con el tipo
+ * de todas las celdas empaquetado a 2 bits; el resto de generaciones solo
+ * guardan las celdas que cambiaron respecto a la anterior. Cada registro
+ * incluye además las estadísticas de la generación (conteos y distribución
+ * de edad) para poder reproducir las gráficas.
+ *
+ * Formato (big-endian):
+ *   Cabecera: MAGIC, VERSION, ancho, alto, K (int)
+ *   Registro: tipo (byte: KEYFRAME o DELTA), generación (int),
+ *             longitud del contenido en bytes (int) y contenido:
+ *     - estadísticas: varint peces, tiburones, vacías, número de edades
+ *       y por cada edad: varint (edad - edad anterior), peces, tiburones
+ *     - KEYFRAME: tipos de todas las celdas, 4 por byte
+ *     - DELTA: varint número de cambios y por cada cambio un varlong
+ *       ((índice - índice anterior) << 2 | nuevo tipo)
+ *
+ * Concurrencia:
+ * - Se registra como GenerationListener del modelo. En el hilo de la
+ *   simulación solo se copian los tipos de las celdas (Ocean.copyTypes) a
+ *   un buffer libre y se encola el fotograma.
+ * - Las estadísticas de cada registro son las del modelo. Con estadísticas
+ *   asíncronas (SharkFishModel.setAsyncStatistics) esas van por detrás de
+ *   la generación grabada, así que entonces se cuenta el océano en el
+ *   propio onGeneration(), que es más lento: conviene grabar con
+ *   estadísticas síncronas.
+ * - Un hilo de fondo calcula los deltas y escribe en disco.
+ * - El número de buffers está acotado. Si el escritor va por detrás y no
+ *   queda ningún buffer libre, la generación se descarta en lugar de
+ *   bloquear la simulación, y el siguiente fotograma se escribe como
+ *   keyframe para que la grabación siga siendo decodificable.
+ */
+public class TrajectoryRecorder implements SharkFishModel.GenerationListener, Closeable {
+
+    static final int MAGIC = 0x5754524A; // "WTRJ"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 5 * 4;
+    static final byte KEYFRAME = 0, DELTA = 1;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Fotograma capturado en el hilo de la simulación.
+     */
+    private static class Frame {
+        final byte[] types;
+        int generation;
+        int fish, sharks, empty;
+        int[] ages = new int[0];      // (edad, peces, tiburones) consecutivos
+        int ageEntries;
+        boolean forceKeyframe;
+
+        Frame(int cells) {
+            types = new byte[cells];
+        }
+    }
+
+    // Marca de fin para el hilo escritor
+    private static final Frame END = new Frame(0);
+
+    private final int width, height, keyframeInterval;
+    private final FileChannel channel;
+    private final BinaryIO.Output out;
+
+    private final BlockingQueue<Frame> free;
+    private final BlockingQueue<Frame> pending;
+    private final Thread writer;
+
+    // Solo lo usa el hilo de la simulación
+    private boolean dropped = false;
+    private volatile long droppedFrames = 0;
+    private volatile IOException failure;
+
+    private SharkFishModel model;
+
+    /**
+     * Crea la grabación y graba el estado actual del modelo como primer keyframe.
+     *
+     * @param file Fichero de salida
+     * @param model Modelo a grabar (se registra como GenerationListener)
+     * @param keyframeInterval Generaciones entre keyframes (K)
+     * @param bufferedFrames Fotogramas que se pueden acumular sin escribir
+     */
+    public TrajectoryRecorder(Path file, SharkFishModel model,
+                              int keyframeInterval, int bufferedFrames) throws IOException {
+        if (keyframeInterval < 1 || bufferedFrames < 1)
+            throw new IllegalArgumentException();
+
+        Ocean ocean = model.getOcean();
+        this.width = ocean.getWidth();
+        this.height = ocean.getHeight();
+        this.keyframeInterval = keyframeInterval;
+
+        channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        out = new BinaryIO.Output(channel, BUFFER_SIZE);
+        out.putInt(MAGIC);
+        out.putInt(VERSION);
+        out.putInt(width);
+        out.putInt(height);
+        out.putInt(keyframeInterval);
+
+        free = new ArrayBlockingQueue<>(bufferedFrames);
+        pending = new ArrayBlockingQueue<>(bufferedFrames + 1);
+        for (int i = 0; i < bufferedFrames; i++)
+            free.add(new Frame(width * height));
+
+        writer = new Thread(this::writeLoop, "TrajectoryWriter");
+        writer.setDaemon(true);
+        writer.start();
+
+        this.model = model;
+        onGeneration(model);
+        model.addGenerationListener(this);
+    }
+
+    /**
+     * Captura la generación actual (hilo de la simulación). No bloquea nunca.
+     */
+    @Override
+    public void onGeneration(SharkFishModel model) {
+        Frame f = free.poll();
+        if (f == null) {
+            // El escritor no da abasto: se descarta esta generación
+            dropped = true;
+            droppedFrames++;
+            return;
+        }
+
+        Ocean ocean = model.getOcean();
+        ocean.copyTypes(f.types);
+        f.generation = model.getGeneration();
+
+        // Las estadísticas asíncronas del modelo son de una generación
+        // anterior: se cuenta el océano, que está quieto hasta el siguiente paso
+        Map<Integer, int[]> dist;
+        if (model.isAsyncStatistics()) {
+            StatisticsData stats = StatisticsData.count(ocean, 0, height);
+            f.fish = stats.fish;
+            f.sharks = stats.sharks;
+            f.empty = stats.empty;
+            dist = stats.ageDistribution;
+        } else {
+            f.fish = model.getFishCount();
+            f.sharks = model.getSharkCount();
+            f.empty = model.getEmptyCount();
+            dist = model.getAgeDistribution();
+        }
+        if (f.ages.length < dist.size() * 3)
+            f.ages = new int[dist.size() * 3];
+        int i = 0;
+        for (Map.Entry<Integer, int[]> e : dist.entrySet()) {
+            f.ages[i++] = e.getKey();
+            f.ages[i++] = e.getValue()[0];
+            f.ages[i++] = e.getValue()[1];
+        }
+        f.ageEntries = dist.size();
+
+        f.forceKeyframe = dropped;
+        dropped = false;
+        pending.add(f);
+    }
+
+    /**
+     * Bucle del hilo escritor: calcula deltas y escribe los registros.
+     */
+    private void writeLoop() {
+        byte[] previous = new byte[width * height];
+        int lastKeyframe = Integer.MIN_VALUE;
+        boolean first = true;
+
+        try {
+            while (true) {
+                Frame f = pending.take();
+                if (f == END)
+                    break;
+
+                try {
+                    if (failure == null) {
+                        boolean key = first || f.forceKeyframe
+                                || f.generation - lastKeyframe >= keyframeInterval;
+                        if (key) {
+                            writeKeyframe(f);
+                            lastKeyframe = f.generation;
+                        } else {
+                            writeDelta(f, previous);
+                        }
+                        System.arraycopy(f.types, 0, previous, 0, previous.length);
+                        first = false;
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+                free.add(f);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeStats(ByteCounter c, Frame f) throws IOException {
+        c.varint(f.fish);
+        c.varint(f.sharks);
+        c.varint(f.empty);
+        c.varint(f.ageEntries);
+        int prevAge = 0;
+        for (int i = 0; i < f.ageEntries * 3; i += 3) {
+            c.varint(f.ages[i] - prevAge);
+            c.varint(f.ages[i + 1]);
+            c.varint(f.ages[i + 2]);
+            prevAge = f.ages[i];
+        }
+    }
+
+    private void writeKeyframe(Frame f) throws IOException {
+        int packedBytes = (f.types.length + 3) / 4;
+        ByteCounter size = new ByteCounter(null);
+        writeStats(size, f);
+
+        out.putByte(KEYFRAME);
+        out.putInt(f.generation);
+        out.putInt((int) size.count + packedBytes);
+        writeStats(new ByteCounter(out), f);
+
+        int packed = 0, n = 0;
+        for (byte t : f.types) {
+            packed |= t << (2 * n);
+            if (++n == 4) {
+                out.putByte(packed);
+                packed = n = 0;
+            }
+        }
+        if (n > 0)
+            out.putByte(packed);
+    }
+
+    private void writeDelta(Frame f, byte[] previous) throws IOException {
+        byte[] types = f.types;
+
+        // Primera pasada: número de cambios y tamaño del contenido
+        ByteCounter size = new ByteCounter(null);
+        writeStats(size, f);
+        int changes = 0;
+        long last = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != previous[i]) {
+                size.varlong(((i - last) << 2) | types[i]);
+                last = i;
+                changes++;
+            }
+        }
+        size.varint(changes);
+
+        out.putByte(DELTA);
+        out.putInt(f.generation);
+        out.putInt((int) size.count);
+        writeStats(new ByteCounter(out), f);
+        out.putVarInt(changes);
+        last = 0;
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] != previous[i]) {
+                out.putVarLong(((i - last) << 2) | types[i]);
+                last = i;
+            }
+        }
+    }
+
+    /**
+     * Escribe varints en la salida o, si no hay salida, solo cuenta bytes
+     * (para conocer la longitud del registro antes de escribirlo).
+     */
+    private static class ByteCounter {
+        final BinaryIO.Output out;
+        long count;
+
+        ByteCounter(BinaryIO.Output out) {
+            this.out = out;
+        }
+
+        void varint(int v) throws IOException {
+            varlong(v & 0xFFFFFFFFL);
+        }
+
+        void varlong(long v) throws IOException {
+            if (out != null) {
+                out.putVarLong(v);
+                return;
+            }
+            do {
+                count++;
+                v >>>= 7;
+            } while (v != 0);
+        }
+    }
+
+    /**
+     * @return Generaciones descartadas por falta de buffers libres
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Deja de grabar, espera a que se escriba todo lo pendiente y cierra el fichero.
+     */
+    @Override
+    public void close() throws IOException {
+        if (model == null)
+            return;
+        model.removeGenerationListener(this);
+        model = null;
+
+        try {
+            pending.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            out.close();
+        } finally {
+            channel.close();
+        }
+
+        if (failure != null)
+            throw failure;
+        if (droppedFrames > 0)
+            System.out.println("Grabación: " + droppedFrames + " generaciones descartadas");
+    }
+}
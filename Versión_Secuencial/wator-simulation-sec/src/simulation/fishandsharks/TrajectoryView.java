@@ -0,0 +1,69 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : TrajectoryView.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.awt.Dimension;
+import java.awt.Graphics;
+
+import javax.swing.JComponent;
+
+import simulation.fishandsharks.Ocean.Cell;
+
+/**
+ * Vista de solo lectura de un océano dado como array de tipos de celda
+ * (por ejemplo, una generación decodificada por TrajectoryReader).
+ *
+ * Usa OceanRenderer: cada fotograma cuesta una pasada lineal sobre el
+ * array y un único drawImage, lo que permite reproducir cientos de
+ * fotogramas por segundo incluso en océanos de 1000x1000.
+ */
+public class TrajectoryView extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+    private static final int BOX_SIZE = 10;
+
+    private final OceanRenderer renderer;
+    private final int box;
+
+    public TrajectoryView(int width, int height) {
+        this.renderer = new OceanRenderer(width, height);
+
+        // Océanos grandes: menos píxeles por celda para que quepan en pantalla
+        this.box = Math.max(1, Math.min(BOX_SIZE, 2000 / Math.max(width, height)));
+        setPreferredSize(new Dimension(box * width, box * height));
+    }
+
+    /**
+     * Actualiza la imagen con los tipos de celda indicados y la repinta.
+     *
+     * @param types Tipos de celda (índice = y*ancho + x)
+     */
+    public void setTypes(byte[] types) {
+        renderer.update(types);
+        repaint();
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Dimension size = getPreferredSize();
+        int x0 = Math.max(0, (getWidth() - size.width) / 2);
+        int y0 = Math.max(0, (getHeight() - size.height) / 2);
+
+        g.setColor(Cell.OCEAN_DARK);
+        g.fillRect(0, 0, getWidth(), getHeight());
+        renderer.paint(g, x0, y0, box);
+    }
+
+    public int getOceanWidth() {
+        return renderer.getWidth();
+    }
+
+    public int getOceanHeight() {
+        return renderer.getHeight();
+    }
+}
@@ -0,0 +1,77 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : TripleBuffer.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Triple buffer sin bloqueos para un productor y un consumidor.
+ *
+ * Hay tres buffers: el productor escribe siempre en el suyo ("back"), el
+ * consumidor lee siempre el suyo ("front") y el tercero ("middle") es el
+ * último publicado. Publicar y recoger son un único getAndSet atómico que
+ * intercambia el buffer propio con el del medio, así que:
+ * - El productor nunca espera al consumidor (si el consumidor va lento,
+ *   los fotogramas intermedios simplemente se sobrescriben).
+ * - El consumidor nunca ve un buffer a medio escribir.
+ *
+ * Estado compartido: índice del buffer del medio + bit FRESH, que indica
+ * que el buffer del medio todavía no lo ha recogido el consumidor.
+ */
+public class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 3;
+    private static final int FRESH = 4;
+
+    private final Object[] buffers = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+
+    // Índices propiedad de cada lado (no compartidos)
+    private int back = 0;
+    private int front = 2;
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < buffers.length; i++)
+            buffers[i] = factory.get();
+    }
+
+    /**
+     * @return Buffer en el que debe escribir el productor
+     */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) buffers[back];
+    }
+
+    /**
+     * Publica el buffer del productor y le entrega otro libre.
+     */
+    public void publish() {
+        back = middle.getAndSet(back | FRESH) & INDEX_MASK;
+    }
+
+    /**
+     * @return true si hay un buffer publicado que el consumidor no ha recogido
+     */
+    public boolean hasFresh() {
+        return (middle.get() & FRESH) != 0;
+    }
+
+    /**
+     * Recoge el último buffer publicado, si hay uno nuevo.
+     *
+     * @return El buffer más reciente disponible para el consumidor
+     */
+    @SuppressWarnings("unchecked")
+    public T latest() {
+        if (hasFresh())
+            front = middle.getAndSet(front) & INDEX_MASK;
+        return (T) buffers[front];
+    }
+}
@@ -0,0 +1,126 @@
+/* ---------------------------------------------------------------
+Práctica 2.
+Código fuente : WorkerEngine.java
+Grado Informática
+39942072L Albert Sorribes Torrent.
+X9321862P Porosnicu, Valentin Alexandru
+--------------------------------------------------------------- */
+package simulation.fishandsharks;
+
+/**
+ * Motor por franjas de filas sobre el océano compartido: un
+ * SimulationWorker por franja, coordinados por un SynchronizationManager
+ * (Lock+Condition para empezar, semáforos en las filas frontera,
+ * CountDownLatch para las estadísticas y CyclicBarrier para terminar).
+ *
+ * Los workers leen la generación y los ciclos de reproducción del modelo,
+ * así que este motor solo sirve para el modelo que lo crea.
+ */
+public class WorkerEngine implements SimulationEngine {
+
+    private final SimulationWorker[] workers;
+    private final SynchronizationManager syncManager;
+    private final int height;
+
+    // Las franjas no cubren todo el océano desde el último stepRows()
+    private boolean partial;
+
+    /**
+     * Crea e inicia los hilos. Cada hilo recibe aproximadamente
+     * height/threads filas; el último se queda con las sobrantes.
+     */
+    WorkerEngine(SharkFishModel model, int threads, boolean verbose) {
+        if (verbose)
+            System.out.println("=== Inicializando modo CONCURRENTE con " + threads + " hilos ===");
+
+        this.height = model.getOcean().getHeight();
+        syncManager = new SynchronizationManager(threads);
+        syncManager.setVerbose(verbose);
+        workers = new SimulationWorker[threads];
+
+        int rowsPerThread = height / threads;
+        for (int i = 0; i < threads; i++) {
+            int startRow = i * rowsPerThread;
+            int endRow = (i == threads - 1) ? height : (i + 1) * rowsPerThread;
+            workers[i] = new SimulationWorker(i, startRow, endRow, model, syncManager);
+            workers[i].start();
+        }
+    }
+
+    @Override
+    public Kind getKind() {
+        return Kind.WORKERS;
+    }
+
+    /**
+     * @return Estadísticas sumadas de los workers (null si se interrumpe la espera)
+     */
+    @Override
+    public StatisticsData step(int generation, int fishCycle, int sharkCycle) {
+        if (partial) {
+            assignRows(0, height);
+            partial = false;
+        }
+        try {
+            StatisticsData stats = syncManager.runGeneration();
+            return syncManager.isCountStatistics() ? stats : null;
+        } catch (InterruptedException e) {
+            System.err.println("Error en simulación concurrente: " + e.getMessage());
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Actualiza solo las filas [from, to), repartidas entre los workers,
+     * sin avanzar la generación (SharkFishModel.stepRows).
+     */
+    void stepRows(int from, int to) throws InterruptedException {
+        assignRows(from, to);
+        partial = true;
+        syncManager.startNewGeneration();
+        syncManager.waitForStatistics();
+    }
+
+    /**
+     * Reparte las filas [from, to) entre los workers igual que el
+     * constructor (el último se queda con las sobrantes).
+     */
+    private void assignRows(int from, int to) {
+        int rowsPerThread = (to - from) / workers.length;
+        for (int i = 0; i < workers.length; i++)
+            workers[i].setRows(from + i * rowsPerThread,
+                    i == workers.length - 1 ? to : from + (i + 1) * rowsPerThread);
+    }
+
+    @Override
+    public void setCellPooling(boolean enabled) {
+        // Los workers consultan SharkFishModel.isCellPooling()
+    }
+
+    @Override
+    public void setCountStatistics(boolean enabled) {
+        syncManager.setCountStatistics(enabled);
+    }
+
+    @Override
+    public void setVerbose(boolean verbose) {
+        syncManager.setVerbose(verbose);
+    }
+
+    /**
+     * Finaliza los hilos de forma segura: los interrumpe y espera a que
+     * terminen (máximo 1 s por hilo).
+     */
+    @Override
+    public void close() {
+        for (SimulationWorker worker : workers)
+            worker.stopWorker();
+        try {
+            for (SimulationWorker worker : workers)
+                worker.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}